@@ -0,0 +1,23 @@
+-- ============================================
+-- 补丁：服务端多轮对话（会话表 + chat_history.conversation_id）
+-- 适用于使用旧版 init.sql 初始化的数据库
+-- ============================================
+USE study_planner;
+
+CREATE TABLE IF NOT EXISTS `chat_conversation` (
+    `id` BIGINT NOT NULL AUTO_INCREMENT COMMENT '会话ID',
+    `user_id` BIGINT NOT NULL COMMENT '用户ID',
+    `title` VARCHAR(100) DEFAULT NULL COMMENT '会话标题',
+    `summary` TEXT DEFAULT NULL COMMENT '较早对话的滚动摘要',
+    `summarized_until_id` BIGINT NOT NULL DEFAULT 0 COMMENT '已并入摘要的最后一条对话记录ID',
+    `create_time` DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`id`),
+    KEY `idx_user_update` (`user_id`, `update_time`),
+    CONSTRAINT `fk_conversation_user` FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='AI对话会话表';
+
+ALTER TABLE `chat_history`
+    ADD COLUMN `conversation_id` BIGINT DEFAULT NULL COMMENT '会话ID' AFTER `user_id`,
+    ADD KEY `idx_conversation_id` (`conversation_id`, `id`),
+    ADD CONSTRAINT `fk_chat_conversation` FOREIGN KEY (`conversation_id`) REFERENCES `chat_conversation` (`id`) ON DELETE CASCADE;
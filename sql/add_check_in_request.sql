@@ -0,0 +1,15 @@
+-- ============================================
+-- 补丁：批量打卡幂等记录表（check_in_request）
+-- 过期记录由定时任务清理（checkin.idempotency.ttl-hours）
+-- ============================================
+USE study_planner;
+
+CREATE TABLE IF NOT EXISTS `check_in_request` (
+    `user_id` BIGINT NOT NULL COMMENT '用户ID',
+    `idempotency_key` VARCHAR(64) NOT NULL COMMENT '客户端幂等键',
+    `response` MEDIUMTEXT DEFAULT NULL COMMENT '首次处理结果(JSON)',
+    `create_time` DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    PRIMARY KEY (`user_id`, `idempotency_key`),
+    KEY `idx_create_time` (`create_time`),
+    CONSTRAINT `fk_checkin_request_user` FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='批量打卡幂等记录表';
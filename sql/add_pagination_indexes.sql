@@ -0,0 +1,9 @@
+-- ============================================
+-- 补丁：键集分页索引（计划列表按创建时间、打卡记录按打卡日期分页）
+-- 适用于使用旧版 init.sql 初始化的数据库
+-- ============================================
+USE study_planner;
+
+ALTER TABLE `study_plan` ADD KEY `idx_user_create` (`user_id`, `create_time`, `id`);
+
+ALTER TABLE `check_in` ADD KEY `idx_user_check_date` (`user_id`, `check_date`, `id`);
@@ -0,0 +1,13 @@
+-- ============================================
+-- 补丁：计划进度冗余计数（study_plan.total_days_count / completed_count）
+-- 适用于使用旧版 init.sql 初始化的数据库，执行后按现有每日任务回填计数
+-- ============================================
+USE study_planner;
+
+ALTER TABLE `study_plan`
+    ADD COLUMN `total_days_count` INT NOT NULL DEFAULT 0 COMMENT '每日任务总数(冗余计数)' AFTER `status`,
+    ADD COLUMN `completed_count` INT NOT NULL DEFAULT 0 COMMENT '已完成任务数(冗余计数)' AFTER `total_days_count`;
+
+UPDATE `study_plan` p SET
+    p.`total_days_count` = (SELECT COUNT(*) FROM `plan_detail` d WHERE d.`plan_id` = p.`id`),
+    p.`completed_count` = (SELECT COUNT(*) FROM `plan_detail` d WHERE d.`plan_id` = p.`id` AND d.`is_completed` = 1);
@@ -0,0 +1,36 @@
+-- ============================================
+-- 补丁：计划闲置提醒状态表（plan_reminder_state），并按进行中的计划回填
+-- 提醒状态持久化后，重启不会重复提醒；多个实例通过租约分批领取到期的提醒
+-- ============================================
+USE study_planner;
+
+CREATE TABLE IF NOT EXISTS `plan_reminder_state` (
+    `plan_id` BIGINT PRIMARY KEY COMMENT '计划ID',
+    `user_id` BIGINT NOT NULL COMMENT '用户ID',
+    `inactive_minutes` INT NOT NULL COMMENT '闲置时间阈值(分钟)，随用户设置同步',
+    `reminder_interval_minutes` INT NOT NULL COMMENT '提醒间隔(分钟)，随用户设置同步',
+    `last_activity_at` DATETIME NOT NULL COMMENT '最后打卡时间（从未打卡时为计划创建时间）',
+    `last_reminded_at` DATETIME DEFAULT NULL COMMENT '上次提醒时间（打卡后清空）',
+    `last_reminded_by` VARCHAR(64) DEFAULT NULL COMMENT '发送上次提醒的实例',
+    `next_due_at` DATETIME NOT NULL COMMENT '下次提醒时间',
+    `lease_owner` VARCHAR(64) DEFAULT NULL COMMENT '当前持有租约的实例',
+    `lease_until` DATETIME DEFAULT NULL COMMENT '租约到期时间',
+    `update_time` DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    KEY `idx_next_due` (`next_due_at`),
+    KEY `idx_user_id` (`user_id`),
+    CONSTRAINT `fk_reminder_state_plan` FOREIGN KEY (`plan_id`) REFERENCES `study_plan` (`id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='计划闲置提醒状态表';
+
+INSERT INTO `plan_reminder_state` (`plan_id`, `user_id`, `inactive_minutes`, `reminder_interval_minutes`, `last_activity_at`, `next_due_at`)
+SELECT x.`id`, x.`user_id`, x.`inactive_minutes`, x.`reminder_interval_minutes`, x.`last_activity_at`,
+       DATE_ADD(x.`last_activity_at`, INTERVAL x.`inactive_minutes` MINUTE)
+FROM (
+    SELECT p.`id`, p.`user_id`,
+           COALESCE(s.`inactive_minutes`, 4320) AS `inactive_minutes`,
+           COALESCE(s.`reminder_interval_minutes`, 720) AS `reminder_interval_minutes`,
+           COALESCE((SELECT MAX(c.`create_time`) FROM `check_in` c WHERE c.`plan_id` = p.`id`), p.`create_time`) AS `last_activity_at`
+    FROM `study_plan` p
+    LEFT JOIN `user_settings` s ON s.`user_id` = p.`user_id`
+    WHERE p.`status` = '进行中'
+) x
+ON DUPLICATE KEY UPDATE `plan_id` = `plan_id`;
@@ -0,0 +1,15 @@
+-- ============================================
+-- 补丁：用户年度活跃位图表（user_activity）
+-- 已有用户的位图在首次读取热力图/日历或打卡时按 user_daily_stats 自动生成，之后由打卡增量维护、定时任务校对
+-- ============================================
+USE study_planner;
+
+CREATE TABLE IF NOT EXISTS `user_activity` (
+    `user_id` BIGINT NOT NULL COMMENT '用户ID',
+    `year` SMALLINT NOT NULL COMMENT '年份',
+    `active_days` BINARY(46) NOT NULL COMMENT '打卡位图：第N天(从0起)对应第N/8字节的第N%8位(低位在前)',
+    `hour_levels` BINARY(92) NOT NULL COMMENT '学习时长档位：每天2位，0无打卡 1不足1小时 2不足3小时 3三小时及以上',
+    `update_time` DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`user_id`, `year`),
+    CONSTRAINT `fk_activity_user` FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='用户年度活跃位图表';
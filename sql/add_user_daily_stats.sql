@@ -0,0 +1,25 @@
+-- ============================================
+-- 补丁：用户每日学习汇总表（user_daily_stats），并按现有打卡记录回填
+-- 适用于使用旧版 init.sql 初始化的数据库；之后由打卡增量维护、定时任务校对
+-- ============================================
+USE study_planner;
+
+CREATE TABLE IF NOT EXISTS `user_daily_stats` (
+    `user_id` BIGINT NOT NULL COMMENT '用户ID',
+    `stat_date` DATE NOT NULL COMMENT '日期',
+    `study_hours` DECIMAL(6,1) NOT NULL DEFAULT 0 COMMENT '当天学习时长合计(小时)',
+    `check_in_count` INT NOT NULL DEFAULT 0 COMMENT '当天打卡次数',
+    `plans_touched` INT NOT NULL DEFAULT 0 COMMENT '当天打卡涉及的计划数',
+    `update_time` DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`user_id`, `stat_date`),
+    CONSTRAINT `fk_daily_stats_user` FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='用户每日学习汇总表';
+
+INSERT INTO `user_daily_stats` (`user_id`, `stat_date`, `study_hours`, `check_in_count`, `plans_touched`)
+SELECT `user_id`, `check_date`, COALESCE(SUM(`study_hours`), 0), COUNT(*), COUNT(DISTINCT `plan_id`)
+FROM `check_in`
+GROUP BY `user_id`, `check_date`
+ON DUPLICATE KEY UPDATE
+    `study_hours` = VALUES(`study_hours`),
+    `check_in_count` = VALUES(`check_in_count`),
+    `plans_touched` = VALUES(`plans_touched`);
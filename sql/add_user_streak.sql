@@ -0,0 +1,37 @@
+-- ============================================
+-- 补丁：用户连续打卡状态表（user_streak），并按每日学习汇总回填
+-- 需先执行 add_user_daily_stats.sql；之后由打卡增量维护、定时任务校对
+-- ============================================
+USE study_planner;
+
+CREATE TABLE IF NOT EXISTS `user_streak` (
+    `user_id` BIGINT PRIMARY KEY COMMENT '用户ID',
+    `current_streak` INT NOT NULL DEFAULT 0 COMMENT '截至最后打卡日期的连续打卡天数',
+    `longest_streak` INT NOT NULL DEFAULT 0 COMMENT '历史最长连续打卡天数',
+    `last_active_date` DATE NOT NULL COMMENT '最后打卡日期',
+    `update_time` DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    CONSTRAINT `fk_streak_user` FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='用户连续打卡状态表';
+
+-- 连续日期减去序号得到相同的分组值，每组即一段连续打卡
+INSERT INTO `user_streak` (`user_id`, `current_streak`, `longest_streak`, `last_active_date`)
+WITH days AS (
+    SELECT `user_id`, `stat_date`,
+           DATE_SUB(`stat_date`, INTERVAL ROW_NUMBER() OVER (PARTITION BY `user_id` ORDER BY `stat_date`) DAY) AS grp
+    FROM `user_daily_stats`
+    WHERE `check_in_count` > 0
+), runs AS (
+    SELECT `user_id`, COUNT(*) AS len, MAX(`stat_date`) AS end_date
+    FROM days
+    GROUP BY `user_id`, grp
+), ranked AS (
+    SELECT `user_id`, len, end_date,
+           MAX(len) OVER (PARTITION BY `user_id`) AS longest,
+           ROW_NUMBER() OVER (PARTITION BY `user_id` ORDER BY end_date DESC) AS rn
+    FROM runs
+)
+SELECT `user_id`, len, longest, end_date FROM ranked WHERE rn = 1
+ON DUPLICATE KEY UPDATE
+    `current_streak` = VALUES(`current_streak`),
+    `longest_streak` = VALUES(`longest_streak`),
+    `last_active_date` = VALUES(`last_active_date`);
@@ -0,0 +1,15 @@
+-- ============================================
+-- 补丁：把任务已全部完成但状态仍为“进行中”的计划更新为“已完成”
+-- 计划列表接口不再在查询时修正状态，旧数据执行一次即可
+-- ============================================
+USE study_planner;
+
+UPDATE `study_plan` p
+JOIN (
+    SELECT `plan_id`
+    FROM `plan_detail`
+    GROUP BY `plan_id`
+    HAVING COUNT(*) > 0 AND SUM(`is_completed` = 1) = COUNT(*)
+) done ON done.`plan_id` = p.`id`
+SET p.`status` = '已完成'
+WHERE p.`status` = '进行中';
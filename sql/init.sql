@@ -26,7 +26,13 @@ SET NAMES utf8mb4;
 -- ============================================
 SET FOREIGN_KEY_CHECKS = 0;
 
+DROP TABLE IF EXISTS `plan_reminder_state`;
+DROP TABLE IF EXISTS `check_in_request`;
+DROP TABLE IF EXISTS `user_activity`;
+DROP TABLE IF EXISTS `user_streak`;
+DROP TABLE IF EXISTS `user_daily_stats`;
 DROP TABLE IF EXISTS `chat_history`;
+DROP TABLE IF EXISTS `chat_conversation`;
 DROP TABLE IF EXISTS `user_settings`;
 DROP TABLE IF EXISTS `check_in`;
 DROP TABLE IF EXISTS `plan_detail`;
@@ -68,10 +74,13 @@ CREATE TABLE `study_plan` (
     `start_date` DATE NOT NULL COMMENT '开始日期',
     `end_date` DATE NOT NULL COMMENT '结束日期',
     `status` VARCHAR(20) DEFAULT '进行中' COMMENT '状态(进行中/已完成/已放弃)',
+    `total_days_count` INT NOT NULL DEFAULT 0 COMMENT '每日任务总数(冗余计数)',
+    `completed_count` INT NOT NULL DEFAULT 0 COMMENT '已完成任务数(冗余计数)',
     `create_time` DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     `update_time` DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
     PRIMARY KEY (`id`),
     KEY `idx_user_id` (`user_id`),
+    KEY `idx_user_create` (`user_id`, `create_time`, `id`),
     KEY `idx_status` (`status`),
     CONSTRAINT `fk_plan_user` FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='学习计划表';
@@ -110,6 +119,7 @@ CREATE TABLE `check_in` (
     KEY `idx_user_id` (`user_id`),
     KEY `idx_plan_id` (`plan_id`),
     KEY `idx_check_date` (`check_date`),
+    KEY `idx_user_check_date` (`user_id`, `check_date`, `id`),
     UNIQUE KEY `uk_user_date_detail` (`user_id`, `check_date`, `detail_id`),
     CONSTRAINT `fk_checkin_user` FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE CASCADE,
     CONSTRAINT `fk_checkin_plan` FOREIGN KEY (`plan_id`) REFERENCES `study_plan` (`id`) ON DELETE CASCADE,
@@ -117,21 +127,40 @@ CREATE TABLE `check_in` (
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='打卡记录表';
 
 -- ============================================
--- 5. AI对话记录表 (chat_history)
+-- 5. AI对话会话表 (chat_conversation)
+-- ============================================
+CREATE TABLE `chat_conversation` (
+    `id` BIGINT NOT NULL AUTO_INCREMENT COMMENT '会话ID',
+    `user_id` BIGINT NOT NULL COMMENT '用户ID',
+    `title` VARCHAR(100) DEFAULT NULL COMMENT '会话标题',
+    `summary` TEXT DEFAULT NULL COMMENT '较早对话的滚动摘要',
+    `summarized_until_id` BIGINT NOT NULL DEFAULT 0 COMMENT '已并入摘要的最后一条对话记录ID',
+    `create_time` DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`id`),
+    KEY `idx_user_update` (`user_id`, `update_time`),
+    CONSTRAINT `fk_conversation_user` FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='AI对话会话表';
+
+-- ============================================
+-- 6. AI对话记录表 (chat_history) - 每行为一轮问答
 -- ============================================
 CREATE TABLE `chat_history` (
     `id` BIGINT NOT NULL AUTO_INCREMENT COMMENT '记录ID',
     `user_id` BIGINT NOT NULL COMMENT '用户ID',
+    `conversation_id` BIGINT DEFAULT NULL COMMENT '会话ID',
     `question` TEXT NOT NULL COMMENT '用户问题',
     `answer` TEXT NOT NULL COMMENT 'AI回答',
     `create_time` DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     PRIMARY KEY (`id`),
     KEY `idx_user_id` (`user_id`),
-    CONSTRAINT `fk_chat_user` FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE CASCADE
+    KEY `idx_conversation_id` (`conversation_id`, `id`),
+    CONSTRAINT `fk_chat_user` FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE CASCADE,
+    CONSTRAINT `fk_chat_conversation` FOREIGN KEY (`conversation_id`) REFERENCES `chat_conversation` (`id`) ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='AI对话记录表';
 
 -- ============================================
--- 6. 用户设置表 (user_settings)
+-- 7. 用户设置表 (user_settings)
 -- ============================================
 CREATE TABLE `user_settings` (
     `id` BIGINT NOT NULL AUTO_INCREMENT COMMENT '设置ID',
@@ -145,6 +174,78 @@ CREATE TABLE `user_settings` (
     CONSTRAINT `fk_settings_user` FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='用户设置表';
 
+-- ============================================
+-- 8. 用户每日学习汇总表 (user_daily_stats) - 打卡时增量维护，统计和图表直接读取
+-- ============================================
+CREATE TABLE `user_daily_stats` (
+    `user_id` BIGINT NOT NULL COMMENT '用户ID',
+    `stat_date` DATE NOT NULL COMMENT '日期',
+    `study_hours` DECIMAL(6,1) NOT NULL DEFAULT 0 COMMENT '当天学习时长合计(小时)',
+    `check_in_count` INT NOT NULL DEFAULT 0 COMMENT '当天打卡次数',
+    `plans_touched` INT NOT NULL DEFAULT 0 COMMENT '当天打卡涉及的计划数',
+    `update_time` DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`user_id`, `stat_date`),
+    CONSTRAINT `fk_daily_stats_user` FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='用户每日学习汇总表';
+
+-- ============================================
+-- 9. 用户连续打卡状态表 (user_streak) - 打卡时增量维护，读取连续天数只查一行
+-- ============================================
+CREATE TABLE `user_streak` (
+    `user_id` BIGINT PRIMARY KEY COMMENT '用户ID',
+    `current_streak` INT NOT NULL DEFAULT 0 COMMENT '截至最后打卡日期的连续打卡天数',
+    `longest_streak` INT NOT NULL DEFAULT 0 COMMENT '历史最长连续打卡天数',
+    `last_active_date` DATE NOT NULL COMMENT '最后打卡日期',
+    `update_time` DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    CONSTRAINT `fk_streak_user` FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='用户连续打卡状态表';
+
+-- ============================================
+-- 10. 用户年度活跃位图表 (user_activity) - 每用户每年一行，日历和热力图直接读取
+-- ============================================
+CREATE TABLE `user_activity` (
+    `user_id` BIGINT NOT NULL COMMENT '用户ID',
+    `year` SMALLINT NOT NULL COMMENT '年份',
+    `active_days` BINARY(46) NOT NULL COMMENT '打卡位图：第N天(从0起)对应第N/8字节的第N%8位(低位在前)',
+    `hour_levels` BINARY(92) NOT NULL COMMENT '学习时长档位：每天2位，0无打卡 1不足1小时 2不足3小时 3三小时及以上',
+    `update_time` DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`user_id`, `year`),
+    CONSTRAINT `fk_activity_user` FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='用户年度活跃位图表';
+
+-- ============================================
+-- 11. 批量打卡幂等记录表 (check_in_request) - 相同幂等键的重复请求直接返回首次结果
+-- ============================================
+CREATE TABLE `check_in_request` (
+    `user_id` BIGINT NOT NULL COMMENT '用户ID',
+    `idempotency_key` VARCHAR(64) NOT NULL COMMENT '客户端幂等键',
+    `response` MEDIUMTEXT DEFAULT NULL COMMENT '首次处理结果(JSON)',
+    `create_time` DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    PRIMARY KEY (`user_id`, `idempotency_key`),
+    KEY `idx_create_time` (`create_time`),
+    CONSTRAINT `fk_checkin_request_user` FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='批量打卡幂等记录表';
+
+-- ============================================
+-- 12. 计划闲置提醒状态表 (plan_reminder_state) - 多实例按租约分批领取到期的提醒
+-- ============================================
+CREATE TABLE `plan_reminder_state` (
+    `plan_id` BIGINT PRIMARY KEY COMMENT '计划ID',
+    `user_id` BIGINT NOT NULL COMMENT '用户ID',
+    `inactive_minutes` INT NOT NULL COMMENT '闲置时间阈值(分钟)，随用户设置同步',
+    `reminder_interval_minutes` INT NOT NULL COMMENT '提醒间隔(分钟)，随用户设置同步',
+    `last_activity_at` DATETIME NOT NULL COMMENT '最后打卡时间（从未打卡时为计划创建时间）',
+    `last_reminded_at` DATETIME DEFAULT NULL COMMENT '上次提醒时间（打卡后清空）',
+    `last_reminded_by` VARCHAR(64) DEFAULT NULL COMMENT '发送上次提醒的实例',
+    `next_due_at` DATETIME NOT NULL COMMENT '下次提醒时间',
+    `lease_owner` VARCHAR(64) DEFAULT NULL COMMENT '当前持有租约的实例',
+    `lease_until` DATETIME DEFAULT NULL COMMENT '租约到期时间',
+    `update_time` DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    KEY `idx_next_due` (`next_due_at`),
+    KEY `idx_user_id` (`user_id`),
+    CONSTRAINT `fk_reminder_state_plan` FOREIGN KEY (`plan_id`) REFERENCES `study_plan` (`id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='计划闲置提醒状态表';
+
 -- ============================================
 -- 插入测试数据
 -- ============================================
@@ -166,6 +267,9 @@ INSERT INTO `plan_detail` (`plan_id`, `day_number`, `content`, `duration`, `reso
 (1, 4, '学习条件语句if-elif-else', 2.0, NULL),
 (1, 5, '学习循环语句for和while', 2.0, NULL);
 
+-- 回填示例计划的任务计数
+UPDATE `study_plan` p SET `total_days_count` = (SELECT COUNT(*) FROM `plan_detail` d WHERE d.`plan_id` = p.`id`);
+
 -- ============================================
 -- 创建视图（可选，方便查询）
 -- ============================================
@@ -0,0 +1,161 @@
+package com.studyplanner.config;
+
+import com.studyplanner.util.BoundedVirtualThreadExecutor;
+import com.studyplanner.util.Bulkhead;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 异步任务执行配置
+ * 运行在Java 21且开启spring.threads.virtual.enabled时，LLM、邮件等阻塞I/O任务改为每任务一个虚拟线程，
+ * 各执行器仍保留与平台线程池相同的并发数、排队上限和拒绝策略，下游资源再由舱壁（Bulkhead）限制；
+ * 否则使用有界的平台线程池
+ */
+@Configuration
+public class AsyncConfig {
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsEnabled;
+
+    @Value("${llm.stream.max-concurrent:20}")
+    private int streamMaxConcurrent;
+
+    @Value("${llm.stream.queue-capacity:50}")
+    private int streamQueueCapacity;
+
+    @Value("${llm.plan.chunk-pool-size:16}")
+    private int chunkPoolSize;
+
+    @Value("${plan.job.workers:8}")
+    private int jobWorkers;
+
+    @Value("${plan.job.queue-capacity:200}")
+    private int jobQueueCapacity;
+
+    @Value("${llm.router.hedge-pool-size:32}")
+    private int hedgePoolSize;
+
+    @Value("${llm.chat.summary-pool-size:2}")
+    private int chatSummaryPoolSize;
+
+    @Value("${llm.bulkhead.max-concurrent:64}")
+    private int llmBulkheadMaxConcurrent;
+
+    @Value("${llm.bulkhead.max-wait-ms:2000}")
+    private long llmBulkheadMaxWaitMs;
+
+    @Value("${llm.bulkhead.guest-max-concurrent:16}")
+    private int guestLlmBulkheadMaxConcurrent;
+
+    @Value("${mail.bulkhead.max-concurrent:4}")
+    private int mailBulkheadMaxConcurrent;
+
+    @Value("${mail.bulkhead.max-wait-ms:30000}")
+    private long mailBulkheadMaxWaitMs;
+
+    /**
+     * 当前是否实际使用虚拟线程（需要配置开启且运行在Java 21及以上）
+     */
+    public boolean isUsingVirtualThreads() {
+        return virtualThreadsEnabled && Runtime.version().feature() >= 21;
+    }
+
+    /**
+     * LLM上游调用舱壁
+     */
+    @Bean(name = "llmBulkhead")
+    public Bulkhead llmBulkhead() {
+        return new Bulkhead("LLM调用", llmBulkheadMaxConcurrent, llmBulkheadMaxWaitMs);
+    }
+
+    /**
+     * 游客自定义接口调用舱壁，与系统服务商隔离
+     */
+    @Bean(name = "guestLlmBulkhead")
+    public Bulkhead guestLlmBulkhead() {
+        return new Bulkhead("自定义接口调用", guestLlmBulkheadMaxConcurrent, llmBulkheadMaxWaitMs);
+    }
+
+    /**
+     * SMTP发送舱壁，邮件服务器通常限制单账号并发连接数
+     */
+    @Bean(name = "mailBulkhead")
+    public Bulkhead mailBulkhead() {
+        return new Bulkhead("邮件发送", mailBulkheadMaxConcurrent, mailBulkheadMaxWaitMs);
+    }
+
+    /**
+     * 流式生成计划使用的执行器，避免占用Tomcat请求线程
+     */
+    @Bean(name = "planStreamExecutor")
+    public TaskExecutor planStreamExecutor() {
+        return buildExecutor("plan-stream-", streamMaxConcurrent, streamQueueCapacity,
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 长计划分段生成使用的执行器（所有计划共享）
+     * 平台线程池队列满时由提交线程自己执行，形成自然的背压
+     */
+    @Bean(name = "planChunkExecutor")
+    public TaskExecutor planChunkExecutor() {
+        return buildExecutor("plan-chunk-", chunkPoolSize, chunkPoolSize * 4,
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * 异步计划生成任务的执行器，排队上限和并发数由PlanGenerationJobService控制
+     */
+    @Bean(name = "planJobExecutor")
+    public TaskExecutor planJobExecutor() {
+        return buildExecutor("plan-job-", jobWorkers, jobQueueCapacity, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 模型路由对冲请求使用的执行器，平台线程池满载时拒绝，由调用方退化为不对冲
+     */
+    @Bean(name = "llmHedgeExecutor")
+    public TaskExecutor llmHedgeExecutor() {
+        return buildExecutor("llm-hedge-", hedgePoolSize, 0, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 对话滚动摘要执行器，繁忙时丢弃任务，下一轮对话会再次触发
+     */
+    @Bean(name = "chatSummaryExecutor")
+    public TaskExecutor chatSummaryExecutor() {
+        return buildExecutor("chat-summary-", chatSummaryPoolSize, 100, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 邮件发送执行器，发送过程不阻塞调用方（如定时提醒任务）
+     */
+    @Bean(name = "mailExecutor")
+    public TaskExecutor mailExecutor() {
+        return buildExecutor("mail-", mailBulkheadMaxConcurrent, 1000, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private TaskExecutor buildExecutor(String threadNamePrefix, int poolSize, int queueCapacity,
+                                       RejectedExecutionHandler rejectedHandler) {
+        if (isUsingVirtualThreads()) {
+            // 满载时同样拒绝或由调用方执行，避免任务无限堆积后在舱壁处超时被静默丢弃
+            return new BoundedVirtualThreadExecutor(threadNamePrefix, poolSize, queueCapacity,
+                    rejectedHandler instanceof ThreadPoolExecutor.CallerRunsPolicy);
+        }
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setRejectedExecutionHandler(rejectedHandler);
+        executor.initialize();
+        return executor;
+    }
+}
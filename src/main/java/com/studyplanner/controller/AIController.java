@@ -2,7 +2,11 @@ package com.studyplanner.controller;
 
 import com.studyplanner.dto.ApiResponse;
 import com.studyplanner.dto.ChatRequest;
+import com.studyplanner.entity.ChatConversation;
+import com.studyplanner.entity.ChatHistory;
+import com.studyplanner.service.ChatConversationService;
 import com.studyplanner.service.LLMService;
+import jakarta.servlet.http.HttpSession;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
@@ -18,6 +22,9 @@ public class AIController {
     @Autowired
     private LLMService llmService;
     
+    @Autowired
+    private ChatConversationService chatConversationService;
+    
     @Value("${llm.api.base-url}")
     private String systemApiUrl;
     
@@ -29,17 +36,27 @@ public class AIController {
     
     /**
      * 登录用户使用系统API进行聊天
+     * 提供conversationId时使用服务端会话，只需发送本轮问题；否则按messages完整上下文调用
      */
     @PostMapping("/chat")
-    public ApiResponse<String> chat(@RequestBody ChatRequest request) {
+    public ApiResponse<String> chat(@RequestBody ChatRequest request, HttpSession session) {
+        if (request.getConversationId() != null) {
+            return chatInConversation(request, session);
+        }
         try {
             String model = request.getModel();
             if (model == null || model.isEmpty()) {
                 model = defaultModel;
             }
             
+            // 单轮问题走相似问题缓存
+            List<ChatRequest.ChatMessage> chatMessages = request.getMessages();
+            if (chatMessages != null && chatMessages.size() == 1 && "user".equals(chatMessages.get(0).getRole())) {
+                return ApiResponse.success(llmService.answerSingleTurn(chatMessages.get(0).getContent(), model));
+            }
+            
             // 转换消息格式
-            List<Map<String, String>> messages = convertMessages(request.getMessages());
+            List<Map<String, String>> messages = convertMessages(chatMessages);
             
             // 调用系统API
             String response = llmService.chat(systemApiUrl, systemApiKey, model, messages);
@@ -50,6 +67,96 @@ public class AIController {
         }
     }
     
+    private ApiResponse<String> chatInConversation(ChatRequest request, HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ApiResponse.unauthorized("请先登录");
+        }
+        
+        String question = request.getMessage();
+        if ((question == null || question.isEmpty()) && request.getMessages() != null && !request.getMessages().isEmpty()) {
+            // 兼容只传messages的客户端：取最后一条作为本轮问题
+            question = request.getMessages().get(request.getMessages().size() - 1).getContent();
+        }
+        if (question == null || question.trim().isEmpty()) {
+            return ApiResponse.error("问题不能为空");
+        }
+        
+        try {
+            String response = chatConversationService.chat(userId, request.getConversationId(), question,
+                    request.getModel());
+            return ApiResponse.success(response);
+        } catch (Exception e) {
+            return ApiResponse.error("AI服务调用失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 创建会话
+     */
+    @PostMapping("/conversations")
+    public ApiResponse<ChatConversation> createConversation(@RequestBody(required = false) Map<String, String> body,
+                                                            HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ApiResponse.unauthorized("请先登录");
+        }
+        
+        String title = body != null ? body.get("title") : null;
+        return ApiResponse.success(chatConversationService.createConversation(userId, title));
+    }
+    
+    /**
+     * 获取会话列表
+     */
+    @GetMapping("/conversations")
+    public ApiResponse<List<ChatConversation>> getConversations(HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ApiResponse.unauthorized("请先登录");
+        }
+        
+        return ApiResponse.success(chatConversationService.getUserConversations(userId));
+    }
+    
+    /**
+     * 获取会话最近的对话记录
+     */
+    @GetMapping("/conversations/{conversationId}/messages")
+    public ApiResponse<List<ChatHistory>> getConversationMessages(@PathVariable Long conversationId,
+                                                                  @RequestParam(defaultValue = "50") int limit,
+                                                                  HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ApiResponse.unauthorized("请先登录");
+        }
+        
+        try {
+            return ApiResponse.success(chatConversationService.getMessages(userId, conversationId,
+                    Math.max(1, Math.min(limit, 200))));
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+    
+    /**
+     * 删除会话
+     */
+    @DeleteMapping("/conversations/{conversationId}")
+    public ApiResponse<Void> deleteConversation(@PathVariable Long conversationId, HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ApiResponse.unauthorized("请先登录");
+        }
+        
+        try {
+            chatConversationService.deleteConversation(userId, conversationId);
+            return ApiResponse.success("删除成功", null);
+        } catch (Exception e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+    
     /**
      * 未登录用户使用自定义API进行聊天
      */
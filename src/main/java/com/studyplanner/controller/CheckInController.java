@@ -1,12 +1,22 @@
 package com.studyplanner.controller;
 
 import com.studyplanner.dto.ApiResponse;
+import com.studyplanner.dto.BatchCheckInRequest;
+import com.studyplanner.dto.PageResult;
 import com.studyplanner.entity.CheckIn;
 import com.studyplanner.service.CheckInService;
 import jakarta.servlet.http.HttpSession;
+import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Map;
 
@@ -40,6 +50,31 @@ public class CheckInController {
         }
     }
     
+    /**
+     * 批量打卡（支持Idempotency-Key请求头或请求体中的idempotencyKey，重复提交返回首次结果）
+     */
+    @PostMapping("/batch")
+    public ApiResponse<Map<String, Object>> batchCheckIn(
+            @Valid @RequestBody BatchCheckInRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ApiResponse.unauthorized("请先登录");
+        }
+        
+        String key = idempotencyKey != null ? idempotencyKey : request.getIdempotencyKey();
+        if (key != null && key.length() > 64) {
+            return ApiResponse.error("幂等键不能超过64个字符");
+        }
+        try {
+            Map<String, Object> result = checkInService.batchCheckIn(userId, key, request.getCheckDate(), request.getItems());
+            return ApiResponse.success("打卡成功", result);
+        } catch (Exception e) {
+            return ApiResponse.error("打卡失败: " + e.getMessage());
+        }
+    }
+    
     /**
      * 获取今日打卡状态
      */
@@ -55,7 +90,7 @@ public class CheckInController {
     }
     
     /**
-     * 获取打卡记录
+     * 获取最近的打卡记录（条数有上限，完整历史使用分页接口）
      */
     @GetMapping("/record")
     public ApiResponse<List<CheckIn>> getCheckInRecords(HttpSession session) {
@@ -68,6 +103,43 @@ public class CheckInController {
         return ApiResponse.success(records);
     }
     
+    /**
+     * 分页获取打卡记录（按打卡日期倒序，cursor为上一页返回的nextCursor）
+     */
+    @GetMapping("/records")
+    public ApiResponse<PageResult<CheckIn>> getCheckInRecordsPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ApiResponse.unauthorized("请先登录");
+        }
+        
+        try {
+            return ApiResponse.success(checkInService.getUserCheckInsPage(userId, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+    
+    /**
+     * 导出全部打卡记录（CSV，流式输出）
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportCheckIns(HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        
+        StreamingResponseBody body = out -> checkInService.exportCheckIns(userId, out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"checkin-records.csv\"")
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .body(body);
+    }
+    
     /**
      * 获取连续打卡天数
      */
@@ -114,7 +186,7 @@ public class CheckInController {
      * 获取月度打卡数据（日历视图）
      */
     @GetMapping("/calendar")
-    public ApiResponse<Map<String, List<CheckIn>>> getMonthlyCheckIns(
+    public ApiResponse<Map<String, Object>> getMonthlyCheckIns(
             @RequestParam int year,
             @RequestParam int month,
             HttpSession session) {
@@ -123,7 +195,54 @@ public class CheckInController {
             return ApiResponse.unauthorized("请先登录");
         }
         
-        Map<String, List<CheckIn>> data = checkInService.getMonthlyCheckIns(userId, year, month);
+        Map<String, Object> data = checkInService.getMonthlyCheckIns(userId, year, month);
         return ApiResponse.success(data);
     }
+    
+    /**
+     * 获取月度紧凑日历数据（打卡位掩码和时长档位）
+     */
+    @GetMapping("/calendar/compact")
+    public ApiResponse<Map<String, Object>> getMonthlyActivity(
+            @RequestParam int year,
+            @RequestParam int month,
+            HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ApiResponse.unauthorized("请先登录");
+        }
+        if (!isValidYear(year)) {
+            return ApiResponse.error("年份无效");
+        }
+        if (month < 1 || month > 12) {
+            return ApiResponse.error("月份无效");
+        }
+        
+        return ApiResponse.success(checkInService.getMonthlyActivity(userId, year, month));
+    }
+    
+    /**
+     * 获取年度学习热力图
+     */
+    @GetMapping("/heatmap")
+    public ApiResponse<Map<String, Object>> getYearHeatmap(
+            @RequestParam(required = false) Integer year,
+            HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ApiResponse.unauthorized("请先登录");
+        }
+        if (year != null && !isValidYear(year)) {
+            return ApiResponse.error("年份无效");
+        }
+        
+        return ApiResponse.success(checkInService.getYearHeatmap(userId, year));
+    }
+    
+    /**
+     * 年份范围：1970年到明年，超出范围的值会让日期计算抛出异常
+     */
+    private boolean isValidYear(int year) {
+        return year >= 1970 && year <= LocalDate.now().getYear() + 1;
+    }
 }
@@ -0,0 +1,181 @@
+package com.studyplanner.controller;
+
+import com.studyplanner.config.AsyncConfig;
+import com.studyplanner.dto.ApiResponse;
+import com.studyplanner.service.LLMHttpClientRegistry;
+import com.studyplanner.service.LLMModelRouter;
+import com.studyplanner.service.LLMRequestCoalescer;
+import com.studyplanner.service.LLMResilienceGuard;
+import com.studyplanner.service.PlanProgressReconciler;
+import com.studyplanner.service.PlanReminderService;
+import com.studyplanner.service.PlanResponseCache;
+import com.studyplanner.service.SemanticAnswerCache;
+import com.studyplanner.service.TokenEstimator;
+import com.studyplanner.service.UserActivityService;
+import com.studyplanner.service.UserDailyStatsService;
+import com.studyplanner.util.Bulkhead;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 运行监控控制器 - 查看LLM相关组件的运行指标
+ */
+@RestController
+@RequestMapping("/api/monitor")
+public class MonitorController {
+
+    @Autowired
+    private PlanResponseCache planResponseCache;
+
+    @Autowired
+    private LLMRequestCoalescer llmRequestCoalescer;
+
+    @Autowired
+    private LLMModelRouter llmModelRouter;
+
+    @Autowired
+    private LLMResilienceGuard llmResilienceGuard;
+
+    @Autowired
+    private TokenEstimator tokenEstimator;
+
+    @Autowired
+    private SemanticAnswerCache semanticAnswerCache;
+
+    @Autowired
+    private AsyncConfig asyncConfig;
+
+    @Autowired
+    @Qualifier("llmBulkhead")
+    private Bulkhead llmBulkhead;
+
+    @Autowired
+    @Qualifier("guestLlmBulkhead")
+    private Bulkhead guestLlmBulkhead;
+
+    @Autowired
+    private LLMHttpClientRegistry llmHttpClientRegistry;
+
+    @Autowired
+    @Qualifier("mailBulkhead")
+    private Bulkhead mailBulkhead;
+
+    @Autowired
+    private PlanProgressReconciler planProgressReconciler;
+
+    @Autowired
+    private UserDailyStatsService userDailyStatsService;
+
+    @Autowired
+    private UserActivityService userActivityService;
+
+    @Autowired
+    private PlanReminderService planReminderService;
+
+    /**
+     * 学习计划响应缓存统计（命中/未命中/淘汰等）
+     */
+    @GetMapping("/llm-cache")
+    public ApiResponse<Map<String, Object>> getPlanCacheStats() {
+        return ApiResponse.success(planResponseCache.getStats());
+    }
+
+    /**
+     * LLM请求合并统计（实际上游调用数/被合并的请求数）
+     */
+    @GetMapping("/llm-coalescing")
+    public ApiResponse<Map<String, Object>> getCoalescingStats() {
+        return ApiResponse.success(llmRequestCoalescer.getStats());
+    }
+
+    /**
+     * 模型路由统计（各模型p50/p99延迟、错误率、故障转移与对冲次数）
+     */
+    @GetMapping("/llm-router")
+    public ApiResponse<Map<String, Object>> getRouterStats() {
+        return ApiResponse.success(llmModelRouter.getStats());
+    }
+
+    /**
+     * 熔断器与自适应并发限制状态（按上游主机）
+     */
+    @GetMapping("/llm-resilience")
+    public ApiResponse<Map<String, Object>> getResilienceStats() {
+        return ApiResponse.success(llmResilienceGuard.getStats());
+    }
+
+    /**
+     * 阻塞I/O执行方式与各资源舱壁占用情况
+     */
+    @GetMapping("/bulkheads")
+    public ApiResponse<Map<String, Object>> getBulkheadStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("virtualThreads", asyncConfig.isUsingVirtualThreads());
+        stats.put("llm", llmBulkhead.getStats());
+        stats.put("guestLlm", guestLlmBulkhead.getStats());
+        stats.put("mail", mailBulkhead.getStats());
+        return ApiResponse.success(stats);
+    }
+
+    /**
+     * LLM HTTP连接池状态（系统服务商与各游客自定义主机）
+     */
+    @GetMapping("/llm-http")
+    public ApiResponse<Map<String, Object>> getHttpClientStats() {
+        return ApiResponse.success(llmHttpClientRegistry.getStats());
+    }
+
+    /**
+     * Token预算估算统计（估算与实际用量、校准比例、截断次数）
+     */
+    @GetMapping("/llm-tokens")
+    public ApiResponse<Map<String, Object>> getTokenStats() {
+        return ApiResponse.success(tokenEstimator.getStats());
+    }
+
+    /**
+     * 相似问题缓存统计（命中率、候选数、平均查询耗时）
+     */
+    @GetMapping("/llm-semantic-cache")
+    public ApiResponse<Map<String, Object>> getSemanticCacheStats() {
+        return ApiResponse.success(semanticAnswerCache.getStats());
+    }
+
+    /**
+     * 计划进度计数校对结果（最近一次修正的计划数）
+     */
+    @GetMapping("/plan-progress")
+    public ApiResponse<Map<String, Object>> getPlanProgressStats() {
+        return ApiResponse.success(planProgressReconciler.getStats());
+    }
+
+    /**
+     * 每日学习汇总最近一次重算的结果
+     */
+    @GetMapping("/daily-stats")
+    public ApiResponse<Map<String, Object>> getDailyStatsRebuildStats() {
+        return ApiResponse.success(userDailyStatsService.getStats());
+    }
+
+    /**
+     * 活跃位图缓存统计（命中/未命中/条数）
+     */
+    @GetMapping("/activity-cache")
+    public ApiResponse<Map<String, Object>> getActivityCacheStats() {
+        return ApiResponse.success(userActivityService.getStats());
+    }
+
+    /**
+     * 闲置提醒调度统计（调度中的计划数、下次到期时间、已发送数等）
+     */
+    @GetMapping("/reminders")
+    public ApiResponse<Map<String, Object>> getReminderStats() {
+        return ApiResponse.success(planReminderService.getStats());
+    }
+}
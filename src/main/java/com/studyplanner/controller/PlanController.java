@@ -2,19 +2,32 @@ package com.studyplanner.controller;
 
 import com.alibaba.fastjson2.JSONObject;
 import com.studyplanner.dto.ApiResponse;
+import com.studyplanner.dto.PageResult;
 import com.studyplanner.dto.PlanGenerateRequest;
+import com.studyplanner.dto.PlanGenerationJob;
 import com.studyplanner.entity.PlanDetail;
 import com.studyplanner.entity.StudyPlan;
 import com.studyplanner.service.LLMService;
+import com.studyplanner.service.PlanGenerationJobService;
 import com.studyplanner.service.PlanService;
+import com.studyplanner.service.PlanStreamListener;
 import jakarta.servlet.http.HttpSession;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * 学习计划控制器
@@ -29,6 +42,16 @@ public class PlanController {
     @Autowired
     private LLMService llmService;
 
+    @Autowired
+    private PlanGenerationJobService planGenerationJobService;
+
+    @Autowired
+    @Qualifier("planStreamExecutor")
+    private TaskExecutor planStreamExecutor;
+
+    @Value("${llm.stream.timeout-ms:300000}")
+    private long streamTimeoutMs;
+
     /**
      * 获取可用的模型列表（登录用户）
      */
@@ -62,6 +85,148 @@ public class PlanController {
         }
     }
 
+    /**
+     * 异步生成学习计划（登录用户）- 立即返回任务ID，之后轮询或订阅任务状态
+     */
+    @PostMapping("/generate/async")
+    public ApiResponse<PlanGenerationJob> generatePlanAsync(@Valid @RequestBody PlanGenerateRequest request,
+            HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ApiResponse.unauthorized("请先登录");
+        }
+
+        try {
+            PlanGenerationJob job = planGenerationJobService.submit(userId, request);
+            return ApiResponse.success("计划生成任务已提交", job);
+        } catch (RuntimeException e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 查询计划生成任务状态
+     */
+    @GetMapping("/job/{jobId}")
+    public ApiResponse<PlanGenerationJob> getGenerationJob(@PathVariable String jobId, HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ApiResponse.unauthorized("请先登录");
+        }
+
+        PlanGenerationJob job = planGenerationJobService.getJob(jobId, userId);
+        if (job == null) {
+            return ApiResponse.error("任务不存在或已过期");
+        }
+        return ApiResponse.success(job);
+    }
+
+    /**
+     * 订阅计划生成任务状态（SSE推送，事件名status，任务结束后关闭连接）
+     */
+    @GetMapping(value = "/job/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeGenerationJob(@PathVariable String jobId, HttpSession session) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            sendEvent(emitter, "error", ApiResponse.unauthorized("请先登录"));
+            emitter.complete();
+            return emitter;
+        }
+
+        Consumer<PlanGenerationJob> listener = job -> {
+            sendEvent(emitter, "status", job);
+            if (job.isFinished()) {
+                emitter.complete();
+            }
+        };
+        emitter.onCompletion(() -> planGenerationJobService.unsubscribe(jobId, listener));
+        emitter.onTimeout(() -> planGenerationJobService.unsubscribe(jobId, listener));
+
+        if (!planGenerationJobService.subscribe(jobId, userId, listener)) {
+            sendEvent(emitter, "error", ApiResponse.error("任务不存在或已过期"));
+            emitter.complete();
+        }
+        return emitter;
+    }
+
+    /**
+     * 流式生成学习计划（登录用户，SSE推送）
+     * 事件：plan（计划已创建）、title（标题已更新）、day（某天任务已保存）、done（完成）、error（失败）
+     */
+    @PostMapping(value = "/generate/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter generatePlanStream(@Valid @RequestBody PlanGenerateRequest request, HttpSession session) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            sendEvent(emitter, "error", ApiResponse.unauthorized("请先登录"));
+            emitter.complete();
+            return emitter;
+        }
+
+        PlanStreamListener listener = new PlanStreamListener() {
+            @Override
+            public void onPlanCreated(StudyPlan plan) {
+                sendEvent(emitter, "plan", plan);
+            }
+
+            @Override
+            public void onTitleUpdated(StudyPlan plan) {
+                sendEvent(emitter, "title", plan.getTitle());
+            }
+
+            @Override
+            public void onDayPlan(PlanDetail detail) {
+                sendEvent(emitter, "day", detail);
+            }
+
+            @Override
+            public void onComplete(StudyPlan plan, int totalSavedDays) {
+                Map<String, Object> result = new HashMap<>();
+                result.put("plan", plan);
+                result.put("savedDays", totalSavedDays);
+                sendEvent(emitter, "done", ApiResponse.success("计划生成成功", result));
+            }
+        };
+
+        try {
+            planStreamExecutor.execute(() -> {
+                try {
+                    planService.generatePlanStream(userId, request, listener);
+                    emitter.complete();
+                } catch (UncheckedIOException e) {
+                    // 客户端已断开，无需再推送
+                    emitter.completeWithError(e);
+                } catch (Exception e) {
+                    try {
+                        sendEvent(emitter, "error", ApiResponse.error("计划生成失败: " + e.getMessage()));
+                        emitter.complete();
+                    } catch (RuntimeException sendFailure) {
+                        emitter.completeWithError(sendFailure);
+                    }
+                }
+            });
+        } catch (TaskRejectedException e) {
+            sendEvent(emitter, "error", ApiResponse.error("当前生成任务过多，请稍后再试"));
+            emitter.complete();
+        }
+
+        return emitter;
+    }
+
+    /**
+     * 推送一条SSE事件，发送失败时抛出UncheckedIOException以中止生成
+     */
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     /**
      * 游客体验 - 生成学习计划（使用自定义API配置，不保存）
      */
@@ -103,6 +268,26 @@ public class PlanController {
         return ApiResponse.success(plans);
     }
 
+    /**
+     * 分页获取用户的计划（按创建时间倒序，cursor为上一页返回的nextCursor）
+     */
+    @GetMapping("/page")
+    public ApiResponse<PageResult<StudyPlan>> getUserPlansPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size,
+            HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ApiResponse.unauthorized("请先登录");
+        }
+
+        try {
+            return ApiResponse.success(planService.getUserPlansPage(userId, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
     /**
      * 获取用户的所有计划（别名接口）
      */
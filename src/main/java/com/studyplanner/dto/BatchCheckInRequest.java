@@ -0,0 +1,31 @@
+package com.studyplanner.dto;
+
+import com.studyplanner.entity.CheckIn;
+import jakarta.validation.constraints.*;
+import lombok.Data;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 批量打卡请求DTO
+ */
+@Data
+public class BatchCheckInRequest {
+    
+    /**
+     * 客户端幂等键（也可以通过Idempotency-Key请求头传递），相同键的重复请求返回首次结果
+     */
+    @Size(max = 64, message = "幂等键不能超过64个字符")
+    private String idempotencyKey;
+    
+    /**
+     * 打卡日期（为空时为今天）
+     */
+    private LocalDate checkDate;
+    
+    /**
+     * 打卡的任务（只需detailId、studyHours、note，计划ID按任务查询）
+     */
+    @NotEmpty(message = "打卡任务不能为空")
+    private List<CheckIn> items;
+}
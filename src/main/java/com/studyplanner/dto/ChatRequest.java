@@ -4,6 +4,9 @@ import java.util.List;
 
 public class ChatRequest {
     private List<ChatMessage> messages;
+    // 服务端会话ID，提供时只需发送本轮问题message，历史由服务端维护
+    private Long conversationId;
+    private String message;
     private String model;
     private String customApiUrl;
     private String customApiKey;
@@ -38,6 +41,22 @@ public class ChatRequest {
         this.messages = messages;
     }
     
+    public Long getConversationId() {
+        return conversationId;
+    }
+    
+    public void setConversationId(Long conversationId) {
+        this.conversationId = conversationId;
+    }
+    
+    public String getMessage() {
+        return message;
+    }
+    
+    public void setMessage(String message) {
+        this.message = message;
+    }
+    
     public String getModel() {
         return model;
     }
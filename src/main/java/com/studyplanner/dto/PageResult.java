@@ -0,0 +1,36 @@
+package com.studyplanner.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 游标分页结果
+ * nextCursor为下一页的游标，没有更多数据时为null
+ */
+@Data
+public class PageResult<T> {
+
+    /**
+     * 当前页数据
+     */
+    private List<T> items;
+
+    /**
+     * 下一页游标
+     */
+    private String nextCursor;
+
+    /**
+     * 是否还有更多数据
+     */
+    private Boolean hasMore;
+
+    public PageResult() {}
+
+    public PageResult(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+        this.hasMore = nextCursor != null;
+    }
+}
@@ -0,0 +1,65 @@
+package com.studyplanner.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 计划生成任务状态
+ */
+@Data
+public class PlanGenerationJob {
+
+    public static final String STATUS_PENDING = "排队中";
+
+    public static final String STATUS_RUNNING = "生成中";
+
+    public static final String STATUS_SUCCEEDED = "已完成";
+
+    public static final String STATUS_FAILED = "失败";
+
+    /**
+     * 任务ID
+     */
+    private String jobId;
+
+    /**
+     * 提交任务的用户ID
+     */
+    @JsonIgnore
+    private Long userId;
+
+    /**
+     * 任务状态(排队中/生成中/已完成/失败)
+     */
+    private String status;
+
+    /**
+     * 提示信息（失败原因等）
+     */
+    private String message;
+
+    /**
+     * 生成成功后的计划ID
+     */
+    private Long planId;
+
+    /**
+     * 提交时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 最近一次状态变更时间
+     */
+    private LocalDateTime updateTime;
+
+    /**
+     * 是否已结束（成功或失败）
+     */
+    @JsonIgnore
+    public boolean isFinished() {
+        return STATUS_SUCCEEDED.equals(status) || STATUS_FAILED.equals(status);
+    }
+}
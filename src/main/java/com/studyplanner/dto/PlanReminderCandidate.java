@@ -0,0 +1,40 @@
+package com.studyplanner.dto;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 闲置提醒计划信息（计划、用户、提醒设置和最后打卡时间的联合查询结果）
+ */
+@Data
+public class PlanReminderCandidate {
+    
+    private Long planId;
+    
+    private Long userId;
+    
+    private String title;
+    
+    private String status;
+    
+    private LocalDateTime createTime;
+    
+    /**
+     * 计划最后一次打卡时间（从未打卡时为空）
+     */
+    private LocalDateTime lastCheckInTime;
+    
+    private String username;
+    
+    private String email;
+    
+    /**
+     * 用户设置的闲置时间阈值（未设置时为空）
+     */
+    private Integer inactiveMinutes;
+    
+    /**
+     * 用户设置的提醒间隔（未设置时为空）
+     */
+    private Integer reminderIntervalMinutes;
+}
@@ -0,0 +1,46 @@
+package com.studyplanner.entity;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * AI对话会话实体类
+ */
+@Data
+public class ChatConversation {
+    
+    /**
+     * 会话ID
+     */
+    private Long id;
+    
+    /**
+     * 用户ID
+     */
+    private Long userId;
+    
+    /**
+     * 会话标题
+     */
+    private String title;
+    
+    /**
+     * 较早对话的滚动摘要
+     */
+    private String summary;
+    
+    /**
+     * 已并入摘要的最后一条对话记录ID
+     */
+    private Long summarizedUntilId;
+    
+    /**
+     * 创建时间
+     */
+    private LocalDateTime createTime;
+    
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+}
@@ -19,6 +19,11 @@ public class ChatHistory {
      */
     private Long userId;
     
+    /**
+     * 会话ID
+     */
+    private Long conversationId;
+    
     /**
      * 用户问题
      */
@@ -61,6 +61,16 @@ public class StudyPlan {
      */
     private String status;
 
+    /**
+     * 每日任务总数（冗余计数，保存任务时累加）
+     */
+    private Integer totalDaysCount;
+
+    /**
+     * 已完成任务数（冗余计数，打卡时累加）
+     */
+    private Integer completedCount;
+
     /**
      * 创建时间
      */
@@ -0,0 +1,36 @@
+package com.studyplanner.entity;
+
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * 用户年度活跃位图实体类
+ */
+@Data
+public class UserActivity {
+    
+    /**
+     * 用户ID
+     */
+    private Long userId;
+    
+    /**
+     * 年份
+     */
+    private Integer year;
+    
+    /**
+     * 打卡位图（每天1位，低位在前）
+     */
+    private byte[] activeDays;
+    
+    /**
+     * 学习时长档位（每天2位）
+     */
+    private byte[] hourLevels;
+    
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+}
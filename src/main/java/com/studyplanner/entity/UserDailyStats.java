@@ -0,0 +1,43 @@
+package com.studyplanner.entity;
+
+import lombok.Data;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 用户每日学习汇总实体类
+ */
+@Data
+public class UserDailyStats {
+    
+    /**
+     * 用户ID
+     */
+    private Long userId;
+    
+    /**
+     * 日期
+     */
+    private LocalDate statDate;
+    
+    /**
+     * 当天学习时长合计(小时)
+     */
+    private BigDecimal studyHours;
+    
+    /**
+     * 当天打卡次数
+     */
+    private Integer checkInCount;
+    
+    /**
+     * 当天打卡涉及的计划数
+     */
+    private Integer plansTouched;
+    
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+}
@@ -0,0 +1,37 @@
+package com.studyplanner.entity;
+
+import lombok.Data;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 用户连续打卡状态实体类
+ */
+@Data
+public class UserStreak {
+    
+    /**
+     * 用户ID
+     */
+    private Long userId;
+    
+    /**
+     * 截至最后打卡日期的连续打卡天数
+     */
+    private Integer currentStreak;
+    
+    /**
+     * 历史最长连续打卡天数
+     */
+    private Integer longestStreak;
+    
+    /**
+     * 最后打卡日期
+     */
+    private LocalDate lastActiveDate;
+    
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updateTime;
+}
@@ -0,0 +1,54 @@
+package com.studyplanner.exception;
+
+/**
+ * LLM调用异常
+ * 携带上游HTTP状态码，并区分是否值得换一个模型/服务商重试
+ */
+public class LLMException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 上游HTTP状态码，网络错误或超时时为0
+     */
+    private final int statusCode;
+
+    /**
+     * 是否为读取/连接超时
+     */
+    private final boolean timeout;
+
+    public LLMException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+        this.timeout = false;
+    }
+
+    public LLMException(String message, Throwable cause, boolean timeout) {
+        super(message, cause);
+        this.statusCode = 0;
+        this.timeout = timeout;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public boolean isTimeout() {
+        return timeout;
+    }
+
+    /**
+     * 是否被限流（429）
+     */
+    public boolean isRateLimited() {
+        return statusCode == 429;
+    }
+
+    /**
+     * 是否可以换一个候选模型重试：超时、网络错误、限流和5xx可重试，其余4xx（如鉴权失败、参数错误）不重试
+     */
+    public boolean isRetryable() {
+        return statusCode == 0 || statusCode == 429 || statusCode >= 500;
+    }
+}
@@ -0,0 +1,60 @@
+package com.studyplanner.mapper;
+
+import com.studyplanner.entity.ChatConversation;
+import org.apache.ibatis.annotations.*;
+import java.util.List;
+
+/**
+ * AI对话会话Mapper接口
+ */
+@Mapper
+public interface ChatConversationMapper {
+    
+    /**
+     * 根据ID查询会话
+     */
+    @Select("SELECT * FROM chat_conversation WHERE id = #{id}")
+    ChatConversation findById(Long id);
+    
+    /**
+     * 查询用户的会话列表（最近活跃的在前）
+     */
+    @Select("SELECT * FROM chat_conversation WHERE user_id = #{userId} ORDER BY update_time DESC")
+    List<ChatConversation> findByUserId(Long userId);
+    
+    /**
+     * 创建会话
+     */
+    @Insert("INSERT INTO chat_conversation (user_id, title, summarized_until_id, create_time, update_time) " +
+            "VALUES (#{userId}, #{title}, 0, NOW(), NOW())")
+    @Options(useGeneratedKeys = true, keyProperty = "id")
+    int insert(ChatConversation conversation);
+    
+    /**
+     * 更新会话标题
+     */
+    @Update("UPDATE chat_conversation SET title = #{title} WHERE id = #{id}")
+    int updateTitle(@Param("id") Long id, @Param("title") String title);
+    
+    /**
+     * 更新滚动摘要（仅当摘要位置未被其他线程推进时生效）
+     */
+    @Update("UPDATE chat_conversation SET summary = #{summary}, summarized_until_id = #{summarizedUntilId} " +
+            "WHERE id = #{id} AND summarized_until_id = #{expectedUntilId}")
+    int updateSummary(@Param("id") Long id, @Param("summary") String summary,
+                      @Param("summarizedUntilId") Long summarizedUntilId,
+                      @Param("expectedUntilId") Long expectedUntilId);
+    
+    /**
+     * 批量刷新会话的最后活跃时间
+     */
+    @Update("<script>UPDATE chat_conversation SET update_time = NOW() WHERE id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    int touchAll(@Param("ids") List<Long> ids);
+    
+    /**
+     * 删除会话（对话记录级联删除）
+     */
+    @Delete("DELETE FROM chat_conversation WHERE id = #{id}")
+    int delete(Long id);
+}
@@ -0,0 +1,49 @@
+package com.studyplanner.mapper;
+
+import com.studyplanner.entity.ChatHistory;
+import org.apache.ibatis.annotations.*;
+import java.util.List;
+
+/**
+ * AI对话记录Mapper接口
+ */
+@Mapper
+public interface ChatHistoryMapper {
+    
+    /**
+     * 查询会话中ID大于afterId的记录（最新的在前）
+     */
+    @Select("SELECT * FROM chat_history WHERE conversation_id = #{conversationId} AND id > #{afterId} " +
+            "ORDER BY id DESC LIMIT #{limit}")
+    List<ChatHistory> findRecentAfter(@Param("conversationId") Long conversationId,
+                                      @Param("afterId") Long afterId,
+                                      @Param("limit") int limit);
+    
+    /**
+     * 按ID升序查询会话中afterId < id < beforeId的记录（生成摘要时从最早的未摘要记录开始）
+     */
+    @Select("SELECT * FROM chat_history WHERE conversation_id = #{conversationId} AND id > #{afterId} " +
+            "AND id < #{beforeId} ORDER BY id ASC LIMIT #{limit}")
+    List<ChatHistory> findOldestBetween(@Param("conversationId") Long conversationId,
+                                        @Param("afterId") Long afterId,
+                                        @Param("beforeId") Long beforeId,
+                                        @Param("limit") int limit);
+    
+    /**
+     * 批量插入对话记录
+     */
+    @Insert("<script>INSERT INTO chat_history (user_id, conversation_id, question, answer, create_time) VALUES " +
+            "<foreach collection='list' item='item' separator=','>" +
+            "(#{item.userId}, #{item.conversationId}, #{item.question}, #{item.answer}, #{item.createTime})" +
+            "</foreach></script>")
+    @Options(useGeneratedKeys = true, keyProperty = "id")
+    int batchInsert(@Param("list") List<ChatHistory> list);
+    
+    /**
+     * 插入单条对话记录
+     */
+    @Insert("INSERT INTO chat_history (user_id, conversation_id, question, answer, create_time) " +
+            "VALUES (#{userId}, #{conversationId}, #{question}, #{answer}, #{createTime})")
+    @Options(useGeneratedKeys = true, keyProperty = "id")
+    int insert(ChatHistory history);
+}
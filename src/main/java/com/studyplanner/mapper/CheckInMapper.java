@@ -2,6 +2,8 @@ package com.studyplanner.mapper;
 
 import com.studyplanner.entity.CheckIn;
 import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.ResultSetType;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -29,6 +31,25 @@ public interface CheckInMapper {
     @Select("SELECT * FROM check_in WHERE user_id = #{userId} ORDER BY check_date DESC")
     List<CheckIn> findByUserId(Long userId);
     
+    /**
+     * 按(check_date, id)倒序键集分页查询用户的打卡记录，cursorDate为空时查询第一页
+     */
+    @Select("<script>SELECT * FROM check_in WHERE user_id = #{userId} " +
+            "<if test='cursorDate != null'>AND (check_date &lt; #{cursorDate} OR (check_date = #{cursorDate} AND id &lt; #{cursorId})) </if>" +
+            "ORDER BY check_date DESC, id DESC LIMIT #{limit}</script>")
+    List<CheckIn> findPageByUserId(@Param("userId") Long userId,
+                                   @Param("cursorDate") LocalDate cursorDate,
+                                   @Param("cursorId") Long cursorId,
+                                   @Param("limit") int limit);
+    
+    /**
+     * 流式读取用户的全部打卡记录（用于导出），需在事务内遍历；
+     * fetchSize为Integer.MIN_VALUE时MySQL驱动逐行返回，内存占用与记录数无关
+     */
+    @Select("SELECT * FROM check_in WHERE user_id = #{userId} ORDER BY check_date DESC, id DESC")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    Cursor<CheckIn> streamByUserId(Long userId);
+    
     /**
      * 查询计划的打卡记录
      */
@@ -52,17 +73,25 @@ public interface CheckInMapper {
     int insert(CheckIn checkIn);
     
     /**
-     * 统计用户总打卡天数
+     * 多行插入打卡记录，已存在的(user_id, check_date, detail_id)保持不变（重复打卡不报错）
      */
-    @Select("SELECT COUNT(DISTINCT check_date) FROM check_in WHERE user_id = #{userId}")
-    int countCheckInDays(Long userId);
+    @Insert("<script>INSERT INTO check_in (user_id, plan_id, detail_id, check_date, study_hours, note, create_time) VALUES " +
+            "<foreach collection='list' item='item' separator=','>" +
+            "(#{item.userId}, #{item.planId}, #{item.detailId}, #{item.checkDate}, #{item.studyHours}, #{item.note}, NOW())" +
+            "</foreach> ON DUPLICATE KEY UPDATE id = id</script>")
+    @Options(useGeneratedKeys = true, keyProperty = "id")
+    int batchUpsert(@Param("list") List<CheckIn> checkIns);
     
     /**
-     * 统计用户总学习时长
+     * 加锁查询用户某天已打卡的任务（同时锁住这些唯一键的间隙，防止并发请求插入相同的打卡）
      */
-    @Select("SELECT COALESCE(SUM(study_hours), 0) FROM check_in WHERE user_id = #{userId}")
-    Double sumStudyHours(Long userId);
-
+    @Select("<script>SELECT * FROM check_in WHERE user_id = #{userId} AND check_date = #{date} AND detail_id IN " +
+            "<foreach collection='detailIds' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "FOR UPDATE</script>")
+    List<CheckIn> findByDetailIdsForUpdate(@Param("userId") Long userId,
+                                           @Param("date") LocalDate date,
+                                           @Param("detailIds") List<Long> detailIds);
+    
     /**
      * 统计用户某天的学习时长
      */
@@ -70,14 +99,10 @@ public interface CheckInMapper {
     Double sumStudyHoursByDate(@Param("userId") Long userId, @Param("date") LocalDate date);
     
     /**
-     * 计算连续打卡天数
-     */
-    @Select("SELECT check_date FROM check_in WHERE user_id = #{userId} GROUP BY check_date ORDER BY check_date DESC")
-    List<LocalDate> findCheckInDates(Long userId);
-    
-    /**
-     * 查询计划最后一次打卡时间（包含时间戳）
+     * 加锁统计用户某天在某个计划上的打卡次数（锁定读取总是读到最新提交的数据，不受事务快照影响）
      */
-    @Select("SELECT MAX(create_time) FROM check_in WHERE plan_id = #{planId}")
-    java.time.LocalDateTime findLastCheckInDateTimeByPlanId(Long planId);
+    @Select("SELECT COUNT(*) FROM check_in WHERE user_id = #{userId} AND check_date = #{date} AND plan_id = #{planId} " +
+            "FOR SHARE")
+    int countByUserDateAndPlanForShare(@Param("userId") Long userId, @Param("date") LocalDate date,
+                                       @Param("planId") Long planId);
 }
@@ -0,0 +1,35 @@
+package com.studyplanner.mapper;
+
+import org.apache.ibatis.annotations.*;
+import java.time.LocalDateTime;
+
+/**
+ * 批量打卡幂等记录Mapper接口
+ */
+@Mapper
+public interface CheckInRequestMapper {
+    
+    /**
+     * 登记幂等键（返回0表示该键已被使用；并发的相同请求会在主键上等待首个事务提交）
+     */
+    @Insert("INSERT IGNORE INTO check_in_request (user_id, idempotency_key, create_time) VALUES (#{userId}, #{key}, NOW())")
+    int tryInsert(@Param("userId") Long userId, @Param("key") String key);
+    
+    /**
+     * 查询幂等键对应的首次处理结果
+     */
+    @Select("SELECT response FROM check_in_request WHERE user_id = #{userId} AND idempotency_key = #{key}")
+    String findResponse(@Param("userId") Long userId, @Param("key") String key);
+    
+    /**
+     * 保存首次处理结果
+     */
+    @Update("UPDATE check_in_request SET response = #{response} WHERE user_id = #{userId} AND idempotency_key = #{key}")
+    int saveResponse(@Param("userId") Long userId, @Param("key") String key, @Param("response") String response);
+    
+    /**
+     * 删除过期的幂等记录
+     */
+    @Delete("DELETE FROM check_in_request WHERE create_time < #{before}")
+    int deleteBefore(LocalDateTime before);
+}
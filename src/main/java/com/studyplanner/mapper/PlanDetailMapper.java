@@ -29,9 +29,14 @@ public interface PlanDetailMapper {
     PlanDetail findByPlanIdAndDay(@Param("planId") Long planId, @Param("dayNumber") Integer dayNumber);
     
     /**
-     * 批量插入任务
+     * 批量插入任务（单条多行INSERT，调用方控制每批行数）
      */
-    int batchInsert(List<PlanDetail> details);
+    @Insert("<script>INSERT INTO plan_detail (plan_id, day_number, content, duration, resources, is_completed, create_time) VALUES " +
+            "<foreach collection='list' item='item' separator=','>" +
+            "(#{item.planId}, #{item.dayNumber}, #{item.content}, #{item.duration}, #{item.resources}, #{item.isCompleted}, NOW())" +
+            "</foreach></script>")
+    @Options(useGeneratedKeys = true, keyProperty = "id")
+    int batchInsert(@Param("list") List<PlanDetail> details);
     
     /**
      * 插入单个任务
@@ -42,20 +47,25 @@ public interface PlanDetailMapper {
     int insert(PlanDetail detail);
     
     /**
-     * 更新完成状态
+     * 加锁查询属于该用户的任务（批量打卡时校验归属并取得计划ID和完成状态），同时锁住所属计划行，
+     * 同一计划的并发打卡因此串行执行
      */
-    @Update("UPDATE plan_detail SET is_completed = #{isCompleted} WHERE id = #{id}")
-    int updateCompleted(@Param("id") Long id, @Param("isCompleted") Integer isCompleted);
+    @Select("<script>SELECT d.* FROM plan_detail d JOIN study_plan p ON p.id = d.plan_id " +
+            "WHERE p.user_id = #{userId} AND d.id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "FOR UPDATE</script>")
+    List<PlanDetail> findOwnedByIdsForUpdate(@Param("userId") Long userId, @Param("ids") List<Long> ids);
     
     /**
-     * 根据计划ID删除所有任务
+     * 批量标记任务为完成（调用方已按计划统计新完成的数量）
      */
-    @Delete("DELETE FROM plan_detail WHERE plan_id = #{planId}")
-    int deleteByPlanId(Long planId);
+    @Update("<script>UPDATE plan_detail SET is_completed = 1 WHERE is_completed = 0 AND id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    int markCompletedBatch(@Param("ids") List<Long> ids);
     
     /**
-     * 统计计划完成的任务数
+     * 根据计划ID删除所有任务
      */
-    @Select("SELECT COUNT(*) FROM plan_detail WHERE plan_id = #{planId} AND is_completed = 1")
-    int countCompletedByPlanId(Long planId);
+    @Delete("DELETE FROM plan_detail WHERE plan_id = #{planId}")
+    int deleteByPlanId(Long planId);
 }
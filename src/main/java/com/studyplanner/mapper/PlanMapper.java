@@ -1,7 +1,9 @@
 package com.studyplanner.mapper;
 
+import com.studyplanner.dto.PlanReminderCandidate;
 import com.studyplanner.entity.StudyPlan;
 import org.apache.ibatis.annotations.*;
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -22,17 +24,40 @@ public interface PlanMapper {
     @Select("SELECT * FROM study_plan WHERE user_id = #{userId} ORDER BY create_time DESC")
     List<StudyPlan> findByUserId(Long userId);
 
+    /**
+     * 按(create_time, id)倒序键集分页查询用户的计划及进度，cursorTime为空时查询第一页
+     */
+    @Select("<script>SELECT *, CASE WHEN total_days_count > 0 THEN completed_count * 100.0 / total_days_count ELSE 0 END AS progress " +
+            "FROM study_plan WHERE user_id = #{userId} " +
+            "<if test='cursorTime != null'>AND (create_time &lt; #{cursorTime} OR (create_time = #{cursorTime} AND id &lt; #{cursorId})) </if>" +
+            "ORDER BY create_time DESC, id DESC LIMIT #{limit}</script>")
+    List<StudyPlan> findPageByUserId(@Param("userId") Long userId,
+                                     @Param("cursorTime") LocalDateTime cursorTime,
+                                     @Param("cursorId") Long cursorId,
+                                     @Param("limit") int limit);
+
+    /**
+     * 查询计划完成百分比（由冗余计数算出，计划不存在时返回null）
+     */
+    @Select("SELECT CASE WHEN total_days_count > 0 THEN completed_count * 100.0 / total_days_count ELSE 0 END " +
+            "FROM study_plan WHERE id = #{id}")
+    Double findProgress(Long id);
+
     /**
      * 查询用户进行中的计划
      */
     @Select("SELECT * FROM study_plan WHERE user_id = #{userId} AND status = '进行中' ORDER BY create_time DESC")
     List<StudyPlan> findActiveByUserId(Long userId);
-    
+
     /**
-     * 查询所有进行中的计划（用于定时任务）
+     * 查询单个计划的提醒信息（计划到期时重新确认状态和最后打卡时间）
      */
-    @Select("SELECT * FROM study_plan WHERE status = '进行中'")
-    List<StudyPlan> findAllActivePlans();
+    @Select("SELECT p.id AS plan_id, p.user_id, p.title, p.status, p.create_time, u.username, u.email, " +
+            "(SELECT MAX(c.create_time) FROM check_in c WHERE c.plan_id = p.id) AS last_check_in_time, " +
+            "s.inactive_minutes, s.reminder_interval_minutes " +
+            "FROM study_plan p JOIN user u ON u.id = p.user_id LEFT JOIN user_settings s ON s.user_id = p.user_id " +
+            "WHERE p.id = #{planId}")
+    PlanReminderCandidate findReminderCandidate(Long planId);
 
     /**
      * 插入新计划
@@ -60,4 +85,50 @@ public interface PlanMapper {
      */
     @Delete("DELETE FROM study_plan WHERE id = #{id}")
     int delete(Long id);
+
+    /**
+     * 累加每日任务总数（保存每日任务后调用）
+     */
+    @Update("UPDATE study_plan SET total_days_count = total_days_count + #{delta} WHERE id = #{id}")
+    int addTotalDaysCount(@Param("id") Long id, @Param("delta") int delta);
+
+    /**
+     * 累加已完成任务数（批量打卡时每个计划调用一次）
+     */
+    @Update("UPDATE study_plan SET completed_count = completed_count + #{delta} WHERE id = #{id}")
+    int addCompletedCount(@Param("id") Long id, @Param("delta") int delta);
+
+    /**
+     * 任务全部完成时把计划标记为已完成（条件更新，只有真正发生状态变化时返回1）
+     */
+    @Update("UPDATE study_plan SET status = '已完成', update_time = NOW() " +
+            "WHERE id = #{id} AND status = '进行中' AND total_days_count > 0 AND completed_count >= total_days_count")
+    int completeIfAllDone(Long id);
+
+    /**
+     * 按plan_detail重算ID区间[fromId, toId)内计划的冗余计数，返回计数有偏差并被修正的计划数
+     * 子查询在UPDATE中是加锁读，不会覆盖并发打卡的结果；只更新计数不一致的计划，
+     * 连接串未开启useAffectedRows时返回的匹配行数也就是实际修正的行数
+     */
+    @Update("UPDATE study_plan p SET " +
+            "p.total_days_count = (SELECT COUNT(*) FROM plan_detail d WHERE d.plan_id = p.id), " +
+            "p.completed_count = (SELECT COUNT(*) FROM plan_detail d WHERE d.plan_id = p.id AND d.is_completed = 1) " +
+            "WHERE p.id >= #{fromId} AND p.id < #{toId} " +
+            "AND (p.total_days_count <> (SELECT COUNT(*) FROM plan_detail d WHERE d.plan_id = p.id) " +
+            "OR p.completed_count <> (SELECT COUNT(*) FROM plan_detail d WHERE d.plan_id = p.id AND d.is_completed = 1))")
+    int reconcileCounters(@Param("fromId") long fromId, @Param("toId") long toId);
+
+    /**
+     * 把ID区间内任务已全部完成但仍为进行中的计划标记为已完成
+     */
+    @Update("UPDATE study_plan SET status = '已完成', update_time = NOW() " +
+            "WHERE id >= #{fromId} AND id < #{toId} AND status = '进行中' " +
+            "AND total_days_count > 0 AND completed_count >= total_days_count")
+    int completeAllDoneInRange(@Param("fromId") long fromId, @Param("toId") long toId);
+
+    /**
+     * 最大计划ID（没有计划时为0）
+     */
+    @Select("SELECT COALESCE(MAX(id), 0) FROM study_plan")
+    long findMaxId();
 }
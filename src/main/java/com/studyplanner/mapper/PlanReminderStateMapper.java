@@ -0,0 +1,108 @@
+package com.studyplanner.mapper;
+
+import org.apache.ibatis.annotations.*;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 计划闲置提醒状态Mapper接口
+ */
+@Mapper
+public interface PlanReminderStateMapper {
+    
+    /**
+     * 下次提醒时间：闲置满阈值，且距离上次提醒满间隔（间隔最少1分钟）
+     */
+    String NEXT_DUE = "IF(last_reminded_at IS NULL, DATE_ADD(last_activity_at, INTERVAL inactive_minutes MINUTE), " +
+            "GREATEST(DATE_ADD(last_activity_at, INTERVAL inactive_minutes MINUTE), " +
+            "DATE_ADD(last_reminded_at, INTERVAL GREATEST(reminder_interval_minutes, 1) MINUTE)))";
+    
+    /**
+     * 按study_plan、user_settings和check_in同步计划ID区间[fromId, toId)内进行中计划的提醒状态
+     * 已有状态保留上次提醒时间和租约；发现更新的打卡时清空上次提醒时间。赋值按从左到右执行
+     */
+    @Insert("INSERT INTO plan_reminder_state (plan_id, user_id, inactive_minutes, reminder_interval_minutes, last_activity_at, next_due_at) " +
+            "SELECT x.id, x.user_id, x.inactive_minutes, x.reminder_interval_minutes, x.last_activity_at, " +
+            "DATE_ADD(x.last_activity_at, INTERVAL x.inactive_minutes MINUTE) FROM (" +
+            "SELECT p.id, p.user_id, COALESCE(s.inactive_minutes, #{defaultInactiveMinutes}) AS inactive_minutes, " +
+            "COALESCE(s.reminder_interval_minutes, #{defaultIntervalMinutes}) AS reminder_interval_minutes, " +
+            "COALESCE((SELECT MAX(c.create_time) FROM check_in c WHERE c.plan_id = p.id), p.create_time) AS last_activity_at " +
+            "FROM study_plan p LEFT JOIN user_settings s ON s.user_id = p.user_id " +
+            "WHERE p.status = '进行中' AND p.id >= #{fromId} AND p.id < #{toId}) x " +
+            "ON DUPLICATE KEY UPDATE user_id = VALUES(user_id), inactive_minutes = VALUES(inactive_minutes), " +
+            "reminder_interval_minutes = VALUES(reminder_interval_minutes), " +
+            "last_reminded_at = IF(VALUES(last_activity_at) > last_activity_at, NULL, last_reminded_at), " +
+            "last_activity_at = GREATEST(last_activity_at, VALUES(last_activity_at)), " +
+            "next_due_at = " + NEXT_DUE)
+    int syncRange(@Param("fromId") long fromId,
+                  @Param("toId") long toId,
+                  @Param("defaultInactiveMinutes") int defaultInactiveMinutes,
+                  @Param("defaultIntervalMinutes") int defaultIntervalMinutes);
+    
+    /**
+     * 删除计划ID区间内已不是进行中计划的提醒状态（删除的计划由外键级联删除）
+     */
+    @Delete("DELETE r FROM plan_reminder_state r JOIN study_plan p ON p.id = r.plan_id " +
+            "WHERE r.plan_id >= #{fromId} AND r.plan_id < #{toId} AND p.status <> '进行中'")
+    int deleteInactiveRange(@Param("fromId") long fromId, @Param("toId") long toId);
+    
+    /**
+     * 计划有新打卡：从现在起重新计算闲置时间并清空上次提醒时间
+     */
+    @Update("UPDATE plan_reminder_state SET last_activity_at = NOW(), last_reminded_at = NULL, " +
+            "next_due_at = DATE_ADD(NOW(), INTERVAL inactive_minutes MINUTE) WHERE plan_id = #{planId}")
+    int touchActivity(Long planId);
+    
+    /**
+     * 用户修改提醒设置：更新该用户所有计划的阈值并重新计算下次提醒时间
+     */
+    @Update("UPDATE plan_reminder_state SET inactive_minutes = #{inactiveMinutes}, " +
+            "reminder_interval_minutes = #{intervalMinutes}, next_due_at = " + NEXT_DUE + " WHERE user_id = #{userId}")
+    int updateSettings(@Param("userId") Long userId,
+                       @Param("inactiveMinutes") int inactiveMinutes,
+                       @Param("intervalMinutes") int intervalMinutes);
+    
+    /**
+     * 加锁查询已到期且没有有效租约的计划，其他实例正在领取的行直接跳过（需在事务内调用）
+     */
+    @Select("SELECT plan_id FROM plan_reminder_state WHERE next_due_at <= NOW() " +
+            "AND (lease_until IS NULL OR lease_until < NOW()) ORDER BY next_due_at LIMIT #{limit} FOR UPDATE SKIP LOCKED")
+    List<Long> findDueForUpdate(int limit);
+    
+    /**
+     * 为领取到的计划设置租约
+     */
+    @Update("<script>UPDATE plan_reminder_state SET lease_owner = #{owner}, " +
+            "lease_until = DATE_ADD(NOW(), INTERVAL #{leaseSeconds} SECOND) WHERE plan_id IN " +
+            "<foreach collection='planIds' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    int lease(@Param("planIds") List<Long> planIds, @Param("owner") String owner, @Param("leaseSeconds") int leaseSeconds);
+    
+    /**
+     * 记录本次提醒并释放租约：只有仍持有未过期的租约且计划仍然到期时才更新（返回1才发送提醒）
+     */
+    @Update("UPDATE plan_reminder_state SET last_reminded_at = NOW(), last_reminded_by = #{owner}, " +
+            "next_due_at = DATE_ADD(NOW(), INTERVAL GREATEST(reminder_interval_minutes, 1) MINUTE), " +
+            "lease_owner = NULL, lease_until = NULL " +
+            "WHERE plan_id = #{planId} AND lease_owner = #{owner} AND lease_until > NOW() AND next_due_at <= NOW()")
+    int markReminded(@Param("planId") Long planId, @Param("owner") String owner);
+    
+    /**
+     * 释放租约（计划不再到期时）
+     */
+    @Update("UPDATE plan_reminder_state SET lease_owner = NULL, lease_until = NULL " +
+            "WHERE plan_id = #{planId} AND lease_owner = #{owner}")
+    int releaseLease(@Param("planId") Long planId, @Param("owner") String owner);
+    
+    /**
+     * 删除计划的提醒状态
+     */
+    @Delete("DELETE FROM plan_reminder_state WHERE plan_id = #{planId}")
+    int deleteByPlanId(Long planId);
+    
+    /**
+     * 提醒状态汇总（总数、已到期数、租约中数、最早的下次提醒时间）
+     */
+    @Select("SELECT COUNT(*) AS total, COALESCE(SUM(next_due_at <= NOW()), 0) AS due, " +
+            "COALESCE(SUM(lease_until > NOW()), 0) AS leased, MIN(next_due_at) AS nextDueAt FROM plan_reminder_state")
+    Map<String, Object> summarize();
+}
@@ -0,0 +1,61 @@
+package com.studyplanner.mapper;
+
+import com.studyplanner.entity.UserActivity;
+import org.apache.ibatis.annotations.*;
+
+import java.util.List;
+
+/**
+ * 用户年度活跃位图Mapper接口
+ */
+@Mapper
+public interface UserActivityMapper {
+    
+    /**
+     * 查询用户某年的活跃位图
+     */
+    @Select("SELECT * FROM user_activity WHERE user_id = #{userId} AND year = #{year}")
+    UserActivity findByUserIdAndYear(@Param("userId") Long userId, @Param("year") int year);
+    
+    /**
+     * 标记一天有打卡并设置当天的时长档位（位运算在数据库内完成，掩码与列等长）
+     *
+     * @param dayMask    只有这一天为1的打卡位图
+     * @param levelClear 这一天两位为0、其余为1的掩码
+     * @param levelSet   只包含这一天档位的时长位图
+     */
+    @Update("UPDATE user_activity SET active_days = active_days | #{dayMask}, " +
+            "hour_levels = (hour_levels & #{levelClear}) | #{levelSet} " +
+            "WHERE user_id = #{userId} AND year = #{year}")
+    int markDay(@Param("userId") Long userId,
+                @Param("year") int year,
+                @Param("dayMask") byte[] dayMask,
+                @Param("levelClear") byte[] levelClear,
+                @Param("levelSet") byte[] levelSet);
+    
+    /**
+     * 保存用户某年的完整位图（已存在时覆盖）
+     */
+    @Insert("INSERT INTO user_activity (user_id, year, active_days, hour_levels) " +
+            "VALUES (#{userId}, #{year}, #{activeDays}, #{hourLevels}) " +
+            "ON DUPLICATE KEY UPDATE active_days = VALUES(active_days), hour_levels = VALUES(hour_levels)")
+    int upsert(UserActivity activity);
+    
+    /**
+     * 查询用户ID区间[fromUserId, toUserId)内有每日汇总或有位图的用户（重算范围）
+     */
+    @Select("SELECT user_id FROM user_daily_stats WHERE user_id >= #{fromUserId} AND user_id < #{toUserId} " +
+            "UNION SELECT user_id FROM user_activity WHERE user_id >= #{fromUserId} AND user_id < #{toUserId}")
+    List<Long> findUserIdsInRange(@Param("fromUserId") long fromUserId, @Param("toUserId") long toUserId);
+    
+    /**
+     * 删除用户除指定年份以外的位图（重算后这些年份已没有打卡）
+     */
+    @Delete("<script>" +
+            "DELETE FROM user_activity WHERE user_id = #{userId}" +
+            "<if test='years.size() > 0'> AND year NOT IN " +
+            "<foreach collection='years' item='year' open='(' separator=',' close=')'>#{year}</foreach>" +
+            "</if>" +
+            "</script>")
+    int deleteOtherYears(@Param("userId") Long userId, @Param("years") List<Integer> years);
+}
@@ -0,0 +1,80 @@
+package com.studyplanner.mapper;
+
+import com.studyplanner.entity.UserDailyStats;
+import org.apache.ibatis.annotations.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * 用户每日学习汇总Mapper接口
+ */
+@Mapper
+public interface UserDailyStatsMapper {
+    
+    /**
+     * 累加某天的打卡（当天没有汇总行时插入）
+     *
+     * @param count    新增的打卡次数
+     * @param newPlans 用户当天第一次打卡的计划数
+     */
+    @Insert("INSERT INTO user_daily_stats (user_id, stat_date, study_hours, check_in_count, plans_touched) " +
+            "VALUES (#{userId}, #{statDate}, #{hours}, #{count}, #{newPlans}) " +
+            "ON DUPLICATE KEY UPDATE study_hours = study_hours + VALUES(study_hours), " +
+            "check_in_count = check_in_count + VALUES(check_in_count), plans_touched = plans_touched + VALUES(plans_touched)")
+    int addCheckIns(@Param("userId") Long userId,
+                    @Param("statDate") LocalDate statDate,
+                    @Param("hours") BigDecimal hours,
+                    @Param("count") int count,
+                    @Param("newPlans") int newPlans);
+    
+    /**
+     * 查询用户某个时间段的每日汇总（没有打卡的日期没有记录）
+     */
+    @Select("SELECT * FROM user_daily_stats WHERE user_id = #{userId} AND stat_date BETWEEN #{startDate} AND #{endDate} " +
+            "ORDER BY stat_date")
+    List<UserDailyStats> findByDateRange(@Param("userId") Long userId,
+                                         @Param("startDate") LocalDate startDate,
+                                         @Param("endDate") LocalDate endDate);
+    
+    /**
+     * 加锁读取用户某天的汇总（打卡事务内读取刚累加后的值）
+     */
+    @Select("SELECT * FROM user_daily_stats WHERE user_id = #{userId} AND stat_date = #{statDate} FOR UPDATE")
+    UserDailyStats findForUpdate(@Param("userId") Long userId, @Param("statDate") LocalDate statDate);
+    
+    /**
+     * 加锁读取用户的全部每日汇总（重算活跃位图时与并发打卡串行）
+     */
+    @Select("SELECT * FROM user_daily_stats WHERE user_id = #{userId} ORDER BY stat_date FOR UPDATE")
+    List<UserDailyStats> findByUserIdForUpdate(Long userId);
+    
+    /**
+     * 统计用户总打卡天数
+     */
+    @Select("SELECT COUNT(*) FROM user_daily_stats WHERE user_id = #{userId} AND check_in_count > 0")
+    int countActiveDays(Long userId);
+    
+    /**
+     * 统计用户总学习时长
+     */
+    @Select("SELECT COALESCE(SUM(study_hours), 0) FROM user_daily_stats WHERE user_id = #{userId}")
+    Double sumStudyHours(Long userId);
+    
+    /**
+     * 按check_in重算用户ID区间[fromUserId, toUserId)内的每日汇总（回填和校对）
+     */
+    @Insert("INSERT INTO user_daily_stats (user_id, stat_date, study_hours, check_in_count, plans_touched) " +
+            "SELECT user_id, check_date, COALESCE(SUM(study_hours), 0), COUNT(*), COUNT(DISTINCT plan_id) FROM check_in " +
+            "WHERE user_id >= #{fromUserId} AND user_id < #{toUserId} GROUP BY user_id, check_date " +
+            "ON DUPLICATE KEY UPDATE study_hours = VALUES(study_hours), " +
+            "check_in_count = VALUES(check_in_count), plans_touched = VALUES(plans_touched)")
+    int rebuildRange(@Param("fromUserId") long fromUserId, @Param("toUserId") long toUserId);
+    
+    /**
+     * 删除用户ID区间内已没有打卡记录的汇总行（例如计划被删除后打卡记录级联删除）
+     */
+    @Delete("DELETE s FROM user_daily_stats s WHERE s.user_id >= #{fromUserId} AND s.user_id < #{toUserId} " +
+            "AND NOT EXISTS (SELECT 1 FROM check_in c WHERE c.user_id = s.user_id AND c.check_date = s.stat_date)")
+    int deleteOrphans(@Param("fromUserId") long fromUserId, @Param("toUserId") long toUserId);
+}
@@ -52,4 +52,16 @@ public interface UserMapper {
      */
     @Update("UPDATE user SET password = #{password}, update_time = NOW() WHERE id = #{id}")
     int updatePassword(@Param("id") Long id, @Param("password") String password);
+    
+    /**
+     * 删除用户（计划、打卡等数据级联删除）
+     */
+    @Delete("DELETE FROM user WHERE id = #{id}")
+    int delete(Long id);
+    
+    /**
+     * 最大用户ID（没有用户时为0）
+     */
+    @Select("SELECT COALESCE(MAX(id), 0) FROM user")
+    long findMaxId();
 }
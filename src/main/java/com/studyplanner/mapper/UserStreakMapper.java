@@ -0,0 +1,59 @@
+package com.studyplanner.mapper;
+
+import com.studyplanner.entity.UserStreak;
+import org.apache.ibatis.annotations.*;
+import java.time.LocalDate;
+
+/**
+ * 用户连续打卡状态Mapper接口
+ */
+@Mapper
+public interface UserStreakMapper {
+    
+    /**
+     * 记录用户在某天打卡（没有状态行时插入）
+     * 赋值按从左到右执行：先用旧的last_active_date判断是否连续，再更新最长记录和最后打卡日期；
+     * 早于最后打卡日期的补打卡不改变当前连续天数
+     */
+    @Insert("INSERT INTO user_streak (user_id, current_streak, longest_streak, last_active_date) " +
+            "VALUES (#{userId}, 1, 1, #{checkDate}) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "current_streak = CASE WHEN last_active_date = DATE_SUB(#{checkDate}, INTERVAL 1 DAY) THEN current_streak + 1 " +
+            "WHEN last_active_date < #{checkDate} THEN 1 ELSE current_streak END, " +
+            "longest_streak = GREATEST(longest_streak, current_streak), " +
+            "last_active_date = GREATEST(last_active_date, #{checkDate})")
+    int recordActiveDate(@Param("userId") Long userId, @Param("checkDate") LocalDate checkDate);
+    
+    /**
+     * 查询用户的连续打卡状态
+     */
+    @Select("SELECT * FROM user_streak WHERE user_id = #{userId}")
+    UserStreak findByUserId(Long userId);
+    
+    /**
+     * 按每日汇总重算用户ID区间[fromUserId, toUserId)内的连续打卡状态
+     * 连续日期减去序号得到相同的分组值，每组即一段连续打卡，取最后一段为当前连续、最长一段为历史最长；
+     * 晚于今天的日期不参与计算
+     */
+    @Insert("INSERT INTO user_streak (user_id, current_streak, longest_streak, last_active_date) " +
+            "WITH days AS (SELECT user_id, stat_date, " +
+            "DATE_SUB(stat_date, INTERVAL ROW_NUMBER() OVER (PARTITION BY user_id ORDER BY stat_date) DAY) AS grp " +
+            "FROM user_daily_stats WHERE user_id >= #{fromUserId} AND user_id < #{toUserId} AND check_in_count > 0 AND stat_date <= #{today}), " +
+            "runs AS (SELECT user_id, COUNT(*) AS len, MAX(stat_date) AS end_date FROM days GROUP BY user_id, grp), " +
+            "ranked AS (SELECT user_id, len, end_date, MAX(len) OVER (PARTITION BY user_id) AS longest, " +
+            "ROW_NUMBER() OVER (PARTITION BY user_id ORDER BY end_date DESC) AS rn FROM runs) " +
+            "SELECT user_id, len, longest, end_date FROM ranked WHERE rn = 1 " +
+            "ON DUPLICATE KEY UPDATE current_streak = VALUES(current_streak), " +
+            "longest_streak = VALUES(longest_streak), last_active_date = VALUES(last_active_date)")
+    int rebuildRange(@Param("fromUserId") long fromUserId, @Param("toUserId") long toUserId,
+                     @Param("today") LocalDate today);
+    
+    /**
+     * 删除用户ID区间内已没有任何打卡（不含晚于今天的日期）的连续打卡状态
+     */
+    @Delete("DELETE s FROM user_streak s WHERE s.user_id >= #{fromUserId} AND s.user_id < #{toUserId} " +
+            "AND NOT EXISTS (SELECT 1 FROM user_daily_stats d WHERE d.user_id = s.user_id AND d.check_in_count > 0 " +
+            "AND d.stat_date <= #{today})")
+    int deleteOrphans(@Param("fromUserId") long fromUserId, @Param("toUserId") long toUserId,
+                      @Param("today") LocalDate today);
+}
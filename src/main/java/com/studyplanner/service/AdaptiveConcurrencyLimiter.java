@@ -0,0 +1,74 @@
+package com.studyplanner.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * AIMD自适应并发限制器
+ * 成功时并发上限缓慢增加（每轮约+1），超时/限流/5xx等过载信号出现时上限减半；
+ * 达到上限的请求立即拒绝而不排队，避免线程在慢上游上堆积
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double backoffRatio;
+
+    private double limit;
+
+    private int inFlight = 0;
+
+    private long rejectedCalls = 0;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * 尝试获取一个并发名额，获取成功后必须调用onSuccess/onOverload/onIgnored之一归还
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) {
+            rejectedCalls++;
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * 调用成功：加性增加
+     */
+    public synchronized void onSuccess() {
+        inFlight--;
+        limit = Math.min(maxLimit, limit + 1.0 / limit);
+    }
+
+    /**
+     * 上游过载（超时、429、5xx）：乘性减少
+     */
+    public synchronized void onOverload() {
+        inFlight--;
+        limit = Math.max(minLimit, limit * backoffRatio);
+    }
+
+    /**
+     * 与上游负载无关的结束（如参数错误），只归还名额
+     */
+    public synchronized void onIgnored() {
+        inFlight--;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("limit", (int) limit);
+        stats.put("inFlight", inFlight);
+        stats.put("rejectedCalls", rejectedCalls);
+        return stats;
+    }
+}
@@ -0,0 +1,261 @@
+package com.studyplanner.service;
+
+import com.studyplanner.entity.ChatConversation;
+import com.studyplanner.entity.ChatHistory;
+import com.studyplanner.mapper.ChatConversationMapper;
+import com.studyplanner.mapper.ChatHistoryMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 服务端多轮对话服务
+ * 客户端每轮只发送新问题，服务端按token预算拼装上下文：最近几轮原文保留，
+ * 更早的对话由后台任务并入滚动摘要，请求大小和LLM延迟不随对话长度增长
+ */
+@Service
+public class ChatConversationService {
+
+    @Autowired
+    private ChatConversationMapper chatConversationMapper;
+
+    @Autowired
+    private ChatHistoryWriter chatHistoryWriter;
+
+    @Autowired
+    private ChatHistoryMapper chatHistoryMapper;
+
+    @Autowired
+    private LLMService llmService;
+
+    @Autowired
+    private TokenEstimator tokenEstimator;
+
+    @Autowired
+    @Qualifier("chatSummaryExecutor")
+    private TaskExecutor chatSummaryExecutor;
+
+    // 摘要加历史对话可使用的token数
+    @Value("${llm.chat.context-token-budget:3000}")
+    private int contextTokenBudget;
+
+    // 最多保留原文的最近轮数
+    @Value("${llm.chat.recent-turns:6}")
+    private int recentTurns;
+
+    // 超出原文窗口的轮数达到该值时触发一次摘要
+    @Value("${llm.chat.summary-batch-turns:4}")
+    private int summaryBatchTurns;
+
+    @Value("${llm.chat.summary-max-chars:800}")
+    private int summaryMaxChars;
+
+    // 单次读取的未摘要记录上限
+    @Value("${llm.chat.load-limit:50}")
+    private int loadLimit;
+
+    // 正在生成摘要的会话，同一会话同时只有一个摘要任务
+    private final Set<Long> summarizing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 创建会话
+     */
+    public ChatConversation createConversation(Long userId, String title) {
+        ChatConversation conversation = new ChatConversation();
+        conversation.setUserId(userId);
+        conversation.setTitle(title != null && !title.trim().isEmpty() ? truncate(title.trim(), 100) : null);
+        chatConversationMapper.insert(conversation);
+        return chatConversationMapper.findById(conversation.getId());
+    }
+
+    /**
+     * 获取用户的会话列表
+     */
+    public List<ChatConversation> getUserConversations(Long userId) {
+        return chatConversationMapper.findByUserId(userId);
+    }
+
+    /**
+     * 获取会话（校验所有者），不存在或无权访问时返回null
+     */
+    public ChatConversation getConversation(Long userId, Long conversationId) {
+        ChatConversation conversation = chatConversationMapper.findById(conversationId);
+        if (conversation == null || !conversation.getUserId().equals(userId)) {
+            return null;
+        }
+        return conversation;
+    }
+
+    /**
+     * 获取会话最近的对话记录（按时间顺序）
+     */
+    public List<ChatHistory> getMessages(Long userId, Long conversationId, int limit) {
+        requireConversation(userId, conversationId);
+        return chatHistoryWriter.loadTurnsAfter(conversationId, 0L, limit);
+    }
+
+    /**
+     * 删除会话及其对话记录
+     */
+    public void deleteConversation(Long userId, Long conversationId) {
+        requireConversation(userId, conversationId);
+        chatHistoryWriter.discard(conversationId);
+        chatConversationMapper.delete(conversationId);
+    }
+
+    /**
+     * 在会话中提问（使用系统配置）
+     */
+    public String chat(Long userId, Long conversationId, String question, String model) {
+        ChatConversation conversation = requireConversation(userId, conversationId);
+
+        List<ChatHistory> turns = chatHistoryWriter.loadTurnsAfter(conversationId,
+                conversation.getSummarizedUntilId(), loadLimit);
+        List<Map<String, String>> messages = buildContext(conversation.getSummary(), turns, question);
+        String answer = llmService.chat(llmService.getDefaultBaseUrl(), llmService.getDefaultApiKey(),
+                llmService.resolveModel(model), messages);
+
+        ChatHistory history = new ChatHistory();
+        history.setUserId(userId);
+        history.setConversationId(conversationId);
+        history.setQuestion(question);
+        history.setAnswer(answer);
+        history.setCreateTime(LocalDateTime.now());
+        chatHistoryWriter.append(history);
+
+        if (conversation.getTitle() == null) {
+            chatConversationMapper.updateTitle(conversationId, truncate(question.trim(), 30));
+        }
+        if (turns.size() + 1 >= recentTurns + summaryBatchTurns) {
+            scheduleSummary(conversationId);
+        }
+        return answer;
+    }
+
+    private ChatConversation requireConversation(Long userId, Long conversationId) {
+        ChatConversation conversation = getConversation(userId, conversationId);
+        if (conversation == null) {
+            throw new RuntimeException("会话不存在或无权访问");
+        }
+        return conversation;
+    }
+
+    /**
+     * 拼装上下文：摘要（如有）+ 预算内的最近若干轮原文 + 本轮问题
+     */
+    private List<Map<String, String>> buildContext(String summary, List<ChatHistory> turns, String question) {
+        List<Map<String, String>> messages = new ArrayList<>();
+        int budget = contextTokenBudget;
+
+        if (summary != null && !summary.isEmpty()) {
+            String content = "以下是本次对话中较早内容的摘要，回答时请参考：\n" + summary;
+            messages.add(Map.of("role", "system", "content", content));
+            budget -= tokenEstimator.estimateTokens(content);
+        }
+
+        List<ChatHistory> verbatim = new ArrayList<>();
+        for (int i = turns.size() - 1; i >= 0 && verbatim.size() < recentTurns; i--) {
+            ChatHistory turn = turns.get(i);
+            int cost = tokenEstimator.estimateTokens(turn.getQuestion()) + tokenEstimator.estimateTokens(turn.getAnswer());
+            if (cost > budget) {
+                break;
+            }
+            budget -= cost;
+            verbatim.add(turn);
+        }
+        Collections.reverse(verbatim);
+
+        for (ChatHistory turn : verbatim) {
+            messages.add(Map.of("role", "user", "content", turn.getQuestion()));
+            messages.add(Map.of("role", "assistant", "content", turn.getAnswer()));
+        }
+        messages.add(Map.of("role", "user", "content", question));
+        return messages;
+    }
+
+    private void scheduleSummary(Long conversationId) {
+        if (!summarizing.add(conversationId)) {
+            return;
+        }
+        try {
+            chatSummaryExecutor.execute(() -> {
+                try {
+                    summarize(conversationId);
+                } catch (Exception e) {
+                    System.err.println("生成对话摘要失败，会话" + conversationId + ": " + e.getMessage());
+                } finally {
+                    summarizing.remove(conversationId);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            // 摘要任务繁忙时跳过，下一轮对话会再次触发
+            summarizing.remove(conversationId);
+        }
+    }
+
+    /**
+     * 把原文窗口之外且已落库的对话并入滚动摘要
+     * 从summarized_until_id之后最早的记录开始按ID升序分批读取，每批loadLimit条，直到原文窗口为止，
+     * 之前多次摘要失败积压了很多轮时也不会跳过未读到的记录
+     */
+    private void summarize(Long conversationId) {
+        ChatConversation conversation = chatConversationMapper.findById(conversationId);
+        if (conversation == null) {
+            return;
+        }
+        Long untilId = conversation.getSummarizedUntilId();
+        String summary = conversation.getSummary();
+
+        // 最近recentTurns轮保留原文，其中最早一条已落库记录之前的记录才需要摘要
+        List<ChatHistory> window = chatHistoryWriter.loadTurnsAfter(conversationId, untilId, recentTurns);
+        if (window.size() < recentTurns || window.get(0).getId() == null) {
+            // 原文窗口未满，或窗口内的记录还未落库（下一轮对话会再次触发）
+            return;
+        }
+        Long windowStartId = window.get(0).getId();
+
+        List<ChatHistory> toFold;
+        while (!(toFold = chatHistoryMapper.findOldestBetween(conversationId, untilId, windowStartId, loadLimit))
+                .isEmpty()) {
+            String folded = llmService.chat(buildSummaryPrompt(summary, toFold),
+                    llmService.getDefaultBaseUrl(), llmService.getDefaultApiKey(), llmService.resolveModel(null));
+            String newSummary = truncate(folded.trim(), summaryMaxChars * 2);
+            Long foldedUntilId = toFold.get(toFold.size() - 1).getId();
+            if (chatConversationMapper.updateSummary(conversationId, newSummary, foldedUntilId, untilId) == 0) {
+                // 摘要位置已被其他实例推进
+                return;
+            }
+            summary = newSummary;
+            untilId = foldedUntilId;
+        }
+    }
+
+    private String buildSummaryPrompt(String previousSummary, List<ChatHistory> turns) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("请把下面的对话内容合并进已有摘要，生成一份新的摘要。要求：保留用户的学习目标、背景、偏好、")
+                .append("已经给出的关键结论和未解决的问题，省略寒暄和重复内容，不超过")
+                .append(summaryMaxChars).append("字，只输出摘要正文。\n\n");
+        prompt.append("【已有摘要】\n").append(previousSummary != null ? previousSummary : "（无）").append("\n\n");
+        prompt.append("【新增对话】\n");
+        for (ChatHistory turn : turns) {
+            prompt.append("用户：").append(turn.getQuestion()).append("\n");
+            prompt.append("助手：").append(turn.getAnswer()).append("\n");
+        }
+        return prompt.toString();
+    }
+
+    private String truncate(String text, int maxLength) {
+        return text.length() > maxLength ? text.substring(0, maxLength) : text;
+    }
+}
@@ -0,0 +1,248 @@
+package com.studyplanner.service;
+
+import com.studyplanner.entity.ChatHistory;
+import com.studyplanner.mapper.ChatConversationMapper;
+import com.studyplanner.mapper.ChatHistoryMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 对话记录异步批量写入器
+ * 每轮问答先进入内存队列，由定时任务合并为多行INSERT写入chat_history；
+ * 尚未落库的记录可通过loadTurnsAfter读到，保证下一轮对话能看到上一轮内容。
+ * 写入数据库时不持有锁；连接失败等可恢复的错误把记录放回队列下次重试，只有违反约束的记录（例如会话已被删除）才丢弃
+ */
+@Component
+public class ChatHistoryWriter {
+
+    @Autowired
+    private ChatHistoryMapper chatHistoryMapper;
+
+    @Autowired
+    private ChatConversationMapper chatConversationMapper;
+
+    // 单次批量写入的最大条数
+    @Value("${llm.chat.flush-batch-size:200}")
+    private int flushBatchSize;
+
+    // 待写入记录上限，超出时丢弃最旧的记录，避免数据库长时间不可用时内存无限增长
+    @Value("${llm.chat.max-pending:10000}")
+    private int maxPending;
+
+    private final List<ChatHistory> pending = new ArrayList<>();
+
+    // 已移出待写队列、正在写入数据库的批次，写入结束前仍对读取可见
+    private List<ChatHistory> inFlight = Collections.emptyList();
+
+    // 写锁：修改待写队列和写入中的批次；读锁：读取两者（数据库写入不持有锁）
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * 追加一轮问答（异步落库）
+     */
+    public void append(ChatHistory history) {
+        lock.writeLock().lock();
+        try {
+            pending.add(history);
+            if (pending.size() > maxPending) {
+                ChatHistory dropped = pending.remove(0);
+                System.err.println("对话记录待写入过多，丢弃会话" + dropped.getConversationId() + "的一条记录");
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 按时间顺序读取会话中ID大于afterId的最近limit条记录，包含尚未落库的记录（排在最后）
+     * 先取内存中的记录再查数据库，不会漏读；查询期间刚落库的记录会同时出现在两边，按内容去掉数据库中的那一条
+     */
+    public List<ChatHistory> loadTurnsAfter(Long conversationId, Long afterId, int limit) {
+        List<ChatHistory> unsaved = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (ChatHistory history : inFlight) {
+                if (history.getConversationId().equals(conversationId)) {
+                    unsaved.add(history);
+                }
+            }
+            for (ChatHistory history : pending) {
+                if (history.getConversationId().equals(conversationId)) {
+                    unsaved.add(history);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<ChatHistory> turns = new ArrayList<>(chatHistoryMapper.findRecentAfter(conversationId, afterId, limit));
+        Collections.reverse(turns);
+        if (!unsaved.isEmpty()) {
+            // 查询后仍在待写队列中的记录一定没有落库，其余的可能已被查询读到
+            Set<ChatHistory> stillPending = Collections.newSetFromMap(new IdentityHashMap<>());
+            lock.readLock().lock();
+            try {
+                stillPending.addAll(pending);
+            } finally {
+                lock.readLock().unlock();
+            }
+            for (ChatHistory history : unsaved) {
+                if (!stillPending.contains(history)) {
+                    removeSameTurn(turns, history);
+                }
+            }
+        }
+        turns.addAll(unsaved);
+        return turns.size() > limit ? new ArrayList<>(turns.subList(turns.size() - limit, turns.size())) : turns;
+    }
+
+    private void removeSameTurn(List<ChatHistory> turns, ChatHistory history) {
+        // 刚落库的记录是最新的几条，从后往前找
+        ListIterator<ChatHistory> iterator = turns.listIterator(turns.size());
+        while (iterator.hasPrevious()) {
+            ChatHistory saved = iterator.previous();
+            if (Objects.equals(saved.getQuestion(), history.getQuestion())
+                    && Objects.equals(saved.getAnswer(), history.getAnswer())) {
+                iterator.remove();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 丢弃会话尚未落库的记录（会话被删除时）
+     */
+    public void discard(Long conversationId) {
+        lock.writeLock().lock();
+        try {
+            pending.removeIf(history -> history.getConversationId().equals(conversationId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 定时批量写入
+     */
+    @Scheduled(fixedDelayString = "${llm.chat.flush-interval-ms:1000}")
+    public void flush() {
+        while (flushBatch()) {
+            // 队列中还有完整批次时继续写入
+        }
+    }
+
+    private boolean flushBatch() {
+        List<ChatHistory> batch;
+        lock.writeLock().lock();
+        try {
+            if (pending.isEmpty()) {
+                return false;
+            }
+            List<ChatHistory> head = pending.subList(0, Math.min(flushBatchSize, pending.size()));
+            batch = new ArrayList<>(head);
+            head.clear();
+            inFlight = batch;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        // 需要重试的总是批次末尾的若干条
+        List<ChatHistory> retry = writeBatch(batch);
+        List<ChatHistory> saved = batch.subList(0, batch.size() - retry.size());
+
+        lock.writeLock().lock();
+        try {
+            inFlight = Collections.emptyList();
+            if (!retry.isEmpty()) {
+                // 放回队首保持顺序，仍受待写上限约束
+                pending.addAll(0, retry);
+                while (pending.size() > maxPending) {
+                    ChatHistory dropped = pending.remove(0);
+                    System.err.println("对话记录待写入过多，丢弃会话" + dropped.getConversationId() + "的一条记录");
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (!saved.isEmpty()) {
+            touchConversations(saved);
+        }
+        // 数据库暂时不可用时本轮不再继续，等下一次定时写入
+        return retry.isEmpty() && getPendingCount() >= flushBatchSize;
+    }
+
+    /**
+     * 写入一批记录，返回需要放回队列重试的记录
+     * 批量写入违反约束时逐条写入隔离有问题的记录；其他错误（连接失败、超时等）整批重试
+     */
+    private List<ChatHistory> writeBatch(List<ChatHistory> batch) {
+        try {
+            chatHistoryMapper.batchInsert(batch);
+            return Collections.emptyList();
+        } catch (DataIntegrityViolationException e) {
+            System.err.println("批量写入对话记录违反约束，改为逐条写入: " + e.getMessage());
+            return insertOneByOne(batch);
+        } catch (Exception e) {
+            System.err.println("批量写入对话记录失败，稍后重试" + batch.size() + "条: " + e.getMessage());
+            return batch;
+        }
+    }
+
+    private List<ChatHistory> insertOneByOne(List<ChatHistory> batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            ChatHistory history = batch.get(i);
+            try {
+                chatHistoryMapper.insert(history);
+            } catch (DataIntegrityViolationException e) {
+                System.err.println("写入对话记录失败，丢弃会话" + history.getConversationId() + "的一条记录: "
+                        + e.getMessage());
+            } catch (Exception e) {
+                System.err.println("写入对话记录失败，稍后重试" + (batch.size() - i) + "条: " + e.getMessage());
+                return new ArrayList<>(batch.subList(i, batch.size()));
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private void touchConversations(List<ChatHistory> batch) {
+        LinkedHashSet<Long> conversationIds = new LinkedHashSet<>();
+        batch.forEach(history -> conversationIds.add(history.getConversationId()));
+        try {
+            chatConversationMapper.touchAll(new ArrayList<>(conversationIds));
+        } catch (Exception e) {
+            System.err.println("更新会话活跃时间失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 停机前写入剩余记录
+     */
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    public int getPendingCount() {
+        lock.readLock().lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -1,17 +1,38 @@
 package com.studyplanner.service;
 
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.studyplanner.dto.PageResult;
 import com.studyplanner.entity.CheckIn;
+import com.studyplanner.entity.PlanDetail;
 import com.studyplanner.mapper.CheckInMapper;
+import com.studyplanner.mapper.CheckInRequestMapper;
 import com.studyplanner.mapper.PlanDetailMapper;
+import com.studyplanner.mapper.PlanMapper;
+import com.studyplanner.util.PageCursor;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * 打卡服务类
@@ -25,113 +46,296 @@ public class CheckInService {
     @Autowired
     private PlanDetailMapper planDetailMapper;
     
+    @Autowired
+    private PlanMapper planMapper;
+    
+    @Autowired
+    private UserDailyStatsService userDailyStatsService;
+    
+    @Autowired
+    private UserStreakService userStreakService;
+    
+    @Autowired
+    private UserActivityService userActivityService;
+    
     @Autowired(required = false)
     private PlanReminderService planReminderService;
     
     @Autowired
-    private PlanService planService;
+    private CheckInRequestMapper checkInRequestMapper;
+    
+    // 批量打卡一次最多的任务数
+    @Value("${checkin.batch.max-items:100}")
+    private int batchMaxItems;
+    
+    // 幂等键的保留时间
+    @Value("${checkin.idempotency.ttl-hours:24}")
+    private long idempotencyTtlHours;
+    
+    @Value("${pagination.default-size:20}")
+    private int defaultPageSize;
+    
+    @Value("${pagination.max-size:100}")
+    private int maxPageSize;
     
     /**
-     * 打卡签到
+     * 打卡签到（同一天重复打卡同一任务时返回已有的记录，不再报唯一键冲突）
      */
     @Transactional
     public CheckIn checkIn(CheckIn checkIn) {
         // 设置打卡日期为今天（如果未指定）
-        if (checkIn.getCheckDate() == null) {
-            checkIn.setCheckDate(LocalDate.now());
+        LocalDate checkDate = checkIn.getCheckDate() != null ? checkIn.getCheckDate() : userStreakService.today();
+        CheckInOutcome outcome = recordCheckIns(checkIn.getUserId(), checkDate, List.of(checkIn));
+        return !outcome.created().isEmpty() ? outcome.created().get(0) : outcome.existing().get(0);
+    }
+    
+    /**
+     * 批量打卡：一个事务内多行写入打卡记录，任务完成状态、计划完成数和提醒记录按计划各处理一次。
+     * 传入幂等键时，相同键的重复请求（包括并发重试）直接返回首次结果并标记replayed
+     */
+    @Transactional
+    public Map<String, Object> batchCheckIn(Long userId, String idempotencyKey, LocalDate checkDate, List<CheckIn> items) {
+        if (items.size() > batchMaxItems) {
+            throw new RuntimeException("一次最多打卡" + batchMaxItems + "个任务");
+        }
+        boolean idempotent = idempotencyKey != null && !idempotencyKey.isBlank();
+        if (idempotent && checkInRequestMapper.tryInsert(userId, idempotencyKey) == 0) {
+            String response = checkInRequestMapper.findResponse(userId, idempotencyKey);
+            JSONObject replay = response != null ? JSON.parseObject(response) : new JSONObject();
+            replay.put("replayed", true);
+            return replay;
+        }
+        
+        CheckInOutcome outcome = recordCheckIns(userId, checkDate != null ? checkDate : userStreakService.today(), items);
+        Map<String, Object> result = new HashMap<>();
+        result.put("created", outcome.created());
+        result.put("existing", outcome.existing());
+        result.put("completedPlans", outcome.completedPlans());
+        result.put("replayed", false);
+        if (idempotent) {
+            checkInRequestMapper.saveResponse(userId, idempotencyKey, JSON.toJSONString(result));
+        }
+        return result;
+    }
+    
+    /**
+     * 写入打卡记录并处理副作用，返回新增的记录、当天已存在的记录和因此完成的计划
+     */
+    private CheckInOutcome recordCheckIns(Long userId, LocalDate checkDate, List<CheckIn> items) {
+        // 未来日期的打卡会让连续天数一直停留在那一天，直接拒绝
+        if (checkDate.isAfter(userStreakService.today())) {
+            throw new RuntimeException("打卡日期不能晚于今天");
+        }
+        // 同一任务只保留第一条
+        Map<Long, CheckIn> itemsByDetail = new LinkedHashMap<>();
+        for (CheckIn item : items) {
+            if (item.getDetailId() == null) {
+                throw new RuntimeException("任务ID不能为空");
+            }
+            itemsByDetail.putIfAbsent(item.getDetailId(), item);
+        }
+        List<Long> detailIds = new ArrayList<>(itemsByDetail.keySet());
+        
+        // 校验任务归属并锁住任务行，计划ID以任务为准
+        Map<Long, PlanDetail> details = new HashMap<>();
+        for (PlanDetail detail : planDetailMapper.findOwnedByIdsForUpdate(userId, detailIds)) {
+            details.put(detail.getId(), detail);
+        }
+        for (Long detailId : detailIds) {
+            if (!details.containsKey(detailId)) {
+                throw new RuntimeException("任务不存在或不属于当前用户: " + detailId);
+            }
         }
         
-        // 保存打卡记录
-        checkInMapper.insert(checkIn);
+        // 当天已打卡的任务直接返回已有记录
+        List<CheckIn> existing = checkInMapper.findByDetailIdsForUpdate(userId, checkDate, detailIds);
+        Set<Long> existingDetailIds = new HashSet<>();
+        for (CheckIn checkIn : existing) {
+            existingDetailIds.add(checkIn.getDetailId());
+        }
+        List<CheckIn> created = new ArrayList<>();
+        for (CheckIn item : itemsByDetail.values()) {
+            if (!existingDetailIds.contains(item.getDetailId())) {
+                item.setId(null);
+                item.setUserId(userId);
+                item.setPlanId(details.get(item.getDetailId()).getPlanId());
+                item.setCheckDate(checkDate);
+                created.add(item);
+            }
+        }
         
-        // 更新任务完成状态
-        planDetailMapper.updateCompleted(checkIn.getDetailId(), 1);
+        // 保存打卡记录，并在同一事务内累加当天的学习汇总、更新连续打卡状态和活跃位图
+        if (!created.isEmpty()) {
+            checkInMapper.batchUpsert(created);
+            userDailyStatsService.recordCheckIns(userId, checkDate, created);
+            userStreakService.recordCheckIn(userId, checkDate);
+            userActivityService.recordCheckIn(userId, checkDate);
+        }
         
-        // 检查计划进度，如果达到100%则自动更新状态为"已完成"
-        checkAndUpdatePlanStatus(checkIn.getPlanId());
+        // 更新任务完成状态，每个计划累加一次完成数并检查是否全部完成
+        Map<Long, Integer> newlyCompletedByPlan = new LinkedHashMap<>();
+        List<Long> newlyCompleted = new ArrayList<>();
+        for (Long detailId : detailIds) {
+            PlanDetail detail = details.get(detailId);
+            if (detail.getIsCompleted() == null || detail.getIsCompleted() == 0) {
+                newlyCompleted.add(detailId);
+                newlyCompletedByPlan.merge(detail.getPlanId(), 1, Integer::sum);
+            }
+        }
+        List<Long> completedPlans = new ArrayList<>();
+        if (!newlyCompleted.isEmpty()) {
+            planDetailMapper.markCompletedBatch(newlyCompleted);
+            for (Map.Entry<Long, Integer> entry : newlyCompletedByPlan.entrySet()) {
+                planMapper.addCompletedCount(entry.getKey(), entry.getValue());
+                if (checkAndUpdatePlanStatus(entry.getKey())) {
+                    completedPlans.add(entry.getKey());
+                }
+            }
+        }
         
-        // 清除该计划的提醒记录（因为用户已经打卡了）
+        // 清除涉及计划的提醒记录并重新计算下次提醒时间（因为用户已经打卡了）
         if (planReminderService != null) {
-            planReminderService.clearReminderRecord(checkIn.getPlanId());
+            Set<Long> planIds = new LinkedHashSet<>();
+            for (Long detailId : detailIds) {
+                planIds.add(details.get(detailId).getPlanId());
+            }
+            planIds.forEach(planReminderService::onCheckIn);
         }
         
-        return checkIn;
+        return new CheckInOutcome(created, existing, completedPlans);
+    }
+    
+    private record CheckInOutcome(List<CheckIn> created, List<CheckIn> existing, List<Long> completedPlans) {
     }
     
     /**
-     * 检查计划进度并自动更新状态
+     * 计划任务全部完成时自动更新状态（按冗余计数条件更新，耗时与计划长度无关），返回状态是否发生变化
      */
-    private void checkAndUpdatePlanStatus(Long planId) {
+    private boolean checkAndUpdatePlanStatus(Long planId) {
         try {
-            double progress = planService.getPlanProgress(planId);
-            if (progress >= 100.0) {
-                planService.updatePlanStatus(planId, "已完成");
+            if (planMapper.completeIfAllDone(planId) > 0) {
                 System.out.println("计划 " + planId + " 进度达到100%，已自动更新状态为'已完成'");
+                return true;
             }
         } catch (Exception e) {
             System.err.println("检查计划状态失败: " + planId + ", " + e.getMessage());
         }
+        return false;
+    }
+    
+    /**
+     * 定时清理过期的批量打卡幂等记录（默认每天凌晨4点45分）
+     */
+    @Scheduled(cron = "${checkin.idempotency.cleanup-cron:0 45 4 * * ?}")
+    public void cleanupIdempotencyKeys() {
+        try {
+            int deleted = checkInRequestMapper.deleteBefore(LocalDateTime.now().minusHours(idempotencyTtlHours));
+            System.out.println("已清理过期的打卡幂等记录: " + deleted + "条");
+        } catch (Exception e) {
+            System.err.println("清理打卡幂等记录失败: " + e.getMessage());
+        }
     }
     
     /**
      * 获取今日打卡状态
      */
     public List<CheckIn> getTodayCheckIns(Long userId) {
-        return checkInMapper.findByUserIdAndDate(userId, LocalDate.now());
+        return checkInMapper.findByUserIdAndDate(userId, userStreakService.today());
     }
     
     /**
-     * 获取用户的打卡记录
+     * 获取用户最近的打卡记录（最多pagination.max-size条，更早的记录通过分页接口获取）
      */
     public List<CheckIn> getUserCheckIns(Long userId) {
-        return checkInMapper.findByUserId(userId);
+        return getUserCheckInsPage(userId, null, maxPageSize).getItems();
+    }
+    
+    /**
+     * 按打卡日期倒序分页获取用户的打卡记录
+     */
+    public PageResult<CheckIn> getUserCheckInsPage(Long userId, String cursor, Integer size) {
+        int limit = size == null || size <= 0 ? defaultPageSize : Math.min(size, maxPageSize);
+        PageCursor<LocalDate> pageCursor = PageCursor.decode(cursor, LocalDate::parse);
+        List<CheckIn> checkIns = checkInMapper.findPageByUserId(userId,
+                pageCursor != null ? pageCursor.getSortKey() : null,
+                pageCursor != null ? pageCursor.getId() : null,
+                limit + 1);
+        if (checkIns.size() <= limit) {
+            return new PageResult<>(checkIns, null);
+        }
+        List<CheckIn> items = new ArrayList<>(checkIns.subList(0, limit));
+        CheckIn last = items.get(limit - 1);
+        return new PageResult<>(items, PageCursor.encode(last.getCheckDate(), last.getId()));
+    }
+    
+    /**
+     * 以CSV格式导出用户的全部打卡记录
+     * 通过MyBatis Cursor逐行读取并写出，内存占用与记录数无关；Cursor需要在事务内保持连接
+     */
+    @Transactional(readOnly = true)
+    public void exportCheckIns(Long userId, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        // UTF-8 BOM，便于Excel正确识别中文
+        writer.write('\uFEFF');
+        writer.write("打卡日期,计划ID,任务ID,学习时长(小时),学习心得,打卡时间\n");
+        try (Cursor<CheckIn> cursor = checkInMapper.streamByUserId(userId)) {
+            for (CheckIn checkIn : cursor) {
+                writer.write(checkIn.getCheckDate() + "," + checkIn.getPlanId() + "," + checkIn.getDetailId() + ","
+                        + (checkIn.getStudyHours() != null ? checkIn.getStudyHours() : "") + ","
+                        + csvField(checkIn.getNote()) + ","
+                        + (checkIn.getCreateTime() != null ? checkIn.getCreateTime() : "") + "\n");
+            }
+        }
+        writer.flush();
+    }
+    
+    private String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
     }
     
     /**
      * 获取用户某月的打卡数据（用于日历展示）
      */
-    public Map<String, List<CheckIn>> getMonthlyCheckIns(Long userId, int year, int month) {
+    public Map<String, Object> getMonthlyCheckIns(Long userId, int year, int month) {
         LocalDate startDate = LocalDate.of(year, month, 1);
         LocalDate endDate = startDate.plusMonths(1).minusDays(1);
         
         List<CheckIn> checkIns = checkInMapper.findByUserIdAndDateRange(userId, startDate, endDate);
         
-        Map<String, List<CheckIn>> result = new HashMap<>();
+        Map<String, Object> result = new HashMap<>();
         result.put("checkIns", checkIns);
+        // 每天的学习时长和打卡次数（来自每日汇总表，没有打卡的日期不返回）
+        result.put("dailyStats", new ArrayList<>(
+                userDailyStatsService.getDailyStats(userId, startDate, endDate).values()));
         
         return result;
     }
     
     /**
-     * 计算连续打卡天数
+     * 获取用户某月的紧凑日历数据（打卡位掩码和每天的时长档位，读取活跃位图的一行）
+     */
+    public Map<String, Object> getMonthlyActivity(Long userId, int year, int month) {
+        return userActivityService.getMonth(userId, year, month);
+    }
+    
+    /**
+     * 获取用户某年的学习热力图（未指定年份时为今年）
+     */
+    public Map<String, Object> getYearHeatmap(Long userId, Integer year) {
+        return userActivityService.getHeatmap(userId, year != null ? year : userStreakService.today().getYear());
+    }
+    
+    /**
+     * 获取连续打卡天数（读取连续打卡状态表的一行）
      */
     public int getStreakDays(Long userId) {
-        List<LocalDate> dates = checkInMapper.findCheckInDates(userId);
-        
-        if (dates.isEmpty()) {
-            return 0;
-        }
-        
-        int streak = 0;
-        LocalDate today = LocalDate.now();
-        LocalDate expectedDate = today;
-        
-        for (LocalDate date : dates) {
-            if (date.equals(expectedDate)) {
-                streak++;
-                expectedDate = expectedDate.minusDays(1);
-            } else if (date.isBefore(expectedDate)) {
-                // 如果今天还没打卡，从昨天开始计算
-                if (streak == 0 && date.equals(today.minusDays(1))) {
-                    streak = 1;
-                    expectedDate = date.minusDays(1);
-                } else {
-                    break;
-                }
-            }
-        }
-        
-        return streak;
+        return userStreakService.getCurrentStreak(userId);
     }
     
     /**
@@ -140,58 +344,61 @@ public class CheckInService {
     public Map<String, Object> getStudyStats(Long userId) {
         Map<String, Object> stats = new HashMap<>();
         
-        // 总打卡天数
-        stats.put("totalDays", checkInMapper.countCheckInDays(userId));
+        // 总打卡天数（来自每日汇总表）
+        stats.put("totalDays", userDailyStatsService.countActiveDays(userId));
         
-        // 总学习时长
-        stats.put("totalHours", checkInMapper.sumStudyHours(userId));
+        // 总学习时长（来自每日汇总表）
+        stats.put("totalHours", userDailyStatsService.sumStudyHours(userId));
         
-        // 连续打卡天数
+        // 连续打卡天数和历史最长连续天数
         stats.put("streakDays", getStreakDays(userId));
+        stats.put("longestStreak", userStreakService.getLongestStreak(userId));
         
         return stats;
     }
 
     /**
      * 获取图表数据（本周和本月）
+     * 一次查询读取覆盖本周和本月的每日汇总，再在内存中填充没有打卡的日期
      */
     public Map<String, Object> getChartData(Long userId) {
         Map<String, Object> result = new HashMap<>();
-        LocalDate today = LocalDate.now();
+        LocalDate today = userStreakService.today();
+
+        // 获取本周一和本月第一天
+        LocalDate monday = today.minusDays(today.getDayOfWeek().getValue() - 1);
+        LocalDate firstDay = today.withDayOfMonth(1);
+        int daysInMonth = today.lengthOfMonth();
+
+        // 本周可能跨月，查询范围取两者的并集
+        LocalDate startDate = monday.isBefore(firstDay) ? monday : firstDay;
+        LocalDate lastDay = firstDay.plusDays(daysInMonth - 1);
+        LocalDate endDate = monday.plusDays(6).isAfter(lastDay) ? monday.plusDays(6) : lastDay;
+        Map<LocalDate, Double> hoursByDate = new HashMap<>();
+        userDailyStatsService.getDailyStats(userId, startDate, endDate)
+                .forEach((date, daily) -> hoursByDate.put(date, daily.getStudyHours().doubleValue()));
 
         // 本周数据
         Map<String, Object> weekData = new HashMap<>();
         List<String> weekXAxis = new ArrayList<>();
         List<Double> weekSeries = new ArrayList<>();
-        
-        // 获取本周一
-        LocalDate monday = today.minusDays(today.getDayOfWeek().getValue() - 1);
         for (int i = 0; i < 7; i++) {
             LocalDate date = monday.plusDays(i);
             weekXAxis.add(getDayOfWeekCN(date.getDayOfWeek().getValue()));
-            Double hours = checkInMapper.sumStudyHoursByDate(userId, date);
-            weekSeries.add(hours != null ? hours : 0.0);
+            weekSeries.add(hoursByDate.getOrDefault(date, 0.0));
         }
         weekData.put("xAxis", weekXAxis);
         weekData.put("series", weekSeries);
         result.put("week", weekData);
 
-        // 本月数据
+        // 本月数据（返回所有天数）
         Map<String, Object> monthData = new HashMap<>();
         List<String> monthXAxis = new ArrayList<>();
         List<Double> monthSeries = new ArrayList<>();
-        
-        // 获取本月每一天
-        LocalDate firstDay = today.withDayOfMonth(1);
-        int daysInMonth = today.lengthOfMonth();
-        
-        // 为了图表美观，如果天数太多，可以每隔几天取一个点，或者全部返回
-        // 这里简单起见，返回所有天数
         for (int i = 0; i < daysInMonth; i++) {
             LocalDate date = firstDay.plusDays(i);
             monthXAxis.add(date.getDayOfMonth() + "日");
-            Double hours = checkInMapper.sumStudyHoursByDate(userId, date);
-            monthSeries.add(hours != null ? hours : 0.0);
+            monthSeries.add(hoursByDate.getOrDefault(date, 0.0));
         }
         monthData.put("xAxis", monthXAxis);
         monthData.put("series", monthSeries);
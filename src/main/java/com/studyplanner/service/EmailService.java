@@ -1,7 +1,10 @@
 package com.studyplanner.service;
 
+import com.studyplanner.util.Bulkhead;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
@@ -18,8 +21,16 @@ public class EmailService {
     @Value("${spring.mail.username:}")
     private String fromEmail;
     
+    @Autowired
+    @Qualifier("mailExecutor")
+    private TaskExecutor mailExecutor;
+    
+    @Autowired
+    @Qualifier("mailBulkhead")
+    private Bulkhead mailBulkhead;
+    
     /**
-     * 发送简单文本邮件
+     * 发送简单文本邮件（异步执行，SMTP并发受舱壁限制）
      */
     public void sendSimpleEmail(String to, String subject, String text) {
         if (mailSender == null || fromEmail == null || fromEmail.isEmpty()) {
@@ -27,6 +38,10 @@ public class EmailService {
             return;
         }
         
+        mailExecutor.execute(() -> doSendSimpleEmail(to, subject, text));
+    }
+    
+    private void doSendSimpleEmail(String to, String subject, String text) {
         try {
             SimpleMailMessage message = new SimpleMailMessage();
             message.setFrom(fromEmail);
@@ -34,7 +49,7 @@ public class EmailService {
             message.setSubject(subject);
             message.setText(text);
             
-            mailSender.send(message);
+            mailBulkhead.run(() -> mailSender.send(message));
             System.out.println("邮件发送成功: " + to);
         } catch (Exception e) {
             System.err.println("邮件发送失败: " + e.getMessage());
@@ -0,0 +1,178 @@
+package com.studyplanner.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * LLM熔断器（基于最近N次调用的失败率）
+ * CLOSED：正常放行；失败率超过阈值后进入OPEN，在openDurationMs内直接拒绝；
+ * 之后进入HALF_OPEN，只放行少量试探请求，全部成功则恢复CLOSED，任一失败重新OPEN。
+ * 每次放行返回一个Permit，记录该调用是否为本轮HALF_OPEN的试探请求；
+ * CLOSED时放行、在HALF_OPEN期间才结束的调用不计入试探结果
+ */
+public class LLMCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * 放行凭证：probe表示HALF_OPEN的试探请求，epoch为放行时所在的HALF_OPEN轮次
+     */
+    public record Permit(boolean probe, long epoch) {
+    }
+
+    private final int windowSize;
+
+    private final int minimumCalls;
+
+    private final double failureRateThreshold;
+
+    private final long openDurationMs;
+
+    private final int halfOpenPermits;
+
+    private final boolean[] outcomes;
+
+    private int next = 0;
+
+    private int count = 0;
+
+    private int failures = 0;
+
+    private State state = State.CLOSED;
+
+    private long openedAt = 0;
+
+    private int halfOpenInFlight = 0;
+
+    private int halfOpenSuccesses = 0;
+
+    // 每次进入HALF_OPEN加1，用于识别上一轮遗留的试探请求
+    private long halfOpenEpoch = 0;
+
+    private long rejectedCalls = 0;
+
+    private long openCount = 0;
+
+    public LLMCircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold,
+                             long openDurationMs, int halfOpenPermits) {
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationMs = openDurationMs;
+        this.halfOpenPermits = halfOpenPermits;
+        this.outcomes = new boolean[windowSize];
+    }
+
+    /**
+     * 是否允许本次调用，拒绝时返回null；允许时调用方必须在结束后用返回的Permit调用onSuccess、onFailure或onIgnored
+     */
+    public synchronized Permit tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openDurationMs) {
+                rejectedCalls++;
+                return null;
+            }
+            state = State.HALF_OPEN;
+            halfOpenEpoch++;
+            halfOpenInFlight = 0;
+            halfOpenSuccesses = 0;
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (halfOpenInFlight >= halfOpenPermits) {
+                rejectedCalls++;
+                return null;
+            }
+            halfOpenInFlight++;
+            return new Permit(true, halfOpenEpoch);
+        }
+        return new Permit(false, halfOpenEpoch);
+    }
+
+    public synchronized void onSuccess(Permit permit) {
+        if (state == State.HALF_OPEN) {
+            if (isCurrentProbe(permit)) {
+                halfOpenSuccesses++;
+                if (halfOpenSuccesses >= halfOpenPermits) {
+                    reset();
+                }
+            }
+            return;
+        }
+        record(true);
+    }
+
+    public synchronized void onFailure(Permit permit) {
+        if (state == State.HALF_OPEN) {
+            // 熔断前放行的调用失败不代表上游现在的状态
+            if (isCurrentProbe(permit)) {
+                open();
+            }
+            return;
+        }
+        record(false);
+        if (state == State.CLOSED && count >= minimumCalls && (double) failures / count >= failureRateThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * 调用因与上游健康无关的原因结束（例如请求参数错误），只归还试探名额
+     */
+    public synchronized void onIgnored(Permit permit) {
+        if (isCurrentProbe(permit) && state == State.HALF_OPEN && halfOpenInFlight > 0) {
+            halfOpenInFlight--;
+        }
+    }
+
+    private boolean isCurrentProbe(Permit permit) {
+        return permit.probe() && permit.epoch() == halfOpenEpoch;
+    }
+
+    private void record(boolean success) {
+        if (count == windowSize && !outcomes[next]) {
+            failures--;
+        }
+        outcomes[next] = success;
+        if (!success) {
+            failures++;
+        }
+        next = (next + 1) % windowSize;
+        count = Math.min(count + 1, windowSize);
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        openCount++;
+        System.err.println("LLM熔断器打开，" + openDurationMs + "ms内拒绝请求");
+    }
+
+    private void reset() {
+        state = State.CLOSED;
+        next = 0;
+        count = 0;
+        failures = 0;
+        System.out.println("LLM熔断器恢复关闭状态");
+    }
+
+    public synchronized State getState() {
+        // OPEN状态超时后在下一次tryAcquire时才切换，这里按实际可用性展示
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMs) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("state", getState().name());
+        stats.put("failureRate", count == 0 ? 0.0 : (double) failures / count);
+        stats.put("calls", count);
+        stats.put("rejectedCalls", rejectedCalls);
+        stats.put("openCount", openCount);
+        return stats;
+    }
+}
@@ -0,0 +1,184 @@
+package com.studyplanner.service;
+
+import com.studyplanner.util.UrlUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LLM HTTP客户端注册表
+ * 系统服务商使用独立的大连接池；游客自定义接口按主机各自拥有小连接池和更短的超时，
+ * 慢接口只会占满自己的连接池，不影响登录用户的生成请求。长时间未使用的主机会被回收。
+ * 所有客户端共享同一个Dispatcher和线程池（OkHttp按newBuilder派生），HTTPS上通过ALPN协商HTTP/2。
+ */
+@Component
+public class LLMHttpClientRegistry {
+
+    @Value("${llm.api.base-url:}")
+    private String defaultBaseUrl;
+
+    @Value("${llm.http.system.max-idle-connections:32}")
+    private int systemMaxIdleConnections;
+
+    @Value("${llm.http.system.keep-alive-seconds:300}")
+    private long systemKeepAliveSeconds;
+
+    @Value("${llm.http.system.connect-timeout-seconds:60}")
+    private long systemConnectTimeoutSeconds;
+
+    @Value("${llm.http.system.read-timeout-seconds:120}")
+    private long systemReadTimeoutSeconds;
+
+    @Value("${llm.http.system.write-timeout-seconds:60}")
+    private long systemWriteTimeoutSeconds;
+
+    @Value("${llm.http.guest.max-idle-connections:4}")
+    private int guestMaxIdleConnections;
+
+    @Value("${llm.http.guest.keep-alive-seconds:60}")
+    private long guestKeepAliveSeconds;
+
+    @Value("${llm.http.guest.connect-timeout-seconds:10}")
+    private long guestConnectTimeoutSeconds;
+
+    @Value("${llm.http.guest.read-timeout-seconds:120}")
+    private long guestReadTimeoutSeconds;
+
+    @Value("${llm.http.guest.write-timeout-seconds:30}")
+    private long guestWriteTimeoutSeconds;
+
+    // 单次调用总时长上限，防止慢速逐字节返回的接口长期占用连接
+    @Value("${llm.http.guest.call-timeout-seconds:180}")
+    private long guestCallTimeoutSeconds;
+
+    // 同时保留的游客主机数上限，超出时回收最久未使用的
+    @Value("${llm.http.guest.max-hosts:200}")
+    private int guestMaxHosts;
+
+    // 游客主机空闲多久后回收（分钟）
+    @Value("${llm.http.guest.idle-evict-minutes:10}")
+    private long guestIdleEvictMinutes;
+
+    private OkHttpClient systemClient;
+
+    private final Map<String, GuestClient> guestClients = new ConcurrentHashMap<>();
+
+    private static class GuestClient {
+
+        private final OkHttpClient client;
+
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        GuestClient(OkHttpClient client) {
+            this.client = client;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        systemClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(systemMaxIdleConnections, systemKeepAliveSeconds, TimeUnit.SECONDS))
+                .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(systemConnectTimeoutSeconds, TimeUnit.SECONDS)
+                .readTimeout(systemReadTimeoutSeconds, TimeUnit.SECONDS)
+                .writeTimeout(systemWriteTimeoutSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 获取访问baseUrl使用的客户端
+     */
+    public OkHttpClient clientFor(String baseUrl) {
+        String host = UrlUtils.hostKey(baseUrl);
+        if (UrlUtils.isSameHost(baseUrl, defaultBaseUrl)) {
+            return systemClient;
+        }
+
+        GuestClient guestClient = guestClients.get(host);
+        if (guestClient == null) {
+            if (guestClients.size() >= guestMaxHosts) {
+                evictLeastRecentlyUsed();
+            }
+            guestClient = guestClients.computeIfAbsent(host, h -> new GuestClient(buildGuestClient()));
+        }
+        guestClient.lastUsed = System.currentTimeMillis();
+        return guestClient.client;
+    }
+
+    private OkHttpClient buildGuestClient() {
+        return systemClient.newBuilder()
+                .connectionPool(new ConnectionPool(guestMaxIdleConnections, guestKeepAliveSeconds, TimeUnit.SECONDS))
+                .connectTimeout(guestConnectTimeoutSeconds, TimeUnit.SECONDS)
+                .readTimeout(guestReadTimeoutSeconds, TimeUnit.SECONDS)
+                .writeTimeout(guestWriteTimeoutSeconds, TimeUnit.SECONDS)
+                .callTimeout(guestCallTimeoutSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    private void evictLeastRecentlyUsed() {
+        guestClients.entrySet().stream()
+                .min((a, b) -> Long.compare(a.getValue().lastUsed, b.getValue().lastUsed))
+                .ifPresent(eldest -> evict(eldest.getKey()));
+    }
+
+    /**
+     * 回收长时间未使用的游客主机客户端
+     */
+    @Scheduled(fixedRate = 60000)
+    public void evictIdleClients() {
+        long expireBefore = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(guestIdleEvictMinutes);
+        guestClients.forEach((host, guestClient) -> {
+            if (guestClient.lastUsed < expireBefore) {
+                evict(host);
+            }
+        });
+    }
+
+    private void evict(String host) {
+        GuestClient removed = guestClients.remove(host);
+        if (removed != null) {
+            // 只关闭空闲连接，进行中的调用结束后连接随之释放
+            removed.client.connectionPool().evictAll();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        guestClients.keySet().forEach(this::evict);
+        systemClient.connectionPool().evictAll();
+        systemClient.dispatcher().executorService().shutdown();
+    }
+
+    /**
+     * 各连接池状态
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> guests = new HashMap<>();
+        guestClients.forEach((host, guestClient) -> guests.put(host, poolStats(guestClient.client)));
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("system", poolStats(systemClient));
+        stats.put("guestHosts", guestClients.size());
+        stats.put("guestMaxHosts", guestMaxHosts);
+        stats.put("guests", guests);
+        return stats;
+    }
+
+    private Map<String, Object> poolStats(OkHttpClient client) {
+        Map<String, Object> item = new HashMap<>();
+        item.put("connections", client.connectionPool().connectionCount());
+        item.put("idleConnections", client.connectionPool().idleConnectionCount());
+        return item;
+    }
+}
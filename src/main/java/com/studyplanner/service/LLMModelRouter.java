@@ -0,0 +1,363 @@
+package com.studyplanner.service;
+
+import com.studyplanner.exception.LLMException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 多模型路由器
+ * 按模型统计滑动窗口内的p50/p99延迟和错误率，优先使用用户选择的模型，
+ * 该模型不健康时改用最健康的候选；超时、429和5xx时依次故障转移，
+ * 并可在请求超过历史某分位延迟后向下一个候选发起对冲请求，取先成功的结果
+ */
+@Component
+public class LLMModelRouter {
+
+    @Value("${llm.api.available-models:Qwen/Qwen3-8B,THUDM/GLM-4-9B-0414,deepseek-ai/DeepSeek-V3}")
+    private String availableModelsConfig;
+
+    @Value("${llm.router.enabled:true}")
+    private boolean enabled;
+
+    // 每个模型保留的最近样本数
+    @Value("${llm.router.window-size:100}")
+    private int windowSize;
+
+    // 一次请求最多尝试的模型数
+    @Value("${llm.router.max-attempts:3}")
+    private int maxAttempts;
+
+    // 错误率超过该值的模型视为不健康
+    @Value("${llm.router.unhealthy-error-rate:0.5}")
+    private double unhealthyErrorRate;
+
+    // 被限流后暂停使用该模型的时长（毫秒）
+    @Value("${llm.router.rate-limit-cooldown-ms:10000}")
+    private long rateLimitCooldownMs;
+
+    @Value("${llm.router.hedge-enabled:false}")
+    private boolean hedgeEnabled;
+
+    // 请求耗时超过该分位的历史延迟后发起对冲
+    @Value("${llm.router.hedge-percentile:0.95}")
+    private double hedgePercentile;
+
+    // 样本数达到该值后才启用对冲
+    @Value("${llm.router.hedge-min-samples:20}")
+    private int hedgeMinSamples;
+
+    @Autowired
+    @Qualifier("llmHedgeExecutor")
+    private TaskExecutor hedgeExecutor;
+
+    private final Map<String, ModelStats> statsByModel = new ConcurrentHashMap<>();
+
+    private final AtomicLong failovers = new AtomicLong();
+
+    private final AtomicLong hedgesFired = new AtomicLong();
+
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    /**
+     * 模型是否在可路由的候选列表中
+     */
+    public boolean isRoutable(String model) {
+        return enabled && getCandidateModels().contains(model);
+    }
+
+    /**
+     * 路由一次调用：call接收实际使用的模型名并返回结果
+     */
+    public String route(String preferredModel, Function<String, String> call) {
+        List<String> candidates = rankCandidates(preferredModel);
+        int attempts = Math.min(maxAttempts, candidates.size());
+
+        LLMException lastError = null;
+        for (int i = 0; i < attempts; i++) {
+            String model = candidates.get(i);
+            String hedgeModel = i + 1 < candidates.size() ? candidates.get(i + 1) : null;
+            try {
+                if (i > 0) {
+                    failovers.incrementAndGet();
+                    System.out.println("LLM故障转移: " + candidates.get(i - 1) + " -> " + model);
+                }
+                return hedgeEnabled && hedgeModel != null
+                        ? callWithHedge(model, hedgeModel, call)
+                        : callAndRecord(model, call);
+            } catch (LLMException e) {
+                if (!e.isRetryable()) {
+                    throw e;
+                }
+                lastError = e;
+            }
+        }
+        throw lastError != null ? lastError : new LLMException("没有可用的LLM模型", 503);
+    }
+
+    /**
+     * 调用并记录延迟和结果
+     */
+    private String callAndRecord(String model, Function<String, String> call) {
+        ModelStats stats = statsFor(model);
+        long start = System.nanoTime();
+        try {
+            String result = call.apply(model);
+            stats.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), true);
+            return result;
+        } catch (LLMException e) {
+            // 非重试类错误（参数、鉴权）说明的是请求本身的问题，不计入模型健康度
+            if (e.isRetryable()) {
+                stats.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), false);
+            }
+            if (e.isRateLimited()) {
+                stats.coolDownUntil(System.currentTimeMillis() + rateLimitCooldownMs);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 对冲调用：主请求超过分位延迟仍未返回时，向备选模型再发一次，取先成功的结果
+     */
+    private String callWithHedge(String model, String hedgeModel, Function<String, String> call) {
+        ModelStats stats = statsFor(model);
+        if (stats.sampleCount() < hedgeMinSamples) {
+            return callAndRecord(model, call);
+        }
+        long hedgeDelayMs = Math.max(1, stats.percentile(hedgePercentile));
+
+        CompletableFuture<String> primary;
+        try {
+            primary = CompletableFuture.supplyAsync(() -> callAndRecord(model, call), hedgeExecutor);
+        } catch (TaskRejectedException e) {
+            return callAndRecord(model, call);
+        }
+
+        try {
+            return primary.get(hedgeDelayMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // 超过分位延迟，发起对冲
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LLMException("LLM调用被中断", e, false);
+        }
+
+        CompletableFuture<String> hedge;
+        try {
+            hedge = CompletableFuture.supplyAsync(() -> callAndRecord(hedgeModel, call), hedgeExecutor);
+            hedgesFired.incrementAndGet();
+        } catch (TaskRejectedException e) {
+            return joinUnwrapped(primary);
+        }
+
+        CompletableFuture<String> firstSuccess = new CompletableFuture<>();
+        primary.whenComplete((result, error) -> {
+            if (error == null) {
+                firstSuccess.complete(result);
+            } else if (hedge.isCompletedExceptionally()) {
+                firstSuccess.completeExceptionally(error);
+            }
+        });
+        hedge.whenComplete((result, error) -> {
+            if (error == null) {
+                if (firstSuccess.complete(result)) {
+                    hedgeWins.incrementAndGet();
+                }
+            } else if (primary.isCompletedExceptionally()) {
+                firstSuccess.completeExceptionally(error);
+            }
+        });
+        return joinUnwrapped(firstSuccess);
+    }
+
+    private String joinUnwrapped(CompletableFuture<String> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LLMException("LLM调用被中断", e, false);
+        }
+    }
+
+    private RuntimeException unwrap(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof RuntimeException runtimeException) {
+            return runtimeException;
+        }
+        return new LLMException("调用LLM API时发生错误: " + cause.getMessage(), cause, false);
+    }
+
+    /**
+     * 候选排序：用户选择的模型健康时排第一，其余按健康度评分升序
+     */
+    private List<String> rankCandidates(String preferredModel) {
+        long now = System.currentTimeMillis();
+        List<String> others = new ArrayList<>();
+        for (String model : getCandidateModels()) {
+            if (!model.equals(preferredModel)) {
+                others.add(model);
+            }
+        }
+        others.sort(Comparator.comparingDouble(model -> statsFor(model).score(now)));
+
+        List<String> ranked = new ArrayList<>();
+        if (statsFor(preferredModel).isHealthy(now)) {
+            ranked.add(preferredModel);
+            ranked.addAll(others);
+        } else {
+            ranked.addAll(others);
+            ranked.add(preferredModel);
+        }
+        return ranked;
+    }
+
+    private List<String> getCandidateModels() {
+        return Arrays.stream(availableModelsConfig.split(","))
+                .map(String::trim)
+                .filter(model -> !model.isEmpty())
+                .toList();
+    }
+
+    private ModelStats statsFor(String model) {
+        return statsByModel.computeIfAbsent(model, m -> new ModelStats(windowSize));
+    }
+
+    /**
+     * 路由统计数据
+     */
+    public Map<String, Object> getStats() {
+        long now = System.currentTimeMillis();
+        Map<String, Object> models = new LinkedHashMap<>();
+        for (String model : getCandidateModels()) {
+            ModelStats stats = statsFor(model);
+            Map<String, Object> item = new HashMap<>();
+            item.put("samples", stats.sampleCount());
+            item.put("p50Ms", stats.percentile(0.5));
+            item.put("p99Ms", stats.percentile(0.99));
+            item.put("errorRate", stats.errorRate());
+            item.put("healthy", stats.isHealthy(now));
+            models.put(model, item);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("enabled", enabled);
+        result.put("hedgeEnabled", hedgeEnabled);
+        result.put("failovers", failovers.get());
+        result.put("hedgesFired", hedgesFired.get());
+        result.put("hedgeWins", hedgeWins.get());
+        result.put("models", models);
+        return result;
+    }
+
+    /**
+     * 单个模型的滑动窗口统计（环形缓冲区）
+     */
+    private class ModelStats {
+
+        private final long[] latencies;
+
+        private final boolean[] successes;
+
+        private int next = 0;
+
+        private int count = 0;
+
+        private volatile long cooldownUntil = 0;
+
+        ModelStats(int size) {
+            this.latencies = new long[size];
+            this.successes = new boolean[size];
+        }
+
+        synchronized void record(long latencyMs, boolean success) {
+            latencies[next] = latencyMs;
+            successes[next] = success;
+            next = (next + 1) % latencies.length;
+            count = Math.min(count + 1, latencies.length);
+        }
+
+        void coolDownUntil(long until) {
+            cooldownUntil = until;
+        }
+
+        synchronized int sampleCount() {
+            return count;
+        }
+
+        synchronized double errorRate() {
+            if (count == 0) {
+                return 0;
+            }
+            int errors = 0;
+            for (int i = 0; i < count; i++) {
+                if (!successes[i]) {
+                    errors++;
+                }
+            }
+            return (double) errors / count;
+        }
+
+        /**
+         * 成功请求延迟的分位数，无样本时返回0
+         */
+        synchronized long percentile(double p) {
+            long[] sorted = new long[count];
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                if (successes[i]) {
+                    sorted[n++] = latencies[i];
+                }
+            }
+            if (n == 0) {
+                return 0;
+            }
+            Arrays.sort(sorted, 0, n);
+            int index = (int) Math.ceil(p * n) - 1;
+            return sorted[Math.max(0, Math.min(n - 1, index))];
+        }
+
+        boolean isHealthy(long now) {
+            return now >= cooldownUntil && errorRate() < unhealthyErrorRate;
+        }
+
+        /**
+         * 健康度评分，越小越好：p50延迟按错误率放大，冷却中的模型排在最后
+         */
+        double score(long now) {
+            if (now < cooldownUntil) {
+                return Double.MAX_VALUE;
+            }
+            long p50 = percentile(0.5);
+            // 没有样本的模型给一个中性分，让它有机会被探测
+            double base = p50 == 0 ? 1000 : p50;
+            return base * (1 + 4 * errorRate());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.studyplanner.service;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.studyplanner.util.HashUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * LLM请求合并（single-flight）
+ * 同一时刻完全相同的请求（规范化后的消息、模型、接口地址、API Key、采样参数）
+ * 只发起一次上游调用，其余请求等待并共享该结果或异常
+ */
+@Component
+public class LLMRequestCoalescer {
+
+    @Value("${llm.coalescing.enabled:true}")
+    private boolean enabled;
+
+    // 请求键 -> 进行中的上游调用
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    // 实际发起的上游调用次数
+    private final AtomicLong upstreamCalls = new AtomicLong();
+
+    // 被合并（没有发起上游调用）的请求次数
+    private final AtomicLong coalescedCalls = new AtomicLong();
+
+    /**
+     * 构建请求键，API Key只以哈希参与，避免不同账号之间共享结果
+     */
+    public String buildKey(String baseUrl, String apiKey, String model, Integer maxTokens, Double temperature,
+                           JSONArray messages) {
+        StringBuilder raw = new StringBuilder();
+        raw.append(normalizeUrl(baseUrl)).append('\n')
+                .append(model).append('\n')
+                .append(HashUtils.sha256(apiKey == null ? "" : apiKey)).append('\n')
+                .append(maxTokens).append('\n')
+                .append(temperature).append('\n');
+        for (int i = 0; i < messages.size(); i++) {
+            JSONObject message = messages.getJSONObject(i);
+            raw.append(message.getString("role")).append(':')
+                    .append(normalizeContent(message.getString("content"))).append('\n');
+        }
+        return HashUtils.sha256(raw.toString());
+    }
+
+    /**
+     * 执行调用：已有相同请求在进行中时等待其结果，否则由当前线程发起调用
+     */
+    public String execute(String key, Supplier<String> call) {
+        if (!enabled) {
+            upstreamCalls.incrementAndGet();
+            return call.get();
+        }
+
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalescedCalls.incrementAndGet();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw e;
+            }
+        }
+
+        upstreamCalls.incrementAndGet();
+        try {
+            String result = call.get();
+            mine.complete(result);
+            return result;
+        } catch (Throwable e) {
+            // Error也要通知等待中的请求，否则它们会一直阻塞在join上
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * 合并统计数据
+     */
+    public Map<String, Object> getStats() {
+        long upstream = upstreamCalls.get();
+        long coalesced = coalescedCalls.get();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("inFlight", inFlight.size());
+        stats.put("upstreamCalls", upstream);
+        stats.put("coalescedCalls", coalesced);
+        stats.put("coalescedRate", upstream + coalesced == 0 ? 0.0 : (double) coalesced / (upstream + coalesced));
+        return stats;
+    }
+
+    private String normalizeUrl(String baseUrl) {
+        if (baseUrl == null) {
+            return "";
+        }
+        String url = baseUrl.trim().toLowerCase(Locale.ROOT);
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    private String normalizeContent(String content) {
+        return content == null ? "" : content.trim().replaceAll("\\s+", " ");
+    }
+}
@@ -0,0 +1,142 @@
+package com.studyplanner.service;
+
+import com.studyplanner.exception.LLMException;
+import com.studyplanner.util.UrlUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * LLM调用保护：系统服务商按主机、游客按主机加API Key哈希分别维护熔断器和自适应并发限制器，
+ * 游客密钥被限流或失效不会影响登录用户
+ * 上游故障或过载时快速失败，把卡在LLM上的线程数限制在较小范围内，
+ * 保证打卡、计划查询等不依赖LLM的接口仍有可用的Tomcat线程
+ */
+@Component
+public class LLMResilienceGuard {
+
+    @Value("${llm.api.base-url:}")
+    private String defaultBaseUrl;
+
+    @Value("${llm.api.api-key:}")
+    private String defaultApiKey;
+
+    @Value("${llm.resilience.enabled:true}")
+    private boolean enabled;
+
+    @Value("${llm.resilience.breaker.window-size:20}")
+    private int breakerWindowSize;
+
+    @Value("${llm.resilience.breaker.minimum-calls:10}")
+    private int breakerMinimumCalls;
+
+    @Value("${llm.resilience.breaker.failure-rate-threshold:0.5}")
+    private double breakerFailureRateThreshold;
+
+    @Value("${llm.resilience.breaker.open-duration-ms:30000}")
+    private long breakerOpenDurationMs;
+
+    @Value("${llm.resilience.breaker.half-open-permits:3}")
+    private int breakerHalfOpenPermits;
+
+    @Value("${llm.resilience.limiter.initial-limit:20}")
+    private int limiterInitialLimit;
+
+    @Value("${llm.resilience.limiter.min-limit:2}")
+    private int limiterMinLimit;
+
+    @Value("${llm.resilience.limiter.max-limit:64}")
+    private int limiterMaxLimit;
+
+    // 游客自定义接口的并发上限，避免个别慢接口占满线程
+    @Value("${llm.resilience.limiter.guest-max-limit:8}")
+    private int limiterGuestMaxLimit;
+
+    @Value("${llm.resilience.limiter.backoff-ratio:0.5}")
+    private double limiterBackoffRatio;
+
+    private final Map<String, HostGuard> guards = new ConcurrentHashMap<>();
+
+    private record HostGuard(LLMCircuitBreaker breaker, AdaptiveConcurrencyLimiter limiter) {
+    }
+
+    /**
+     * 在熔断器和并发限制器保护下执行一次上游调用
+     */
+    public <T> T execute(String baseUrl, String apiKey, Supplier<T> call) {
+        if (!enabled) {
+            return call.get();
+        }
+
+        HostGuard guard = guardFor(baseUrl, apiKey);
+        LLMCircuitBreaker.Permit permit = guard.breaker().tryAcquire();
+        if (permit == null) {
+            throw new LLMException("AI服务暂时不可用（熔断中），请稍后再试", 503);
+        }
+        if (!guard.limiter().tryAcquire()) {
+            guard.breaker().onIgnored(permit);
+            throw new LLMException("AI服务繁忙，请稍后再试", 503);
+        }
+
+        try {
+            T result = call.get();
+            guard.limiter().onSuccess();
+            guard.breaker().onSuccess(permit);
+            return result;
+        } catch (LLMException e) {
+            if (e.isRetryable()) {
+                guard.limiter().onOverload();
+                guard.breaker().onFailure(permit);
+            } else {
+                guard.limiter().onIgnored();
+                guard.breaker().onIgnored(permit);
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            // 响应解析失败等本地错误，上游本身是可用的
+            guard.limiter().onIgnored();
+            guard.breaker().onSuccess(permit);
+            throw e;
+        } catch (Throwable e) {
+            // OutOfMemoryError、StackOverflowError等也必须归还并发名额和试探名额，否则主机会一直停在HALF_OPEN
+            guard.limiter().onIgnored();
+            guard.breaker().onIgnored(permit);
+            throw e;
+        }
+    }
+
+    private HostGuard guardFor(String baseUrl, String apiKey) {
+        boolean system = UrlUtils.isSystemProvider(baseUrl, apiKey, defaultBaseUrl, defaultApiKey);
+        String key = system ? UrlUtils.hostKey(baseUrl) : UrlUtils.providerKey(baseUrl, apiKey);
+        return guards.computeIfAbsent(key, k -> {
+            int maxLimit = system ? limiterMaxLimit : limiterGuestMaxLimit;
+            return new HostGuard(
+                    new LLMCircuitBreaker(breakerWindowSize, breakerMinimumCalls, breakerFailureRateThreshold,
+                            breakerOpenDurationMs, breakerHalfOpenPermits),
+                    new AdaptiveConcurrencyLimiter(Math.min(limiterInitialLimit, maxLimit), limiterMinLimit,
+                            maxLimit, limiterBackoffRatio));
+        });
+    }
+
+    /**
+     * 各上游主机的熔断与限流状态
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> hosts = new HashMap<>();
+        guards.forEach((host, guard) -> {
+            Map<String, Object> item = new HashMap<>();
+            item.put("breaker", guard.breaker().getStats());
+            item.put("limiter", guard.limiter().getStats());
+            hosts.put(host, item);
+        });
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("hosts", hosts);
+        return stats;
+    }
+}
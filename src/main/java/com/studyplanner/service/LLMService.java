@@ -3,14 +3,23 @@ package com.studyplanner.service;
 import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
+import com.studyplanner.exception.LLMException;
+import com.studyplanner.util.Bulkhead;
+import com.studyplanner.util.UrlUtils;
 import okhttp3.*;
+import okio.BufferedSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * LLM服务类 - 用于调用大语言模型API
@@ -29,9 +38,6 @@ public class LLMService {
     @Value("${llm.api.model:Qwen/Qwen3-8B}")
     private String defaultModel;
     
-    @Value("${llm.api.max-tokens:4096}")
-    private Integer maxTokens;
-    
     @Value("${llm.api.temperature:0.7}")
     private Double temperature;
     
@@ -42,11 +48,34 @@ public class LLMService {
     @Value("${llm.api.available-models:Qwen/Qwen3-8B,THUDM/GLM-4-9B-0414,deepseek-ai/DeepSeek-V3}")
     private String availableModelsConfig;
     
-    private final OkHttpClient client = new OkHttpClient.Builder()
-            .connectTimeout(60, TimeUnit.SECONDS)
-            .readTimeout(120, TimeUnit.SECONDS)
-            .writeTimeout(60, TimeUnit.SECONDS)
-            .build();
+    @Autowired
+    private LLMRequestCoalescer requestCoalescer;
+    
+    @Autowired
+    private LLMModelRouter modelRouter;
+    
+    @Autowired
+    private LLMResilienceGuard resilienceGuard;
+    
+    @Autowired
+    @Qualifier("llmBulkhead")
+    private Bulkhead llmBulkhead;
+    
+    @Autowired
+    @Qualifier("guestLlmBulkhead")
+    private Bulkhead guestLlmBulkhead;
+    
+    @Autowired
+    private LLMHttpClientRegistry httpClientRegistry;
+    
+    @Autowired
+    private TokenEstimator tokenEstimator;
+    
+    @Autowired
+    private SemanticAnswerCache semanticAnswerCache;
+    
+    // 模拟模式下流式回放的切片长度
+    private static final int MOCK_STREAM_CHUNK_SIZE = 64;
     
     /**
      * 获取可用的模型列表
@@ -62,6 +91,63 @@ public class LLMService {
         return defaultModel;
     }
     
+    /**
+     * 获取系统默认API地址
+     */
+    public String getDefaultBaseUrl() {
+        return defaultBaseUrl;
+    }
+    
+    /**
+     * 获取系统默认API Key
+     */
+    public String getDefaultApiKey() {
+        return defaultApiKey;
+    }
+    
+    /**
+     * 获取生成温度
+     */
+    public double getTemperature() {
+        return temperature;
+    }
+    
+    /**
+     * 是否使用系统服务商（主机相同且为系统API Key），游客的密钥即使指向同一主机也不共享系统的舱壁和模型路由
+     */
+    public boolean isSystemProvider(String baseUrl, String apiKey) {
+        return UrlUtils.isSystemProvider(baseUrl, apiKey, defaultBaseUrl, defaultApiKey);
+    }
+    
+    /**
+     * 是否处于模拟模式
+     */
+    public boolean isMockMode() {
+        return Boolean.TRUE.equals(mockMode);
+    }
+    
+    /**
+     * 解析实际使用的模型（未指定时使用系统默认模型）
+     */
+    public String resolveModel(String modelName) {
+        return (modelName != null && !modelName.isEmpty()) ? modelName : defaultModel;
+    }
+    
+    /**
+     * 校验游客自定义的API配置
+     */
+    public void validateCustomConfig(String customBaseUrl, String customApiKey, String customModel) {
+        if (customBaseUrl == null || customBaseUrl.isEmpty()) {
+            throw new IllegalArgumentException("API URL不能为空");
+        }
+        if (customApiKey == null || customApiKey.isEmpty()) {
+            throw new IllegalArgumentException("API Key不能为空");
+        }
+        if (customModel == null || customModel.isEmpty()) {
+            throw new IllegalArgumentException("模型名称不能为空");
+        }
+    }
+    
     /**
      * 生成学习计划（使用系统默认配置 - 登录用户）
      */
@@ -70,9 +156,8 @@ public class LLMService {
             return generateMockPlan(goal, level, dailyHours, totalDays);
         }
         
-        String useModel = (modelName != null && !modelName.isEmpty()) ? modelName : defaultModel;
-        String prompt = buildPlanPrompt(goal, level, dailyHours, totalDays);
-        return chat(prompt, defaultBaseUrl, defaultApiKey, useModel);
+        String useModel = resolveModel(modelName);
+        return requestStudyPlan(goal, level, dailyHours, totalDays, defaultBaseUrl, defaultApiKey, useModel);
     }
     
     /**
@@ -81,24 +166,46 @@ public class LLMService {
     public String generateStudyPlanWithCustomConfig(String goal, String level, double dailyHours, int totalDays,
                                                      String customBaseUrl, String customApiKey, String customModel) {
         // 验证自定义配置
-        if (customBaseUrl == null || customBaseUrl.isEmpty()) {
-            throw new IllegalArgumentException("API URL不能为空");
-        }
-        if (customApiKey == null || customApiKey.isEmpty()) {
-            throw new IllegalArgumentException("API Key不能为空");
-        }
-        if (customModel == null || customModel.isEmpty()) {
-            throw new IllegalArgumentException("模型名称不能为空");
+        validateCustomConfig(customBaseUrl, customApiKey, customModel);
+        
+        return requestStudyPlan(goal, level, dailyHours, totalDays, customBaseUrl, customApiKey, customModel);
+    }
+    
+    /**
+     * 按计划提示词调用LLM，max_tokens按天数估算（缓存由PlanService对最终合并后的计划统一处理）
+     */
+    private String requestStudyPlan(String goal, String level, double dailyHours, int totalDays,
+                                    String baseUrl, String apiKey, String model) {
+        String prompt = buildPlanPrompt(goal, level, dailyHours, totalDays);
+        return chatForPlan(prompt, baseUrl, apiKey, model, totalDays);
+    }
+    
+    /**
+     * 流式生成学习计划（使用系统默认配置 - 登录用户）
+     * 每收到一段增量文本就回调一次onDelta，调用方可边接收边解析
+     */
+    public void streamStudyPlan(String goal, String level, double dailyHours, int totalDays, String modelName,
+                                Consumer<String> onDelta) {
+        if (mockMode) {
+            // 模拟模式下按固定长度切片回放，便于前端联调流式接口
+            String mockPlan = generateMockPlan(goal, level, dailyHours, totalDays);
+            for (int i = 0; i < mockPlan.length(); i += MOCK_STREAM_CHUNK_SIZE) {
+                onDelta.accept(mockPlan.substring(i, Math.min(mockPlan.length(), i + MOCK_STREAM_CHUNK_SIZE)));
+            }
+            return;
         }
         
+        String useModel = resolveModel(modelName);
         String prompt = buildPlanPrompt(goal, level, dailyHours, totalDays);
-        return chat(prompt, customBaseUrl, customApiKey, customModel);
+        JSONArray messages = buildUserMessages(prompt);
+        streamChat(messages, tokenEstimator.planBudget(messages, totalDays),
+                defaultBaseUrl, defaultApiKey, useModel, onDelta);
     }
     
     /**
      * 生成模拟的学习计划（用于测试）
      */
-    private String generateMockPlan(String goal, String level, double dailyHours, int totalDays) {
+    String generateMockPlan(String goal, String level, double dailyHours, int totalDays) {
         JSONObject plan = new JSONObject();
         plan.put("title", goal + " - 学习计划");
         plan.put("summary", "这是一个为期" + totalDays + "天的" + goal + "学习计划，适合" + level + "水平的学习者。");
@@ -125,105 +232,235 @@ public class LLMService {
      */
     public String askQuestion(String question) {
         String prompt = "你是一个专业的学习助手，请回答以下问题：\n\n" + question;
-        return chat(prompt, defaultBaseUrl, defaultApiKey, defaultModel);
+        String scope = "ask:" + defaultModel;
+        String cached = semanticAnswerCache.get(scope, question);
+        if (cached != null) {
+            return cached;
+        }
+        String answer = chat(prompt, defaultBaseUrl, defaultApiKey, defaultModel);
+        semanticAnswerCache.put(scope, question, answer);
+        return answer;
+    }
+    
+    /**
+     * 单轮问答（使用系统配置），相似问题直接返回缓存的回答
+     */
+    public String answerSingleTurn(String question, String modelName) {
+        String model = resolveModel(modelName);
+        String cached = semanticAnswerCache.get(model, question);
+        if (cached != null) {
+            return cached;
+        }
+        String answer = chat(question, defaultBaseUrl, defaultApiKey, model);
+        semanticAnswerCache.put(model, question, answer);
+        return answer;
     }
     
     /**
      * 多轮对话（支持消息列表）
      */
     public String chat(String baseUrl, String apiKey, String model, java.util.List<java.util.Map<String, String>> messageList) {
+        JSONArray messages = new JSONArray();
+        for (java.util.Map<String, String> msg : messageList) {
+            JSONObject message = new JSONObject();
+            message.put("role", msg.get("role"));
+            message.put("content", msg.get("content"));
+            messages.add(message);
+        }
+        return executeChat(baseUrl, apiKey, model, messages, tokenEstimator.chatBudget(messages));
+    }
+    
+    /**
+     * 调用LLM API（通用方法，支持自定义配置）
+     */
+    public String chat(String prompt, String baseUrl, String apiKey, String model) {
+        JSONArray messages = buildUserMessages(prompt);
+        return executeChat(baseUrl, apiKey, model, messages, tokenEstimator.chatBudget(messages));
+    }
+    
+    /**
+     * 生成学习计划（或其中的若干天），max_tokens按天数估算
+     */
+    String chatForPlan(String prompt, String baseUrl, String apiKey, String model, int planDays) {
+        JSONArray messages = buildUserMessages(prompt);
+        return executeChat(baseUrl, apiKey, model, messages, tokenEstimator.planBudget(messages, planDays));
+    }
+    
+    private JSONArray buildUserMessages(String prompt) {
+        JSONArray messages = new JSONArray();
+        JSONObject message = new JSONObject();
+        message.put("role", "user");
+        message.put("content", prompt);
+        messages.add(message);
+        return messages;
+    }
+    
+    /**
+     * 执行一次非流式调用，完全相同的并发请求合并为一次上游调用
+     */
+    private String executeChat(String baseUrl, String apiKey, String model, JSONArray messages,
+                               TokenEstimator.Budget budget) {
+        String coalescingKey = requestCoalescer.buildKey(baseUrl, apiKey, model, budget.maxTokens(), temperature,
+                messages);
+        return requestCoalescer.execute(coalescingKey, () -> withBulkhead(baseUrl, apiKey, () -> resilienceGuard.execute(baseUrl, apiKey, () -> {
+            // 系统服务商上的可选模型交给路由器按健康度选择并故障转移
+            if (isSystemProvider(baseUrl, apiKey) && modelRouter.isRoutable(model)) {
+                return modelRouter.route(model, candidate -> doChat(baseUrl, apiKey, candidate, messages, budget));
+            }
+            return doChat(baseUrl, apiKey, model, messages, budget);
+        })));
+    }
+    
+    /**
+     * 在LLM舱壁内执行，限制同时进行的上游调用总数；名额等待超时按503处理
+     * 游客自定义接口使用单独的舱壁，不占用系统服务商的名额
+     */
+    private <T> T withBulkhead(String baseUrl, String apiKey, Supplier<T> call) {
+        Bulkhead bulkhead = isSystemProvider(baseUrl, apiKey) ? llmBulkhead : guestLlmBulkhead;
+        try {
+            return bulkhead.execute(call);
+        } catch (RejectedExecutionException e) {
+            throw new LLMException(e.getMessage(), 503);
+        }
+    }
+    
+    /**
+     * 发送chat/completions请求并返回content
+     */
+    private String doChat(String baseUrl, String apiKey, String model, JSONArray messages,
+                          TokenEstimator.Budget budget) {
         try {
             JSONObject requestBody = new JSONObject();
             requestBody.put("model", model);
-            requestBody.put("max_tokens", maxTokens);
+            requestBody.put("max_tokens", budget.maxTokens());
             requestBody.put("temperature", temperature);
-            
-            JSONArray messages = new JSONArray();
-            for (java.util.Map<String, String> msg : messageList) {
-                JSONObject message = new JSONObject();
-                message.put("role", msg.get("role"));
-                message.put("content", msg.get("content"));
-                messages.add(message);
-            }
             requestBody.put("messages", messages);
             
-            // 确保URL格式正确
-            String url = baseUrl.endsWith("/") ? baseUrl + "chat/completions" : baseUrl + "/chat/completions";
-            
             Request request = new Request.Builder()
-                    .url(url)
+                    .url(buildCompletionsUrl(baseUrl))
                     .header("Authorization", "Bearer " + apiKey)
                     .header("Content-Type", "application/json")
                     .post(RequestBody.create(requestBody.toJSONString(), MediaType.parse("application/json")))
                     .build();
             
-            try (Response response = client.newCall(request).execute()) {
+            try (Response response = httpClientRegistry.clientFor(baseUrl).newCall(request).execute()) {
                 String responseBody = response.body() != null ? response.body().string() : "";
                 
                 if (!response.isSuccessful()) {
-                    throw new RuntimeException("LLM API调用失败: " + response.code() + " - " + responseBody);
+                    throw new LLMException("LLM API调用失败: " + response.code() + " - " + responseBody,
+                            response.code());
                 }
                 
                 JSONObject jsonResponse = JSON.parseObject(responseBody);
+                JSONObject choice = jsonResponse.getJSONArray("choices").getJSONObject(0);
+                tokenEstimator.recordUsage(budget, jsonResponse.getJSONObject("usage"),
+                        choice.getString("finish_reason"), isSystemProvider(baseUrl, apiKey));
                 
-                return jsonResponse
-                        .getJSONArray("choices")
-                        .getJSONObject(0)
-                        .getJSONObject("message")
-                        .getString("content");
+                return choice.getJSONObject("message").getString("content");
             }
         } catch (IOException e) {
-            throw new RuntimeException("调用LLM API时发生错误: " + e.getMessage(), e);
+            throw new LLMException("调用LLM API时发生错误: " + e.getMessage(), e,
+                    e instanceof InterruptedIOException);
         }
     }
     
     /**
-     * 调用LLM API（通用方法，支持自定义配置）
+     * 流式调用LLM API（stream: true），按SSE协议逐行读取增量内容
+     * onDelta抛出的异常会中断读取并关闭上游连接（例如客户端已断开）
      */
-    public String chat(String prompt, String baseUrl, String apiKey, String model) {
-        try {
-            JSONObject requestBody = new JSONObject();
-            requestBody.put("model", model);
-            requestBody.put("max_tokens", maxTokens);
-            requestBody.put("temperature", temperature);
-            
-            JSONArray messages = new JSONArray();
-            JSONObject message = new JSONObject();
-            message.put("role", "user");
-            message.put("content", prompt);
-            messages.add(message);
-            requestBody.put("messages", messages);
-            
-            // 确保URL格式正确
-            String url = baseUrl.endsWith("/") ? baseUrl + "chat/completions" : baseUrl + "/chat/completions";
-            
-            Request request = new Request.Builder()
-                    .url(url)
-                    .header("Authorization", "Bearer " + apiKey)
-                    .header("Content-Type", "application/json")
-                    .post(RequestBody.create(requestBody.toJSONString(), MediaType.parse("application/json")))
-                    .build();
-            
-            try (Response response = client.newCall(request).execute()) {
+    public void streamChat(String prompt, String baseUrl, String apiKey, String model, Consumer<String> onDelta) {
+        JSONArray messages = buildUserMessages(prompt);
+        streamChat(messages, tokenEstimator.chatBudget(messages), baseUrl, apiKey, model, onDelta);
+    }
+    
+    private void streamChat(JSONArray messages, TokenEstimator.Budget budget, String baseUrl, String apiKey,
+                            String model, Consumer<String> onDelta) {
+        withBulkhead(baseUrl, apiKey, () -> resilienceGuard.execute(baseUrl, apiKey, () -> {
+            doStreamChat(messages, budget, baseUrl, apiKey, model, onDelta);
+            return null;
+        }));
+    }
+    
+    private void doStreamChat(JSONArray messages, TokenEstimator.Budget budget, String baseUrl, String apiKey,
+                              String model, Consumer<String> onDelta) {
+        JSONObject requestBody = new JSONObject();
+        requestBody.put("model", model);
+        requestBody.put("max_tokens", budget.maxTokens());
+        requestBody.put("temperature", temperature);
+        requestBody.put("stream", true);
+        requestBody.put("messages", messages);
+        
+        Request request = new Request.Builder()
+                .url(buildCompletionsUrl(baseUrl))
+                .header("Authorization", "Bearer " + apiKey)
+                .header("Content-Type", "application/json")
+                .header("Accept", "text/event-stream")
+                .post(RequestBody.create(requestBody.toJSONString(), MediaType.parse("application/json")))
+                .build();
+        
+        try (Response response = httpClientRegistry.clientFor(baseUrl).newCall(request).execute()) {
+            if (!response.isSuccessful()) {
                 String responseBody = response.body() != null ? response.body().string() : "";
-                
-                if (!response.isSuccessful()) {
-                    throw new RuntimeException("LLM API调用失败: " + response.code() + " - " + responseBody);
+                throw new LLMException("LLM API调用失败: " + response.code() + " - " + responseBody,
+                        response.code());
+            }
+            if (response.body() == null) {
+                throw new RuntimeException("LLM API返回了空响应");
+            }
+            
+            BufferedSource source = response.body().source();
+            JSONObject usage = null;
+            String finishReason = null;
+            String line;
+            while ((line = source.readUtf8Line()) != null) {
+                // SSE格式：每个事件以 "data: " 开头，空行分隔，"[DONE]" 表示结束
+                if (!line.startsWith("data:")) {
+                    continue;
+                }
+                String data = line.substring(5).trim();
+                if (data.isEmpty()) {
+                    continue;
+                }
+                if ("[DONE]".equals(data)) {
+                    break;
                 }
                 
-                JSONObject jsonResponse = JSON.parseObject(responseBody);
-                
-                return jsonResponse
-                        .getJSONArray("choices")
-                        .getJSONObject(0)
-                        .getJSONObject("message")
-                        .getString("content");
+                JSONObject event = JSON.parseObject(data);
+                // 部分服务商在最后一个事件中返回usage
+                if (event.getJSONObject("usage") != null) {
+                    usage = event.getJSONObject("usage");
+                }
+                JSONArray choices = event.getJSONArray("choices");
+                if (choices == null || choices.isEmpty()) {
+                    continue;
+                }
+                if (choices.getJSONObject(0).getString("finish_reason") != null) {
+                    finishReason = choices.getJSONObject(0).getString("finish_reason");
+                }
+                JSONObject delta = choices.getJSONObject(0).getJSONObject("delta");
+                if (delta == null) {
+                    continue;
+                }
+                // 推理模型的思考过程在reasoning_content中，这里只取正文
+                String content = delta.getString("content");
+                if (content != null && !content.isEmpty()) {
+                    onDelta.accept(content);
+                }
             }
+            tokenEstimator.recordUsage(budget, usage, finishReason, isSystemProvider(baseUrl, apiKey));
         } catch (IOException e) {
-            throw new RuntimeException("调用LLM API时发生错误: " + e.getMessage(), e);
+            throw new LLMException("调用LLM API时发生错误: " + e.getMessage(), e,
+                    e instanceof InterruptedIOException);
         }
     }
     
+    /**
+     * 拼接chat/completions接口地址
+     */
+    private String buildCompletionsUrl(String baseUrl) {
+        return baseUrl.endsWith("/") ? baseUrl + "chat/completions" : baseUrl + "/chat/completions";
+    }
+    
     /**
      * 构建学习计划生成的Prompt
      */
@@ -258,4 +495,88 @@ public class LLMService {
                 5. 生成完整的%d天计划
                 """, goal, level, dailyHours, totalDays, dailyHours, totalDays);
     }
+    
+    /**
+     * 构建长计划的大纲Prompt（分段生成的第一步，只要求每个阶段的主题）
+     */
+    String buildPlanOutlinePrompt(String goal, String level, double dailyHours, int totalDays, List<int[]> stages) {
+        StringBuilder stageRanges = new StringBuilder();
+        for (int[] stage : stages) {
+            stageRanges.append(String.format("第%d-%d天；", stage[0], stage[1]));
+        }
+        
+        return String.format("""
+                你是一个专业的学习规划师，请为以下学习计划设计分阶段大纲：
+                
+                【学习目标】：%s
+                【基础水平】：%s
+                【每日可用时间】：%.1f 小时
+                【计划周期】：%d 天
+                【阶段划分】：%s
+                
+                请按照以下JSON格式返回大纲（注意：只返回JSON，不要有其他内容）：
+                {
+                    "title": "计划标题",
+                    "summary": "计划概述",
+                    "stages": [
+                        {
+                            "startDay": 1,
+                            "endDay": 7,
+                            "theme": "本阶段主题",
+                            "objectives": "本阶段要达成的目标"
+                        }
+                    ]
+                }
+                
+                要求：
+                1. stages必须与给定的阶段划分一一对应，共%d个阶段
+                2. 各阶段循序渐进，由浅入深，并根据基础水平调整难度
+                3. theme和objectives各不超过50字
+                """, goal, level, dailyHours, totalDays, stageRanges, stages.size());
+    }
+    
+    /**
+     * 构建长计划中某一阶段的每日任务Prompt
+     */
+    String buildPlanChunkPrompt(String goal, String level, double dailyHours, int totalDays,
+                                String planTitle, String planSummary, int startDay, int endDay,
+                                String theme, String objectives, String previousTheme, String nextTheme) {
+        return String.format("""
+                你是一个专业的学习规划师，正在编写一个%d天学习计划中第%d天到第%d天的内容。
+                
+                【学习目标】：%s
+                【基础水平】：%s
+                【每日可用时间】：%.1f 小时
+                【计划标题】：%s
+                【计划概述】：%s
+                【本阶段主题】：%s
+                【本阶段目标】：%s
+                【上一阶段主题】：%s
+                【下一阶段主题】：%s
+                
+                请按照以下JSON格式返回本阶段的每日计划（注意：只返回JSON，不要有其他内容）：
+                {
+                    "dailyPlans": [
+                        {
+                            "day": %d,
+                            "content": "今日学习内容详细描述",
+                            "duration": %.1f,
+                            "resources": ["推荐资源1", "推荐资源2"]
+                        }
+                    ]
+                }
+                
+                要求：
+                1. day使用整个计划中的天数编号，从第%d天连续编号到第%d天，共%d天
+                2. 内容要承接上一阶段、为下一阶段做铺垫，每天具体可执行
+                3. 推荐的资源要实用（可以是书籍、网站、视频等）
+                """, totalDays, startDay, endDay, goal, level, dailyHours,
+                nullToNone(planTitle), nullToNone(planSummary), nullToNone(theme), nullToNone(objectives),
+                nullToNone(previousTheme), nullToNone(nextTheme),
+                startDay, dailyHours, startDay, endDay, endDay - startDay + 1);
+    }
+    
+    private String nullToNone(String value) {
+        return (value == null || value.isEmpty()) ? "无" : value;
+    }
 }
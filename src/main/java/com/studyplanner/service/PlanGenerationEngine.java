@@ -0,0 +1,375 @@
+package com.studyplanner.service;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.studyplanner.util.PlanJsonStreamParser;
+import com.studyplanner.util.PlanJsonUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * 长计划分段生成引擎
+ * 先请求一个简短的阶段大纲，再按阶段（默认每周一段）并发请求每日任务，
+ * 最后合并校验为按天排序的完整dailyPlans，总耗时取决于单段耗时而不是计划长度
+ */
+@Service
+public class PlanGenerationEngine {
+
+    @Autowired
+    private LLMService llmService;
+
+    @Autowired
+    private TokenEstimator tokenEstimator;
+
+    @Autowired
+    @Qualifier("planChunkExecutor")
+    private TaskExecutor planChunkExecutor;
+
+    // 超过该天数的计划走分段生成
+    @Value("${llm.plan.chunk-threshold-days:21}")
+    private int chunkThresholdDays;
+
+    // 每段包含的天数
+    @Value("${llm.plan.chunk-days:7}")
+    private int chunkDays;
+
+    // 单个计划同时进行的分段请求数上限
+    @Value("${llm.plan.max-parallel-chunks:4}")
+    private int maxParallelChunks;
+
+    // 单段失败后的重试次数
+    @Value("${llm.plan.chunk-retries:1}")
+    private int chunkRetries;
+
+    /**
+     * 是否应该使用分段生成：超过天数阈值，或预估输出超出单次请求的max_tokens上限
+     */
+    public boolean shouldChunk(int totalDays) {
+        return totalDays > chunkThresholdDays || !tokenEstimator.fitsSingleResponse(totalDays);
+    }
+
+    /**
+     * 分段生成完整计划，返回与单次生成相同结构的JSON（title、summary、dailyPlans）
+     */
+    public JSONObject generateChunked(String goal, String level, double dailyHours, int totalDays,
+                                      String baseUrl, String apiKey, String model) {
+        if (llmService.isMockMode()) {
+            return PlanJsonUtils.extractJsonObject(llmService.generateMockPlan(goal, level, dailyHours, totalDays));
+        }
+
+        long startTime = System.currentTimeMillis();
+        List<int[]> stages = splitStages(totalDays);
+        JSONObject outline = requestOutline(goal, level, dailyHours, totalDays, stages, baseUrl, apiKey, model);
+        JSONArray outlineStages = outline.getJSONArray("stages");
+
+        List<Function<int[], String>> prompts = new ArrayList<>();
+        for (int i = 0; i < stages.size(); i++) {
+            JSONObject stageOutline = stageOutlineAt(outlineStages, i);
+            String previousTheme = i > 0 ? stageOutlineAt(outlineStages, i - 1).getString("theme") : null;
+            String nextTheme = i < stages.size() - 1 ? stageOutlineAt(outlineStages, i + 1).getString("theme") : null;
+            prompts.add(range -> llmService.buildPlanChunkPrompt(goal, level, dailyHours, totalDays,
+                    outline.getString("title"), outline.getString("summary"), range[0], range[1],
+                    stageOutline.getString("theme"), stageOutline.getString("objectives"),
+                    previousTheme, nextTheme));
+        }
+
+        Map<Integer, JSONObject> merged = requestRanges(stages, prompts, dailyHours, baseUrl, apiKey, model);
+        validateCoverage(merged, totalDays);
+
+        JSONObject plan = new JSONObject();
+        plan.put("title", outline.getString("title"));
+        plan.put("summary", outline.getString("summary"));
+        plan.put("dailyPlans", new JSONArray(new ArrayList<>(merged.values())));
+
+        System.out.println(String.format("分段生成计划完成：%d天，%d段，耗时%dms",
+                totalDays, stages.size(), System.currentTimeMillis() - startTime));
+        return plan;
+    }
+
+    /**
+     * 补齐计划中缺失或格式错误的天：只为缺失的天请求每日任务，已生成的内容原样保留
+     * 返回按天排序、覆盖1到totalDays的完整计划
+     */
+    public JSONObject completeMissingDays(JSONObject plan, String goal, String level, double dailyHours,
+                                          int totalDays, String baseUrl, String apiKey, String model) {
+        JSONObject result = plan != null ? plan : new JSONObject();
+        Map<Integer, JSONObject> days = new TreeMap<>();
+        JSONArray dailyPlans = result.getJSONArray("dailyPlans");
+        if (dailyPlans != null) {
+            for (int i = 0; i < dailyPlans.size(); i++) {
+                JSONObject dayPlan = dailyPlans.getJSONObject(i);
+                int day = dayPlan != null ? dayPlan.getIntValue("day") : 0;
+                if (day >= 1 && day <= totalDays && dayPlan.getString("content") != null) {
+                    days.putIfAbsent(day, dayPlan);
+                }
+            }
+        }
+        if (days.size() == totalDays && dailyPlans.size() == totalDays) {
+            return result;
+        }
+
+        if (days.size() < totalDays) {
+            if (result.getString("title") == null) {
+                result.put("title", goal + " - 学习计划");
+            }
+            days.putAll(generateMissingDays(goal, level, dailyHours, totalDays, result.getString("title"),
+                    result.getString("summary"), days, baseUrl, apiKey, model));
+            validateCoverage(days, totalDays);
+        }
+        result.put("dailyPlans", new JSONArray(new ArrayList<>(days.values())));
+        return result;
+    }
+
+    /**
+     * 为existingDays中没有的天生成每日任务，缺失的天按连续区间（每段最多chunkDays天）并发请求，
+     * 相邻已有天的内容作为上下文。返回新生成的天（不含已有的天）
+     */
+    public Map<Integer, JSONObject> generateMissingDays(String goal, String level, double dailyHours, int totalDays,
+                                                       String planTitle, String planSummary,
+                                                       Map<Integer, JSONObject> existingDays,
+                                                       String baseUrl, String apiKey, String model) {
+        List<int[]> ranges = new ArrayList<>();
+        for (int day = 1; day <= totalDays; day++) {
+            if (existingDays.containsKey(day)) {
+                continue;
+            }
+            int[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+            if (last != null && last[1] == day - 1 && day - last[0] < chunkDays) {
+                last[1] = day;
+            } else {
+                ranges.add(new int[]{day, day});
+            }
+        }
+        if (ranges.isEmpty()) {
+            return new TreeMap<>();
+        }
+
+        List<Function<int[], String>> prompts = new ArrayList<>();
+        for (int i = 0; i < ranges.size(); i++) {
+            int[] range = ranges.get(i);
+            String previousDay = contentOf(existingDays.get(range[0] - 1));
+            String nextDay = contentOf(existingDays.get(range[1] + 1));
+            prompts.add(subRange -> llmService.buildPlanChunkPrompt(goal, level, dailyHours, totalDays,
+                    planTitle, planSummary, subRange[0], subRange[1], null, null, previousDay, nextDay));
+        }
+
+        System.out.println(String.format("补齐计划缺失的天：%s", ranges.stream()
+                .map(range -> range[0] == range[1] ? String.valueOf(range[0]) : range[0] + "-" + range[1])
+                .toList()));
+        return requestRanges(ranges, prompts, dailyHours, baseUrl, apiKey, model);
+    }
+
+    /**
+     * 并发请求多个区间的每日任务（单个计划最多maxParallelChunks个请求同时进行），合并为按天排序的结果
+     * 任一区间失败或提交被拒绝时设置中止标志：不再提交新的区间，已提交的区间在下一次请求前退出，未开始的直接取消
+     */
+    private Map<Integer, JSONObject> requestRanges(List<int[]> ranges, List<Function<int[], String>> prompts,
+                                                   double dailyHours, String baseUrl, String apiKey, String model) {
+        Semaphore permits = new Semaphore(maxParallelChunks);
+        AtomicBoolean aborted = new AtomicBoolean();
+        List<CompletableFuture<List<JSONObject>>> futures = new ArrayList<>();
+        for (int i = 0; i < ranges.size(); i++) {
+            int[] range = ranges.get(i);
+            Function<int[], String> prompt = prompts.get(i);
+
+            permits.acquireUninterruptibly();
+            if (aborted.get()) {
+                // 已有区间失败，下面等待结果时会抛出它的异常
+                permits.release();
+                break;
+            }
+            CompletableFuture<List<JSONObject>> future;
+            try {
+                future = CompletableFuture.supplyAsync(
+                        () -> requestChunk(prompt, range[0], range[1], dailyHours, baseUrl, apiKey, model, aborted),
+                        planChunkExecutor);
+            } catch (RuntimeException e) {
+                permits.release();
+                abort(aborted, futures);
+                throw e;
+            }
+            future.whenComplete((result, error) -> {
+                if (error != null) {
+                    aborted.set(true);
+                }
+                permits.release();
+            });
+            futures.add(future);
+        }
+
+        Map<Integer, JSONObject> merged = new TreeMap<>();
+        try {
+            for (CompletableFuture<List<JSONObject>> future : futures) {
+                for (JSONObject dayPlan : future.join()) {
+                    merged.putIfAbsent(dayPlan.getIntValue("day"), dayPlan);
+                }
+            }
+        } catch (CompletionException e) {
+            abort(aborted, futures);
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new RuntimeException("分段生成计划失败: " + cause.getMessage(), cause);
+        }
+        return merged;
+    }
+
+    /**
+     * 中止其余区间：设置中止标志，并取消尚未开始执行的区间（执行器中排队的任务不会再调用LLM）
+     */
+    private void abort(AtomicBoolean aborted, List<CompletableFuture<List<JSONObject>>> futures) {
+        aborted.set(true);
+        futures.forEach(future -> future.cancel(false));
+    }
+
+    private String contentOf(JSONObject dayPlan) {
+        if (dayPlan == null || dayPlan.getString("content") == null) {
+            return null;
+        }
+        String content = dayPlan.getString("content");
+        return "第" + dayPlan.getIntValue("day") + "天：" + (content.length() > 60 ? content.substring(0, 60) + "..." : content);
+    }
+
+    /**
+     * 按chunkDays把计划切分为若干阶段，每个元素为[起始天, 结束天]
+     */
+    private List<int[]> splitStages(int totalDays) {
+        List<int[]> stages = new ArrayList<>();
+        for (int start = 1; start <= totalDays; start += chunkDays) {
+            stages.add(new int[]{start, Math.min(totalDays, start + chunkDays - 1)});
+        }
+        return stages;
+    }
+
+    /**
+     * 请求阶段大纲；失败时退化为无主题的大纲，由各段自行安排内容
+     */
+    private JSONObject requestOutline(String goal, String level, double dailyHours, int totalDays,
+                                      List<int[]> stages, String baseUrl, String apiKey, String model) {
+        try {
+            String prompt = llmService.buildPlanOutlinePrompt(goal, level, dailyHours, totalDays, stages);
+            JSONObject outline = PlanJsonUtils.extractJsonObject(llmService.chat(prompt, baseUrl, apiKey, model));
+            if (outline != null) {
+                return outline;
+            }
+        } catch (Exception e) {
+            System.err.println("生成计划大纲失败，按无大纲继续分段生成: " + e.getMessage());
+        }
+
+        JSONObject fallback = new JSONObject();
+        fallback.put("title", goal + " - 学习计划");
+        fallback.put("summary", "这是一个为期" + totalDays + "天的" + goal + "学习计划，适合" + level + "水平的学习者。");
+        return fallback;
+    }
+
+    private JSONObject stageOutlineAt(JSONArray outlineStages, int index) {
+        if (outlineStages == null || index >= outlineStages.size()) {
+            return new JSONObject();
+        }
+        JSONObject stage = outlineStages.getJSONObject(index);
+        return stage != null ? stage : new JSONObject();
+    }
+
+    /**
+     * 请求一段每日任务，解析不完整时只为仍缺失的天重试，已解析出的天不会丢弃
+     */
+    private List<JSONObject> requestChunk(Function<int[], String> promptFor, int startDay, int endDay,
+                                          double dailyHours, String baseUrl, String apiKey, String model,
+                                          AtomicBoolean aborted) {
+        Map<Integer, JSONObject> collected = new TreeMap<>();
+        int[] range = {startDay, endDay};
+        RuntimeException lastError = null;
+        for (int attempt = 0; attempt <= chunkRetries; attempt++) {
+            if (aborted.get()) {
+                // 其他区间已失败，整个计划不会再用到这一段，不再调用LLM
+                throw new RuntimeException(String.format("第%d-%d天已中止", startDay, endDay));
+            }
+            try {
+                String response = llmService.chatForPlan(promptFor.apply(range), baseUrl, apiKey, model,
+                        range[1] - range[0] + 1);
+                for (JSONObject dayPlan : parseChunk(response, range[0], range[1], dailyHours)) {
+                    collected.putIfAbsent(dayPlan.getIntValue("day"), dayPlan);
+                }
+                if (collected.size() == endDay - startDay + 1) {
+                    return new ArrayList<>(collected.values());
+                }
+                range = missingRange(collected, startDay, endDay);
+                lastError = new RuntimeException(String.format("第%d-%d天只返回了%d天",
+                        startDay, endDay, collected.size()));
+            } catch (RuntimeException e) {
+                lastError = e;
+            }
+        }
+        throw lastError;
+    }
+
+    /**
+     * 区间内第一个到最后一个缺失天构成的子区间
+     */
+    private int[] missingRange(Map<Integer, JSONObject> collected, int startDay, int endDay) {
+        int first = startDay;
+        while (collected.containsKey(first)) {
+            first++;
+        }
+        int last = endDay;
+        while (collected.containsKey(last)) {
+            last--;
+        }
+        return new int[]{first, last};
+    }
+
+    /**
+     * 解析一段返回内容，并把天数规整到[startDay, endDay]
+     * 模型偶尔会从1开始编号，此时按输出顺序重新编号
+     */
+    private List<JSONObject> parseChunk(String response, int startDay, int endDay, double dailyHours) {
+        List<JSONObject> dayPlans = new ArrayList<>();
+        PlanJsonStreamParser parser = new PlanJsonStreamParser(null, dayPlans::add);
+        parser.feed(response);
+
+        boolean outOfRange = dayPlans.stream()
+                .map(dayPlan -> dayPlan.getIntValue("day"))
+                .anyMatch(day -> day < startDay || day > endDay);
+
+        Map<Integer, JSONObject> normalized = new TreeMap<>();
+        for (int i = 0; i < dayPlans.size(); i++) {
+            JSONObject dayPlan = dayPlans.get(i);
+            int day = outOfRange ? startDay + i : dayPlan.getIntValue("day");
+            if (day > endDay || dayPlan.getString("content") == null) {
+                continue;
+            }
+            dayPlan.put("day", day);
+            if (!dayPlan.containsKey("duration")) {
+                dayPlan.put("duration", dailyHours);
+            }
+            normalized.putIfAbsent(day, dayPlan);
+        }
+        return new ArrayList<>(normalized.values());
+    }
+
+    /**
+     * 校验合并结果覆盖了1到totalDays的每一天
+     */
+    private void validateCoverage(Map<Integer, JSONObject> merged, int totalDays) {
+        List<Integer> missingDays = new ArrayList<>();
+        for (int day = 1; day <= totalDays; day++) {
+            if (!merged.containsKey(day)) {
+                missingDays.add(day);
+            }
+        }
+        if (!missingDays.isEmpty()) {
+            throw new RuntimeException("分段生成的计划缺少以下天数: " + missingDays);
+        }
+    }
+}
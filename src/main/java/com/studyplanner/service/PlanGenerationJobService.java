@@ -0,0 +1,247 @@
+package com.studyplanner.service;
+
+import com.alibaba.fastjson2.JSONObject;
+import com.studyplanner.dto.PlanGenerateRequest;
+import com.studyplanner.dto.PlanGenerationJob;
+import com.studyplanner.entity.StudyPlan;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 异步计划生成任务服务
+ * 提交后立即返回任务ID，后台执行LLM调用，客户端轮询或订阅任务状态；
+ * 排队上限和同时执行数在这里显式控制，执行器是平台线程池还是虚拟线程都不影响
+ */
+@Service
+public class PlanGenerationJobService {
+
+    @Autowired
+    private PlanService planService;
+
+    @Autowired
+    @Qualifier("planJobExecutor")
+    private TaskExecutor planJobExecutor;
+
+    // 同时执行的任务数
+    @Value("${plan.job.workers:8}")
+    private int workers;
+
+    // 排队任务上限
+    @Value("${plan.job.queue-capacity:200}")
+    private int queueCapacity;
+
+    private Semaphore workerPermits;
+
+    // 每个用户同时未结束的任务数上限
+    @Value("${plan.job.max-active-per-user:3}")
+    private int maxActivePerUser;
+
+    // 已结束任务的保留时间（分钟）
+    @Value("${plan.job.retention-minutes:30}")
+    private int retentionMinutes;
+
+    // 任务ID -> 任务状态
+    private final Map<String, PlanGenerationJob> jobs = new ConcurrentHashMap<>();
+
+    // 任务ID -> 状态订阅者
+    private final Map<String, List<Consumer<PlanGenerationJob>>> subscribers = new ConcurrentHashMap<>();
+
+    // 未结束的任务数，提交时先占用名额再写入jobs，任务结束时归还
+    private final AtomicInteger unfinishedJobs = new AtomicInteger();
+
+    // 用户ID -> 该用户未结束的任务数（为0时移除）
+    private final Map<Long, Integer> activeJobsByUser = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        workerPermits = new Semaphore(workers, true);
+    }
+
+    /**
+     * 提交计划生成任务
+     */
+    public PlanGenerationJob submit(Long userId, PlanGenerateRequest request) {
+        acquireSlot(userId);
+
+        PlanGenerationJob job = new PlanGenerationJob();
+        job.setJobId(UUID.randomUUID().toString().replace("-", ""));
+        job.setUserId(userId);
+        job.setStatus(PlanGenerationJob.STATUS_PENDING);
+        job.setCreateTime(LocalDateTime.now());
+        job.setUpdateTime(job.getCreateTime());
+        jobs.put(job.getJobId(), job);
+
+        try {
+            planJobExecutor.execute(() -> runJob(job, request));
+        } catch (TaskRejectedException e) {
+            jobs.remove(job.getJobId());
+            releaseSlot(userId);
+            throw new RuntimeException("当前生成任务过多，请稍后再试");
+        }
+        return snapshot(job);
+    }
+
+    /**
+     * 占用全局和用户的任务名额，超过上限时抛出异常且不占用任何名额
+     */
+    private void acquireSlot(Long userId) {
+        int current;
+        do {
+            current = unfinishedJobs.get();
+            if (current >= workers + queueCapacity) {
+                throw new RuntimeException("当前生成任务过多，请稍后再试");
+            }
+        } while (!unfinishedJobs.compareAndSet(current, current + 1));
+
+        try {
+            activeJobsByUser.compute(userId, (id, active) -> {
+                int count = active == null ? 0 : active;
+                if (count >= maxActivePerUser) {
+                    throw new RuntimeException("您已有" + count + "个计划正在生成，请稍后再试");
+                }
+                return count + 1;
+            });
+        } catch (RuntimeException e) {
+            unfinishedJobs.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void releaseSlot(Long userId) {
+        activeJobsByUser.computeIfPresent(userId, (id, active) -> active > 1 ? active - 1 : null);
+        unfinishedJobs.decrementAndGet();
+    }
+
+    /**
+     * 执行任务：LLM调用不在事务中，只有保存阶段开启事务
+     */
+    private void runJob(PlanGenerationJob job, PlanGenerateRequest request) {
+        try {
+            workerPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            updateStatus(job, PlanGenerationJob.STATUS_FAILED, "计划生成任务被中断", null);
+            return;
+        }
+
+        updateStatus(job, PlanGenerationJob.STATUS_RUNNING, null, null);
+        try {
+            JSONObject planJson = planService.generatePlanJson(request);
+            StudyPlan plan = planService.savePlan(job.getUserId(), request, planJson);
+            updateStatus(job, PlanGenerationJob.STATUS_SUCCEEDED, "计划生成成功", plan.getId());
+        } catch (Throwable e) {
+            // Error也要把任务置为失败，否则任务一直停在RUNNING，占用的全局和用户名额永远不会归还
+            System.err.println("计划生成任务失败: " + job.getJobId() + ", " + e);
+            updateStatus(job, PlanGenerationJob.STATUS_FAILED, "计划生成失败: " + e.getMessage(), null);
+            if (e instanceof Error error) {
+                throw error;
+            }
+        } finally {
+            workerPermits.release();
+        }
+    }
+
+    /**
+     * 查询任务状态（仅任务所有者可见）
+     */
+    public PlanGenerationJob getJob(String jobId, Long userId) {
+        PlanGenerationJob job = jobs.get(jobId);
+        if (job == null || !job.getUserId().equals(userId)) {
+            return null;
+        }
+        return snapshot(job);
+    }
+
+    /**
+     * 订阅任务状态变更，订阅时立即推送一次当前状态；任务结束后自动取消订阅
+     */
+    public boolean subscribe(String jobId, Long userId, Consumer<PlanGenerationJob> listener) {
+        PlanGenerationJob job = jobs.get(jobId);
+        if (job == null || !job.getUserId().equals(userId)) {
+            return false;
+        }
+
+        synchronized (job) {
+            if (!job.isFinished()) {
+                subscribers.computeIfAbsent(jobId, id -> new CopyOnWriteArrayList<>()).add(listener);
+            }
+            notifySafely(listener, snapshot(job));
+        }
+        return true;
+    }
+
+    /**
+     * 取消订阅（例如SSE连接已断开）
+     */
+    public void unsubscribe(String jobId, Consumer<PlanGenerationJob> listener) {
+        List<Consumer<PlanGenerationJob>> listeners = subscribers.get(jobId);
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    private void updateStatus(PlanGenerationJob job, String status, String message, Long planId) {
+        List<Consumer<PlanGenerationJob>> listeners;
+        PlanGenerationJob current;
+        synchronized (job) {
+            boolean wasFinished = job.isFinished();
+            job.setStatus(status);
+            job.setMessage(message);
+            job.setPlanId(planId);
+            job.setUpdateTime(LocalDateTime.now());
+            current = snapshot(job);
+            if (!wasFinished && job.isFinished()) {
+                releaseSlot(job.getUserId());
+            }
+            listeners = job.isFinished() ? subscribers.remove(job.getJobId()) : subscribers.get(job.getJobId());
+            if (listeners != null) {
+                listeners.forEach(listener -> notifySafely(listener, current));
+            }
+        }
+    }
+
+    private void notifySafely(Consumer<PlanGenerationJob> listener, PlanGenerationJob job) {
+        try {
+            listener.accept(job);
+        } catch (Exception e) {
+            unsubscribe(job.getJobId(), listener);
+        }
+    }
+
+    private PlanGenerationJob snapshot(PlanGenerationJob job) {
+        PlanGenerationJob copy = new PlanGenerationJob();
+        copy.setJobId(job.getJobId());
+        copy.setUserId(job.getUserId());
+        copy.setStatus(job.getStatus());
+        copy.setMessage(job.getMessage());
+        copy.setPlanId(job.getPlanId());
+        copy.setCreateTime(job.getCreateTime());
+        copy.setUpdateTime(job.getUpdateTime());
+        return copy;
+    }
+
+    /**
+     * 定时清理已结束且超过保留时间的任务
+     */
+    @Scheduled(fixedRate = 300000)
+    public void cleanupFinishedJobs() {
+        LocalDateTime expireBefore = LocalDateTime.now().minusMinutes(retentionMinutes);
+        jobs.values().removeIf(job -> job.isFinished() && job.getUpdateTime().isBefore(expireBefore));
+    }
+}
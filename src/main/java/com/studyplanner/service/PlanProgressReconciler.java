@@ -0,0 +1,69 @@
+package com.studyplanner.service;
+
+import com.studyplanner.mapper.PlanMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 计划进度计数校对任务
+ * study_plan上的total_days_count和completed_count在保存任务、打卡时增量维护，
+ * 手工改库、补丁脚本或异常中断可能让计数与plan_detail不一致。
+ * 定时按ID分批用plan_detail重算计数，并补上漏掉的“已完成”状态；每批一条语句，锁范围小
+ */
+@Service
+public class PlanProgressReconciler {
+
+    @Autowired
+    private PlanMapper planMapper;
+
+    // 每批校对的计划ID跨度
+    @Value("${plan.progress.reconcile-batch-size:500}")
+    private int batchSize;
+
+    private volatile LocalDateTime lastRunTime;
+
+    private volatile int lastRepaired;
+
+    private volatile int lastCompleted;
+
+    /**
+     * 定时校对（默认每天凌晨3点30分）
+     */
+    @Scheduled(cron = "${plan.progress.reconcile-cron:0 30 3 * * ?}")
+    public void reconcile() {
+        long startTime = System.currentTimeMillis();
+        int repaired = 0;
+        int completed = 0;
+        try {
+            long maxId = planMapper.findMaxId();
+            for (long fromId = 1; fromId <= maxId; fromId += batchSize) {
+                repaired += planMapper.reconcileCounters(fromId, fromId + batchSize);
+                completed += planMapper.completeAllDoneInRange(fromId, fromId + batchSize);
+            }
+        } catch (Exception e) {
+            System.err.println("校对计划进度计数失败: " + e.getMessage());
+        }
+        lastRunTime = LocalDateTime.now();
+        lastRepaired = repaired;
+        lastCompleted = completed;
+        System.out.println(String.format("计划进度计数校对完成：修正%d个计划，补标已完成%d个，耗时%dms",
+                repaired, completed, System.currentTimeMillis() - startTime));
+    }
+
+    /**
+     * 最近一次校对的结果
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("lastRunTime", lastRunTime != null ? lastRunTime.toString() : null);
+        stats.put("lastRepaired", lastRepaired);
+        stats.put("lastCompleted", lastCompleted);
+        return stats;
+    }
+}
@@ -1,177 +1,248 @@
 package com.studyplanner.service;
 
-import com.studyplanner.entity.StudyPlan;
-import com.studyplanner.entity.User;
-import com.studyplanner.mapper.CheckInMapper;
+import com.studyplanner.dto.PlanReminderCandidate;
 import com.studyplanner.mapper.PlanMapper;
-import com.studyplanner.mapper.UserMapper;
+import com.studyplanner.mapper.PlanReminderStateMapper;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.net.InetAddress;
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * 计划提醒服务类 - 定时检查闲置计划并发送邮件提醒
+ * 计划提醒服务类 - 按到期时间调度闲置计划的邮件提醒
+ * 每个进行中的计划在plan_reminder_state中保存最后打卡时间、上次提醒时间和下次提醒时间（next_due_at有索引），
+ * 打卡、修改设置、创建计划时在数据库内重新计算；每分钟只查询已到期的计划，开销与到期的计划数成正比。
+ * 多个实例同时运行时，每个实例用SELECT ... FOR UPDATE SKIP LOCKED分批领取到期计划并设置租约，
+ * 发送前以“仍持有租约且仍然到期”为条件更新上次提醒时间，更新成功才发送，同一提醒间隔内最多发送一次；
+ * 实例在更新后、发送前崩溃时会漏发这一次，下一个间隔照常提醒。启动时和每天定时全量同步一次，兜底未经过服务层的数据变更
  */
 @Service
 public class PlanReminderService {
-    
+
     @Autowired
     private PlanMapper planMapper;
-    
-    @Autowired
-    private CheckInMapper checkInMapper;
-    
+
     @Autowired
-    private UserMapper userMapper;
-    
+    private PlanReminderStateMapper reminderStateMapper;
+
     @Autowired
     private EmailService emailService;
-    
+
     @Autowired
-    private UserSettingsService settingsService;
-    
-    // 记录每个计划的最后提醒时间（计划ID -> 最后提醒时间）
-    private final Map<Long, LocalDateTime> lastReminderTime = new ConcurrentHashMap<>();
-    
+    private TransactionTemplate transactionTemplate;
+
+    // 实例标识（为空时使用主机名:进程号），同一台机器运行多个实例时也互不相同
+    @Value("${reminder.instance-id:}")
+    private String instanceId;
+
+    // 每次领取的到期计划数
+    @Value("${reminder.claim-batch-size:100}")
+    private int claimBatchSize;
+
+    // 租约时长（秒），实例崩溃后租约到期，其他实例可以重新领取
+    @Value("${reminder.lease-seconds:300}")
+    private int leaseSeconds;
+
+    // 全量同步时每批的计划ID跨度
+    @Value("${reminder.sync-batch-size:500}")
+    private int syncBatchSize;
+
+    private final AtomicLong claimedCount = new AtomicLong();
+
+    private final AtomicLong sentCount = new AtomicLong();
+
+    private final AtomicLong skippedCount = new AtomicLong();
+
+    private volatile int lastDueCount;
+
+    private volatile LocalDateTime lastSyncTime;
+
     /**
-     * 定时检查闲置计划并发送提醒
-     * 每1分钟执行一次，以支持用户自定义的提醒间隔
-     * 生产环境可改为：fixedRate = 300000（每5分钟执行一次）
+     * 初始化实例标识
      */
-    @Scheduled(fixedRate = 60000) // 1分钟执行一次（60000毫秒），支持最短1分钟的提醒间隔
-    public void checkInactivePlans() {
-        System.out.println("开始检查闲置计划...");
-        
-        try {
-            // 获取所有进行中的计划
-            List<StudyPlan> activePlans = planMapper.findAllActivePlans();
-            
-            for (StudyPlan plan : activePlans) {
-                checkPlanInactivity(plan);
+    @PostConstruct
+    public void init() {
+        if (instanceId == null || instanceId.isBlank()) {
+            String host;
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (Exception e) {
+                host = "localhost";
             }
-            
-            System.out.println("闲置计划检查完成，共检查 " + activePlans.size() + " 个计划");
-        } catch (Exception e) {
-            System.err.println("检查闲置计划时发生错误: " + e.getMessage());
-            e.printStackTrace();
+            instanceId = host + ":" + ProcessHandle.current().pid();
         }
+        System.out.println("提醒调度实例标识: " + instanceId);
     }
-    
+
     /**
-     * 检查单个计划是否闲置
+     * 全量同步进行中计划的提醒状态（启动完成时和每天定时执行，默认凌晨5点15分），保留已有的上次提醒时间和租约
      */
-    private void checkPlanInactivity(StudyPlan plan) {
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${reminder.resync-cron:0 15 5 * * ?}")
+    public void syncAllPlans() {
         try {
-            // 获取用户的闲置时间阈值
-            int inactiveMinutes = settingsService.getInactiveMinutes(plan.getUserId());
-            
-            // 获取计划最后一次打卡时间
-            LocalDateTime lastCheckInTime = checkInMapper.findLastCheckInDateTimeByPlanId(plan.getId());
-            
-            LocalDateTime now = LocalDateTime.now();
-            long minutesSinceLastCheckIn;
-            
-            if (lastCheckInTime == null) {
-                // 如果从未打卡，使用计划创建时间
-                minutesSinceLastCheckIn = ChronoUnit.MINUTES.between(plan.getCreateTime(), now);
-            } else {
-                // 计算距离最后一次打卡的分钟数
-                minutesSinceLastCheckIn = ChronoUnit.MINUTES.between(lastCheckInTime, now);
-            }
-            
-            // 如果超过用户设置的闲置时间未打卡，发送提醒
-            if (minutesSinceLastCheckIn >= inactiveMinutes) {
-                sendReminder(plan, minutesSinceLastCheckIn);
+            int synced = 0;
+            long maxId = planMapper.findMaxId();
+            for (long fromId = 1; fromId <= maxId; fromId += syncBatchSize) {
+                synced += syncRange(fromId, fromId + syncBatchSize);
             }
+            lastSyncTime = LocalDateTime.now();
+            System.out.println("提醒状态已同步，写入 " + synced + " 行");
         } catch (Exception e) {
-            System.err.println("检查计划闲置状态失败: " + plan.getId() + ", " + e.getMessage());
-            e.printStackTrace();
+            System.err.println("同步提醒状态失败: " + e.getMessage());
         }
     }
-    
+
+    private int syncRange(long fromId, long toId) {
+        reminderStateMapper.deleteInactiveRange(fromId, toId);
+        return reminderStateMapper.syncRange(fromId, toId,
+                UserSettingsService.DEFAULT_INACTIVE_MINUTES, UserSettingsService.DEFAULT_REMINDER_INTERVAL_MINUTES);
+    }
+
     /**
-     * 发送提醒邮件
+     * 领取并处理已到期的提醒（每分钟执行一次，支持最短1分钟的提醒间隔），一批领满时继续领取下一批
      */
-    private void sendReminder(StudyPlan plan, long minutesSinceLastCheckIn) {
+    @Scheduled(fixedRateString = "${reminder.tick-ms:60000}")
+    public void checkInactivePlans() {
+        int due = 0;
         try {
-            // 获取用户的提醒间隔设置
-            int reminderIntervalMinutes = settingsService.getReminderIntervalMinutes(plan.getUserId());
-            
-            // 检查距离上次提醒是否超过用户设置的间隔
-            LocalDateTime now = LocalDateTime.now();
-            LocalDateTime lastReminder = lastReminderTime.get(plan.getId());
-            
-            if (lastReminder != null) {
-                long minutesSinceLastReminder = ChronoUnit.MINUTES.between(lastReminder, now);
-                long secondsSinceLastReminder = ChronoUnit.SECONDS.between(lastReminder, now);
-                
-                // 如果用户设置的间隔小于1分钟，使用秒数比较（支持更精确的间隔）
-                if (reminderIntervalMinutes < 1) {
-                    // 这种情况不应该发生，因为前端限制了最小值为1分钟
-                    System.out.println(String.format(
-                        "警告：计划[%s]的提醒间隔设置异常（%d分钟），使用默认1分钟",
-                        plan.getTitle(), reminderIntervalMinutes
-                    ));
-                    reminderIntervalMinutes = 1;
-                }
-                
-                if (minutesSinceLastReminder < reminderIntervalMinutes) {
-                    // 距离上次提醒不足设置的间隔，跳过
-                    System.out.println(String.format(
-                        "计划[%s]距离上次提醒不足%d分钟（当前%d分钟%d秒），跳过提醒",
-                        plan.getTitle(), reminderIntervalMinutes, minutesSinceLastReminder, 
-                        secondsSinceLastReminder % 60
-                    ));
-                    return;
+            List<Long> claimed;
+            do {
+                claimed = claimDuePlans();
+                for (Long planId : claimed) {
+                    remindIfDue(planId);
                 }
+                due += claimed.size();
+            } while (claimed.size() == claimBatchSize);
+        } catch (Exception e) {
+            System.err.println("领取到期提醒失败: " + e.getMessage());
+        }
+        lastDueCount = due;
+        if (due > 0) {
+            System.out.println("闲置计划提醒处理完成，本实例处理到期计划 " + due + " 个");
+        }
+    }
+
+    /**
+     * 在一个短事务内领取一批到期计划并设置租约
+     */
+    private List<Long> claimDuePlans() {
+        List<Long> claimed = transactionTemplate.execute(status -> {
+            List<Long> planIds = reminderStateMapper.findDueForUpdate(claimBatchSize);
+            if (!planIds.isEmpty()) {
+                reminderStateMapper.lease(planIds, instanceId, leaseSeconds);
             }
-            
-            // 获取用户信息
-            User user = userMapper.findById(plan.getUserId());
-            if (user == null || user.getEmail() == null || user.getEmail().isEmpty()) {
-                System.out.println("用户 " + plan.getUserId() + " 没有邮箱，跳过提醒");
+            return planIds;
+        });
+        if (claimed == null) {
+            return Collections.emptyList();
+        }
+        claimedCount.addAndGet(claimed.size());
+        return claimed;
+    }
+
+    /**
+     * 按最新数据确认计划仍然到期后发送提醒
+     */
+    private void remindIfDue(Long planId) {
+        try {
+            // 用最新的打卡记录和设置刷新提醒状态（兜底其他途径的变更）
+            syncRange(planId, planId + 1);
+            PlanReminderCandidate candidate = planMapper.findReminderCandidate(planId);
+            if (candidate == null || !"进行中".equals(candidate.getStatus())) {
+                reminderStateMapper.deleteByPlanId(planId);
+                return;
+            }
+            if (reminderStateMapper.markReminded(planId, instanceId) == 0) {
+                // 已有新打卡不再到期，或租约已过期被其他实例领取
+                reminderStateMapper.releaseLease(planId, instanceId);
+                skippedCount.incrementAndGet();
+                return;
+            }
+
+            if (candidate.getEmail() == null || candidate.getEmail().isEmpty()) {
+                System.out.println("用户 " + candidate.getUserId() + " 没有邮箱，跳过提醒");
                 return;
             }
-            
             // 发送邮件提醒
             emailService.sendInactivePlanReminder(
-                user.getEmail(),
-                user.getUsername(),
-                plan.getTitle()
+                candidate.getEmail(),
+                candidate.getUsername(),
+                candidate.getTitle()
             );
-            
-            // 记录本次提醒时间
-            lastReminderTime.put(plan.getId(), now);
-            
+            sentCount.incrementAndGet();
             System.out.println(String.format(
-                "✓ 已发送闲置提醒: 计划[%s], 用户[%s], 已闲置%d分钟, 下次提醒间隔%d分钟",
-                plan.getTitle(), user.getUsername(), minutesSinceLastCheckIn, reminderIntervalMinutes
+                "✓ 已发送闲置提醒: 计划[%s], 用户[%s], 实例[%s], 下次提醒间隔%d分钟",
+                candidate.getTitle(), candidate.getUsername(), instanceId,
+                candidate.getReminderIntervalMinutes() != null
+                        ? candidate.getReminderIntervalMinutes() : UserSettingsService.DEFAULT_REMINDER_INTERVAL_MINUTES
             ));
         } catch (Exception e) {
-            System.err.println("发送提醒邮件失败: " + plan.getId() + ", " + e.getMessage());
-            e.printStackTrace();
+            System.err.println("发送提醒邮件失败: " + planId + ", " + e.getMessage());
         }
     }
-    
+
+    /**
+     * 计划有新打卡时调用（在打卡事务内）：清除提醒记录并从现在起重新计算闲置时间
+     */
+    public void onCheckIn(Long planId) {
+        reminderStateMapper.touchActivity(planId);
+    }
+
+    /**
+     * 用户修改提醒设置后调用（在设置事务内）：重新计算该用户所有计划的下次提醒时间
+     */
+    public void onSettingsChanged(Long userId, int inactiveMinutes, int reminderIntervalMinutes) {
+        reminderStateMapper.updateSettings(userId, inactiveMinutes, reminderIntervalMinutes);
+    }
+
     /**
-     * 清除计划的提醒记录（当计划有新打卡时调用）
+     * 计划创建或状态变化后调用：进行中的计划写入提醒状态，其他状态删除
      */
-    public void clearReminderRecord(Long planId) {
-        lastReminderTime.remove(planId);
-        System.out.println("已清除计划 " + planId + " 的提醒记录");
+    public void onPlanChanged(Long planId) {
+        try {
+            syncRange(planId, planId + 1);
+        } catch (Exception e) {
+            System.err.println("更新计划提醒状态失败: " + planId + ", " + e.getMessage());
+        }
     }
-    
+
     /**
-     * 手动触发检查（用于测试）
+     * 手动触发检查（用于测试）：先全量同步再处理到期的提醒
      */
     public void checkInactivePlansManually() {
+        syncAllPlans();
         checkInactivePlans();
     }
-}
 
+    /**
+     * 调度统计：本实例的领取/发送计数和全部实例共享的提醒状态汇总
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("instanceId", instanceId);
+        stats.put("lastDueCount", lastDueCount);
+        stats.put("claimedCount", claimedCount.get());
+        stats.put("sentCount", sentCount.get());
+        stats.put("skippedCount", skippedCount.get());
+        stats.put("lastSyncTime", lastSyncTime != null ? lastSyncTime.toString() : null);
+        try {
+            stats.put("state", reminderStateMapper.summarize());
+        } catch (Exception e) {
+            stats.put("state", null);
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,302 @@
+package com.studyplanner.service;
+
+import com.alibaba.fastjson2.JSONObject;
+import com.studyplanner.util.HashUtils;
+import com.studyplanner.util.PlanJsonUtils;
+import com.studyplanner.util.UrlUtils;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 学习计划缓存，保存分段生成、补齐缺失天之后的最终计划JSON（流式生成也会回放和写入）
+ * 以（目标、水平、每日时长、天数、模型、温度、API地址）规范化后的SHA-256为键，游客自定义接口还包含API Key的哈希，
+ * 内存层按条数LRU和TTL淘汰，可选的磁盘层在重启后继续生效
+ */
+@Component
+public class PlanResponseCache {
+
+    @Value("${llm.api.base-url:}")
+    private String systemBaseUrl;
+
+    @Value("${llm.api.api-key:}")
+    private String systemApiKey;
+
+    @Value("${llm.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${llm.cache.max-entries:1000}")
+    private int maxEntries;
+
+    @Value("${llm.cache.ttl-minutes:1440}")
+    private long ttlMinutes;
+
+    @Value("${llm.cache.disk-enabled:false}")
+    private boolean diskEnabled;
+
+    @Value("${llm.cache.disk-path:cache/llm-plans}")
+    private String diskPath;
+
+    @Value("${llm.cache.disk-max-entries:10000}")
+    private int diskMaxEntries;
+
+    private Path diskDir;
+
+    // 访问顺序的LinkedHashMap实现LRU，所有访问都在synchronized块内
+    private final LinkedHashMap<String, CacheEntry> memory = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong memoryHits = new AtomicLong();
+
+    private final AtomicLong diskHits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong puts = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong expirations = new AtomicLong();
+
+    private record CacheEntry(String value, long expireAt) {
+        boolean isExpired(long now) {
+            return now >= expireAt;
+        }
+    }
+
+    /**
+     * 初始化磁盘缓存目录
+     */
+    @PostConstruct
+    public void init() {
+        if (!enabled || !diskEnabled) {
+            return;
+        }
+        diskDir = Paths.get(System.getProperty("user.dir"), diskPath).toAbsolutePath();
+        try {
+            Files.createDirectories(diskDir);
+            System.out.println("LLM计划缓存磁盘目录: " + diskDir);
+        } catch (IOException e) {
+            System.err.println("创建LLM计划缓存目录失败，磁盘缓存已禁用: " + e.getMessage());
+            diskDir = null;
+        }
+    }
+
+    /**
+     * 构建缓存键：各字段规范化（全角转半角、去首尾空白、合并空白、小写）后取SHA-256
+     * 不是系统服务商（主机相同且为系统API Key）时加入API Key的哈希，游客密钥不会命中系统密钥生成的计划
+     */
+    public String buildKey(String goal, String level, double dailyHours, int totalDays,
+                           String model, double temperature, String baseUrl, String apiKey) {
+        String raw = String.join("\n",
+                normalize(goal),
+                normalize(level),
+                String.format(Locale.ROOT, "%.1f", dailyHours),
+                String.valueOf(totalDays),
+                normalize(model),
+                String.format(Locale.ROOT, "%.2f", temperature),
+                normalize(baseUrl));
+        if (!UrlUtils.isSystemProvider(baseUrl, apiKey, systemBaseUrl, systemApiKey)) {
+            raw += "\n" + HashUtils.sha256(apiKey == null ? "" : apiKey);
+        }
+        return HashUtils.sha256(raw);
+    }
+
+    /**
+     * 查询缓存，未命中返回null
+     */
+    public String get(String key) {
+        if (!enabled) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (memory) {
+            CacheEntry entry = memory.get(key);
+            if (entry != null) {
+                if (!entry.isExpired(now)) {
+                    memoryHits.incrementAndGet();
+                    return entry.value();
+                }
+                memory.remove(key);
+                expirations.incrementAndGet();
+            }
+        }
+
+        CacheEntry diskEntry = readFromDisk(key, now);
+        if (diskEntry != null) {
+            diskHits.incrementAndGet();
+            putMemory(key, diskEntry);
+            return diskEntry.value();
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 写入缓存，只缓存能解析出dailyPlans的响应，避免缓存错误输出
+     */
+    public void put(String key, String value) {
+        if (!enabled || !isCacheablePlan(value)) {
+            return;
+        }
+
+        CacheEntry entry = new CacheEntry(value, System.currentTimeMillis() + ttlMinutes * 60_000);
+        putMemory(key, entry);
+        writeToDisk(key, entry);
+        puts.incrementAndGet();
+    }
+
+    private void putMemory(String key, CacheEntry entry) {
+        synchronized (memory) {
+            memory.put(key, entry);
+            while (memory.size() > maxEntries) {
+                String eldest = memory.keySet().iterator().next();
+                memory.remove(eldest);
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    private boolean isCacheablePlan(String value) {
+        if (value == null || value.isEmpty()) {
+            return false;
+        }
+        try {
+            JSONObject planJson = PlanJsonUtils.extractJsonObject(value);
+            return planJson != null && planJson.getJSONArray("dailyPlans") != null
+                    && !planJson.getJSONArray("dailyPlans").isEmpty();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private CacheEntry readFromDisk(String key, long now) {
+        if (diskDir == null) {
+            return null;
+        }
+        Path file = diskDir.resolve(key + ".json");
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            JSONObject json = JSONObject.parseObject(Files.readString(file, StandardCharsets.UTF_8));
+            CacheEntry entry = new CacheEntry(json.getString("value"), json.getLongValue("expireAt"));
+            if (entry.isExpired(now) || entry.value() == null) {
+                Files.deleteIfExists(file);
+                expirations.incrementAndGet();
+                return null;
+            }
+            return entry;
+        } catch (Exception e) {
+            System.err.println("读取LLM计划磁盘缓存失败: " + file + ", " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, CacheEntry entry) {
+        if (diskDir == null) {
+            return;
+        }
+        JSONObject json = new JSONObject();
+        json.put("value", entry.value());
+        json.put("expireAt", entry.expireAt());
+        try {
+            // 先写临时文件再原子替换，避免读到半个文件
+            Path tmp = Files.createTempFile(diskDir, key, ".tmp");
+            Files.writeString(tmp, json.toJSONString(), StandardCharsets.UTF_8);
+            Files.move(tmp, diskDir.resolve(key + ".json"),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("写入LLM计划磁盘缓存失败: " + key + ", " + e.getMessage());
+        }
+    }
+
+    /**
+     * 定时清理过期条目，磁盘层超过上限时删除最旧的文件
+     */
+    @Scheduled(fixedRate = 600000)
+    public void cleanupExpired() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (memory) {
+            int before = memory.size();
+            memory.values().removeIf(entry -> entry.isExpired(now));
+            expirations.addAndGet(before - memory.size());
+        }
+
+        if (diskDir == null) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(diskDir, "*.json")) {
+            List<Path> all = new ArrayList<>();
+            files.forEach(all::add);
+            for (Path file : all) {
+                readFromDisk(file.getFileName().toString().replace(".json", ""), now);
+            }
+            if (all.size() > diskMaxEntries) {
+                all.sort(Comparator.comparingLong(file -> file.toFile().lastModified()));
+                for (Path file : all.subList(0, all.size() - diskMaxEntries)) {
+                    Files.deleteIfExists(file);
+                    evictions.incrementAndGet();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("清理LLM计划磁盘缓存失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 缓存统计数据
+     */
+    public Map<String, Object> getStats() {
+        long hits = memoryHits.get() + diskHits.get();
+        long total = hits + misses.get();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("diskEnabled", diskDir != null);
+        synchronized (memory) {
+            stats.put("size", memory.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("memoryHits", memoryHits.get());
+        stats.put("diskHits", diskHits.get());
+        stats.put("misses", misses.get());
+        stats.put("hitRate", total == 0 ? 0.0 : (double) hits / total);
+        stats.put("puts", puts.get());
+        stats.put("evictions", evictions.get());
+        stats.put("expirations", expirations.get());
+        return stats;
+    }
+
+    private String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        return Normalizer.normalize(value, Normalizer.Form.NFKC)
+                .trim()
+                .replaceAll("\\s+", " ")
+                .toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,20 +1,32 @@
 package com.studyplanner.service;
 
-import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
+import com.studyplanner.dto.PageResult;
 import com.studyplanner.dto.PlanGenerateRequest;
 import com.studyplanner.entity.PlanDetail;
 import com.studyplanner.entity.StudyPlan;
 import com.studyplanner.mapper.PlanDetailMapper;
 import com.studyplanner.mapper.PlanMapper;
+import com.studyplanner.util.PageCursor;
+import com.studyplanner.util.PlanJsonStreamParser;
+import com.studyplanner.util.PlanJsonUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * 学习计划服务类
@@ -31,12 +43,72 @@ public class PlanService {
     @Autowired
     private LLMService llmService;
 
+    @Autowired
+    private PlanGenerationEngine planGenerationEngine;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private UserDailyStatsService userDailyStatsService;
+
+    @Autowired
+    private PlanResponseCache planResponseCache;
+
+    @Autowired(required = false)
+    private PlanReminderService planReminderService;
+
+    @Value("${pagination.default-size:20}")
+    private int defaultPageSize;
+
+    @Value("${pagination.max-size:100}")
+    private int maxPageSize;
+
+    // 保存每日任务时单条INSERT语句包含的最大行数
+    @Value("${plan.detail.batch-size:200}")
+    private int detailBatchSize;
+
     /**
      * 生成学习计划（调用LLM - 登录用户使用系统配置）
+     * LLM调用期间不持有数据库连接，只有最终保存计划和每日任务时才开启事务
      */
-    @Transactional
     public StudyPlan generatePlan(Long userId, PlanGenerateRequest request) {
-        // 调用LLM生成计划（使用系统配置，可选择模型）
+        JSONObject planJson = generatePlanJson(request);
+        return savePlan(userId, request, planJson);
+    }
+
+    /**
+     * 调用LLM生成计划JSON（使用系统配置，可选择模型），不访问数据库
+     * 缓存的是分段生成、补齐缺失天之后的最终计划，长计划同样可以命中
+     */
+    public JSONObject generatePlanJson(PlanGenerateRequest request) {
+        if (llmService.isMockMode()) {
+            return parseLLMResponse(llmService.generateStudyPlan(
+                    request.getGoal(),
+                    request.getLevel(),
+                    request.getDailyHours().doubleValue(),
+                    request.getTotalDays(),
+                    request.getModelName()));
+        }
+        return generateCached(request, llmService.getDefaultBaseUrl(), llmService.getDefaultApiKey(),
+                llmService.resolveModel(request.getModelName()), () -> generateSystemPlanJson(request));
+    }
+
+    /**
+     * 使用系统配置生成计划JSON，不查缓存：长计划分段并发生成，否则单次生成后补齐缺失的天
+     */
+    private JSONObject generateSystemPlanJson(PlanGenerateRequest request) {
+        if (planGenerationEngine.shouldChunk(request.getTotalDays())) {
+            return planGenerationEngine.generateChunked(
+                    request.getGoal(),
+                    request.getLevel(),
+                    request.getDailyHours().doubleValue(),
+                    request.getTotalDays(),
+                    llmService.getDefaultBaseUrl(),
+                    llmService.getDefaultApiKey(),
+                    llmService.resolveModel(request.getModelName()));
+        }
+
         String llmResponse = llmService.generateStudyPlan(
                 request.getGoal(),
                 request.getLevel(),
@@ -44,20 +116,106 @@ public class PlanService {
                 request.getTotalDays(),
                 request.getModelName());
 
-        // 解析LLM返回的JSON
-        JSONObject planJson = parseLLMResponse(llmResponse);
+        // 解析LLM返回的JSON，被截断或缺失的天单独补齐
+        return planGenerationEngine.completeMissingDays(parseLLMResponse(llmResponse),
+                request.getGoal(),
+                request.getLevel(),
+                request.getDailyHours().doubleValue(),
+                request.getTotalDays(),
+                llmService.getDefaultBaseUrl(),
+                llmService.getDefaultApiKey(),
+                llmService.resolveModel(request.getModelName()));
+    }
 
-        // 创建计划
-        StudyPlan plan = new StudyPlan();
-        plan.setUserId(userId);
+    /**
+     * 先查计划缓存，未命中时生成并缓存最终的计划JSON
+     */
+    private JSONObject generateCached(PlanGenerateRequest request, String baseUrl, String apiKey, String model,
+                                      Supplier<JSONObject> generator) {
+        String cacheKey = buildPlanCacheKey(request, baseUrl, apiKey, model);
+        JSONObject cached = readCachedPlan(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        JSONObject planJson = generator.get();
+        cachePlan(cacheKey, planJson, request.getTotalDays());
+        return planJson;
+    }
+
+    private String buildPlanCacheKey(PlanGenerateRequest request, String baseUrl, String apiKey, String model) {
+        return planResponseCache.buildKey(request.getGoal(), request.getLevel(),
+                request.getDailyHours().doubleValue(), request.getTotalDays(), model,
+                llmService.getTemperature(), baseUrl, apiKey);
+    }
+
+    /**
+     * 读取缓存的计划，每次解析出新的对象，调用方可以随意修改
+     */
+    private JSONObject readCachedPlan(String cacheKey) {
+        String cached = planResponseCache.get(cacheKey);
+        return cached != null ? parseLLMResponse(cached) : null;
+    }
 
-        // 处理标题：如果用户未提供或为空，则使用LLM生成的标题
-        String title = request.getTitle();
-        if (title == null || title.trim().isEmpty()) {
-            title = planJson.getString("title");
+    /**
+     * 只缓存天数完整的计划，避免每次命中都要补齐缺失的天
+     */
+    private void cachePlan(String cacheKey, JSONObject planJson, int totalDays) {
+        if (PlanJsonUtils.countDayPlans(planJson) >= totalDays) {
+            planResponseCache.put(cacheKey, planJson.toJSONString());
         }
-        plan.setTitle(title);
+    }
+
+    /**
+     * 在一个事务中保存计划及其每日任务
+     */
+    public StudyPlan savePlan(Long userId, PlanGenerateRequest request, JSONObject planJson) {
+        StudyPlan saved = transactionTemplate.execute(status -> {
+            // 创建计划
+            StudyPlan plan = new StudyPlan();
+            plan.setUserId(userId);
+
+            // 处理标题：如果用户未提供或为空，则使用LLM生成的标题
+            String title = request.getTitle();
+            if (title == null || title.trim().isEmpty()) {
+                title = planJson.getString("title");
+            }
+            plan.setTitle(title);
+
+            plan.setGoal(request.getGoal());
+            plan.setLevel(request.getLevel());
+            plan.setDailyHours(request.getDailyHours());
+            plan.setTotalDays(request.getTotalDays());
+            plan.setStartDate(LocalDate.now());
+            plan.setEndDate(LocalDate.now().plusDays(request.getTotalDays() - 1));
+            plan.setStatus("进行中");
+
+            planMapper.insert(plan);
+
+            // 解析并保存每日任务
+            savePlanDetails(plan, planJson);
+
+            return plan;
+        });
+        if (planReminderService != null) {
+            planReminderService.onPlanChanged(saved.getId());
+        }
+        return saved;
+    }
 
+    /**
+     * 流式生成学习计划（登录用户）
+     * 先创建计划主记录，LLM每输出完整的一天就立即保存并通知listener；
+     * 生成失败或一天都没有解析出来时删除已保存的数据。
+     * listener回调失败（客户端已断开）时立即停止，不再调用LLM补齐，并删除未完成的计划
+     */
+    public StudyPlan generatePlanStream(Long userId, PlanGenerateRequest request, PlanStreamListener listener) {
+        String requestTitle = request.getTitle();
+        boolean useLLMTitle = requestTitle == null || requestTitle.trim().isEmpty();
+
+        StudyPlan plan = new StudyPlan();
+        plan.setUserId(userId);
+        // 标题暂用学习目标占位，LLM输出title后再更新
+        plan.setTitle(useLLMTitle ? buildPlaceholderTitle(request.getGoal()) : requestTitle);
         plan.setGoal(request.getGoal());
         plan.setLevel(request.getLevel());
         plan.setDailyHours(request.getDailyHours());
@@ -67,29 +225,205 @@ public class PlanService {
         plan.setStatus("进行中");
 
         planMapper.insert(plan);
+        try {
+            notifyListener(() -> listener.onPlanCreated(plan));
+        } catch (ListenerAbortedException e) {
+            throw abortForClient(plan, 0, e);
+        }
+
+        Map<Integer, JSONObject> savedDays = new HashMap<>();
+        Consumer<JSONObject> saveDayPlan = dayPlan -> {
+            int day = dayPlan.getIntValue("day");
+            // 忽略超出计划范围、重复输出或缺少内容的天
+            if (day < 1 || day > request.getTotalDays() || dayPlan.getString("content") == null
+                    || savedDays.putIfAbsent(day, dayPlan) != null) {
+                return;
+            }
+            PlanDetail detail = buildPlanDetail(plan, dayPlan);
+            planDetailMapper.insert(detail);
+            planMapper.addTotalDaysCount(plan.getId(), 1);
+            notifyListener(() -> listener.onDayPlan(detail));
+        };
+        PlanJsonStreamParser parser = new PlanJsonStreamParser(
+                (key, value) -> {
+                    if (useLLMTitle && "title".equals(key) && value != null && !value.trim().isEmpty()) {
+                        plan.setTitle(value.trim());
+                        planMapper.update(plan);
+                        notifyListener(() -> listener.onTitleUpdated(plan));
+                    }
+                },
+                saveDayPlan);
+
+        String cacheKey = llmService.isMockMode() ? null : buildPlanCacheKey(request,
+                llmService.getDefaultBaseUrl(), llmService.getDefaultApiKey(),
+                llmService.resolveModel(request.getModelName()));
+        JSONObject cachedPlan = cacheKey != null ? readCachedPlan(cacheKey) : null;
+
+        try {
+            if (cachedPlan != null) {
+                // 命中缓存时直接回放缓存的计划，不调用LLM
+                parser.feed(cachedPlan.toJSONString());
+            } else if (!llmService.isMockMode() && planGenerationEngine.shouldChunk(request.getTotalDays())) {
+                // 单次输出放不下的长计划改为分段生成，完成后一次性推送
+                parser.feed(generateSystemPlanJson(request).toJSONString());
+            } else {
+                llmService.streamStudyPlan(
+                        request.getGoal(),
+                        request.getLevel(),
+                        request.getDailyHours().doubleValue(),
+                        request.getTotalDays(),
+                        request.getModelName(),
+                        parser::feed);
+            }
+        } catch (ListenerAbortedException e) {
+            throw abortForClient(plan, savedDays.size(), e);
+        } catch (RuntimeException e) {
+            // 上游流中断或解析失败时已保存的天保留，缺失的天在下面补齐
+            if (savedDays.isEmpty()) {
+                discardPlan(plan.getId());
+                throw e;
+            }
+            System.err.println("流式生成计划中断，已保存" + savedDays.size() + "天，补齐剩余天数: " + e.getMessage());
+        }
 
-        // 解析并保存每日任务
-        savePlanDetails(plan, planJson);
+        if (savedDays.isEmpty()) {
+            discardPlan(plan.getId());
+            throw new RuntimeException("未能从AI返回内容中解析出每日计划");
+        }
+
+        if (savedDays.size() < request.getTotalDays() && !llmService.isMockMode()) {
+            try {
+                planGenerationEngine.generateMissingDays(
+                        request.getGoal(),
+                        request.getLevel(),
+                        request.getDailyHours().doubleValue(),
+                        request.getTotalDays(),
+                        plan.getTitle(),
+                        parser.getFields().get("summary"),
+                        new HashMap<>(savedDays),
+                        llmService.getDefaultBaseUrl(),
+                        llmService.getDefaultApiKey(),
+                        llmService.resolveModel(request.getModelName()))
+                        .values()
+                        .forEach(saveDayPlan);
+            } catch (ListenerAbortedException e) {
+                throw abortForClient(plan, savedDays.size(), e);
+            } catch (RuntimeException e) {
+                discardPlan(plan.getId());
+                throw e;
+            }
+        }
 
+        if (cacheKey != null && cachedPlan == null) {
+            cachePlan(cacheKey, buildStreamedPlanJson(parser, plan, savedDays), request.getTotalDays());
+        }
+        if (planReminderService != null) {
+            planReminderService.onPlanChanged(plan.getId());
+        }
+        listener.onComplete(plan, savedDays.size());
         return plan;
     }
 
+    /**
+     * 把流式输出和补齐的天合并为完整的计划JSON，格式与非流式生成的结果一致
+     */
+    private JSONObject buildStreamedPlanJson(PlanJsonStreamParser parser, StudyPlan plan,
+                                             Map<Integer, JSONObject> savedDays) {
+        JSONObject planJson = new JSONObject();
+        String title = parser.getFields().get("title");
+        planJson.put("title", title != null ? title : plan.getTitle());
+        planJson.put("summary", parser.getFields().get("summary"));
+        planJson.put("dailyPlans", new JSONArray(new TreeMap<>(savedDays).values()));
+        return planJson;
+    }
+
+    /**
+     * 执行listener回调，回调抛出的异常包装为ListenerAbortedException，与上游调用失败区分开
+     */
+    private static void notifyListener(Runnable callback) {
+        try {
+            callback.run();
+        } catch (RuntimeException e) {
+            throw new ListenerAbortedException(e);
+        }
+    }
+
+    /**
+     * 客户端断开后停止生成：已保存的天不完整且无人接收，直接删除，返回原始异常供调用方结束连接
+     */
+    private RuntimeException abortForClient(StudyPlan plan, int savedCount, ListenerAbortedException e) {
+        System.err.println("客户端已断开，停止生成计划 " + plan.getId() + "（已保存" + savedCount + "天，不再补齐）: "
+                + e.getCause().getMessage());
+        discardPlan(plan.getId());
+        return (RuntimeException) e.getCause();
+    }
+
+    /**
+     * listener回调失败（客户端断开等）
+     */
+    private static final class ListenerAbortedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        ListenerAbortedException(RuntimeException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * 删除生成失败的计划及其已保存的每日任务
+     */
+    private void discardPlan(Long planId) {
+        planDetailMapper.deleteByPlanId(planId);
+        planMapper.delete(planId);
+    }
+
+    /**
+     * 生成占位标题（study_plan.title最长100字）
+     */
+    private String buildPlaceholderTitle(String goal) {
+        String title = goal.trim();
+        return title.length() > 90 ? title.substring(0, 90) + "..." : title;
+    }
+
     /**
      * 游客体验生成计划（使用自定义API配置，不保存到数据库）
      */
     public JSONObject generatePlanForGuest(PlanGenerateRequest request) {
-        // 调用LLM生成计划（使用自定义配置）
-        String llmResponse = llmService.generateStudyPlanWithCustomConfig(
-                request.getGoal(),
-                request.getLevel(),
-                request.getDailyHours().doubleValue(),
-                request.getTotalDays(),
-                request.getCustomApiUrl(),
-                request.getCustomApiKey(),
+        llmService.validateCustomConfig(request.getCustomApiUrl(), request.getCustomApiKey(),
                 request.getModelName());
-
-        // 解析并返回计划JSON（不保存）
-        JSONObject planJson = parseLLMResponse(llmResponse);
+        // 调用LLM生成计划（使用自定义配置），相同配置和参数的完整计划直接命中缓存
+        JSONObject planJson = generateCached(request, request.getCustomApiUrl(), request.getCustomApiKey(),
+                request.getModelName(), () -> {
+                    if (planGenerationEngine.shouldChunk(request.getTotalDays())) {
+                        return planGenerationEngine.generateChunked(
+                                request.getGoal(),
+                                request.getLevel(),
+                                request.getDailyHours().doubleValue(),
+                                request.getTotalDays(),
+                                request.getCustomApiUrl(),
+                                request.getCustomApiKey(),
+                                request.getModelName());
+                    }
+                    String llmResponse = llmService.generateStudyPlanWithCustomConfig(
+                            request.getGoal(),
+                            request.getLevel(),
+                            request.getDailyHours().doubleValue(),
+                            request.getTotalDays(),
+                            request.getCustomApiUrl(),
+                            request.getCustomApiKey(),
+                            request.getModelName());
+
+                    // 解析计划JSON（不保存），被截断或缺失的天单独补齐
+                    return planGenerationEngine.completeMissingDays(parseLLMResponse(llmResponse),
+                            request.getGoal(),
+                            request.getLevel(),
+                            request.getDailyHours().doubleValue(),
+                            request.getTotalDays(),
+                            request.getCustomApiUrl(),
+                            request.getCustomApiKey(),
+                            request.getModelName());
+                });
         planJson.put("isGuestPlan", true);
         planJson.put("message", "游客计划仅供预览，登录后可保存计划");
 
@@ -100,14 +434,7 @@ public class PlanService {
      * 解析LLM返回的响应
      */
     private JSONObject parseLLMResponse(String llmResponse) {
-        // 尝试提取JSON部分（LLM可能返回额外文字）
-        String jsonStr = llmResponse;
-        int jsonStart = llmResponse.indexOf("{");
-        int jsonEnd = llmResponse.lastIndexOf("}");
-        if (jsonStart >= 0 && jsonEnd > jsonStart) {
-            jsonStr = llmResponse.substring(jsonStart, jsonEnd + 1);
-        }
-        return JSON.parseObject(jsonStr);
+        return PlanJsonUtils.extractJsonObject(llmResponse);
     }
 
     /**
@@ -118,41 +445,64 @@ public class PlanService {
         if (dailyPlans == null)
             return;
 
+        List<PlanDetail> details = new ArrayList<>(dailyPlans.size());
         for (int i = 0; i < dailyPlans.size(); i++) {
-            JSONObject dayPlan = dailyPlans.getJSONObject(i);
-
-            PlanDetail detail = new PlanDetail();
-            detail.setPlanId(plan.getId());
-            detail.setDayNumber(dayPlan.getIntValue("day"));
-            detail.setContent(dayPlan.getString("content"));
-            detail.setDuration(BigDecimal.valueOf(dayPlan.getDoubleValue("duration")));
-            detail.setResources(
-                    dayPlan.getJSONArray("resources") != null ? dayPlan.getJSONArray("resources").toJSONString()
-                            : "[]");
-            detail.setIsCompleted(0);
-
-            planDetailMapper.insert(detail);
+            details.add(buildPlanDetail(plan, dailyPlans.getJSONObject(i)));
         }
+        // 多行INSERT分批写入，长计划也只需要几次往返
+        for (int from = 0; from < details.size(); from += detailBatchSize) {
+            planDetailMapper.batchInsert(details.subList(from, Math.min(details.size(), from + detailBatchSize)));
+        }
+        planMapper.addTotalDaysCount(plan.getId(), details.size());
+    }
+
+    /**
+     * 将LLM返回的单日计划转换为任务实体
+     */
+    private PlanDetail buildPlanDetail(StudyPlan plan, JSONObject dayPlan) {
+        PlanDetail detail = new PlanDetail();
+        detail.setPlanId(plan.getId());
+        detail.setDayNumber(dayPlan.getIntValue("day"));
+        detail.setContent(dayPlan.getString("content"));
+        detail.setDuration(BigDecimal.valueOf(dayPlan.getDoubleValue("duration")));
+        detail.setResources(
+                dayPlan.getJSONArray("resources") != null ? dayPlan.getJSONArray("resources").toJSONString()
+                        : "[]");
+        detail.setIsCompleted(0);
+        return detail;
     }
 
     /**
-     * 获取用户的所有计划
+     * 获取用户最近的计划（含进度，最多pagination.max-size个，更多计划通过分页接口获取）
+     * 进度由冗余计数算出；计划状态在打卡时更新，列表查询不写数据库
      */
     public List<StudyPlan> getUserPlans(Long userId) {
-        List<StudyPlan> plans = planMapper.findByUserId(userId);
-        // 计算每个计划的进度，并检查是否需要更新状态
-        for (StudyPlan plan : plans) {
-            double progress = getPlanProgress(plan.getId());
-            plan.setProgress(progress);
-            
-            // 如果进度达到100%且状态仍为"进行中"，自动更新为"已完成"
-            if (progress >= 100.0 && "进行中".equals(plan.getStatus())) {
-                updatePlanStatus(plan.getId(), "已完成");
-                plan.setStatus("已完成");
-                System.out.println("计划 " + plan.getId() + " 进度达到100%，已自动更新状态为'已完成'");
-            }
+        return getUserPlansPage(userId, null, maxPageSize).getItems();
+    }
+
+    /**
+     * 按创建时间倒序分页获取用户的计划（含进度）
+     */
+    public PageResult<StudyPlan> getUserPlansPage(Long userId, String cursor, Integer size) {
+        int limit = resolvePageSize(size);
+        PageCursor<LocalDateTime> pageCursor = PageCursor.decode(cursor, LocalDateTime::parse);
+        List<StudyPlan> plans = planMapper.findPageByUserId(userId,
+                pageCursor != null ? pageCursor.getSortKey() : null,
+                pageCursor != null ? pageCursor.getId() : null,
+                limit + 1);
+        if (plans.size() <= limit) {
+            return new PageResult<>(plans, null);
+        }
+        List<StudyPlan> items = new ArrayList<>(plans.subList(0, limit));
+        StudyPlan last = items.get(limit - 1);
+        return new PageResult<>(items, PageCursor.encode(last.getCreateTime(), last.getId()));
+    }
+
+    private int resolvePageSize(Integer size) {
+        if (size == null || size <= 0) {
+            return defaultPageSize;
         }
-        return plans;
+        return Math.min(size, maxPageSize);
     }
 
     /**
@@ -184,6 +534,9 @@ public class PlanService {
      */
     public void updatePlanStatus(Long planId, String status) {
         planMapper.updateStatus(planId, status);
+        if (planReminderService != null) {
+            planReminderService.onPlanChanged(planId);
+        }
     }
 
     /**
@@ -195,6 +548,8 @@ public class PlanService {
 
         planDetailMapper.deleteByPlanId(planId);
         planMapper.delete(plan.getId());
+        // 计划的打卡记录已级联删除，重算该用户的每日学习汇总
+        userDailyStatsService.rebuildUser(plan.getUserId());
     }
 
     /**
@@ -217,13 +572,8 @@ public class PlanService {
      * 获取计划进度
      */
     public double getPlanProgress(Long planId) {
-        List<PlanDetail> details = planDetailMapper.findByPlanId(planId);
-        if (details.isEmpty()) {
-            return 0;
-        }
-
-        int completed = planDetailMapper.countCompletedByPlanId(planId);
-        return (double) completed / details.size() * 100;
+        Double progress = planMapper.findProgress(planId);
+        return progress != null ? progress : 0;
     }
 
     /**
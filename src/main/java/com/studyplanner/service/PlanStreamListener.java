@@ -0,0 +1,31 @@
+package com.studyplanner.service;
+
+import com.studyplanner.entity.PlanDetail;
+import com.studyplanner.entity.StudyPlan;
+
+/**
+ * 流式生成学习计划的事件回调
+ * 回调方法抛出异常时会中止生成（例如客户端已断开连接）
+ */
+public interface PlanStreamListener {
+
+    /**
+     * 计划主记录已创建
+     */
+    void onPlanCreated(StudyPlan plan);
+
+    /**
+     * 计划标题已根据LLM输出更新
+     */
+    void onTitleUpdated(StudyPlan plan);
+
+    /**
+     * 某一天的任务已解析并保存
+     */
+    void onDayPlan(PlanDetail detail);
+
+    /**
+     * 生成完成
+     */
+    void onComplete(StudyPlan plan, int totalSavedDays);
+}
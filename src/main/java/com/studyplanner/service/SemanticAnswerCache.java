@@ -0,0 +1,313 @@
+package com.studyplanner.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 单轮问答相似问题缓存（不依赖向量模型）
+ * 问题规范化后切分为字符n-gram，计算MinHash签名并放入分段LSH索引；
+ * 查询时只比较同一分段桶中的候选，用n-gram集合的Jaccard相似度确认，达到阈值即直接返回缓存的回答。
+ * 条目按LRU和TTL淘汰。
+ */
+@Component
+public class SemanticAnswerCache {
+
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+");
+
+    @Value("${llm.semantic-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${llm.semantic-cache.max-entries:5000}")
+    private int maxEntries;
+
+    @Value("${llm.semantic-cache.ttl-minutes:1440}")
+    private long ttlMinutes;
+
+    // Jaccard相似度阈值，越高越严格
+    @Value("${llm.semantic-cache.similarity-threshold:0.8}")
+    private double similarityThreshold;
+
+    // 字符n-gram长度
+    @Value("${llm.semantic-cache.shingle-size:2}")
+    private int shingleSize;
+
+    // LSH分段数与每段行数，签名长度 = bands × rows
+    @Value("${llm.semantic-cache.bands:16}")
+    private int bands;
+
+    @Value("${llm.semantic-cache.rows:4}")
+    private int rows;
+
+    // 超过该长度的问题通常带有具体上下文，不参与缓存
+    @Value("${llm.semantic-cache.max-question-chars:200}")
+    private int maxQuestionChars;
+
+    private long nextId = 0;
+
+    // 条目ID -> 条目，访问顺序实现LRU；所有结构都在synchronized(this)内访问
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // 分段桶键 -> (条目ID -> 条目)，查找时直接从桶里取条目，不经过entries.get以免打乱LRU顺序
+    private final Map<Long, Map<Long, Entry>> buckets = new HashMap<>();
+
+    private final AtomicLong lookups = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong puts = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong candidatesCompared = new AtomicLong();
+
+    private final AtomicLong lookupNanos = new AtomicLong();
+
+    private record Entry(String scope, String answer, int[] shingles, String numbers,
+                         long[] bucketKeys, long expireAt) {
+    }
+
+    /**
+     * 查找相似问题的缓存回答，未命中返回null
+     *
+     * @param scope 缓存作用域（例如模型名），不同作用域互不命中
+     */
+    public String get(String scope, String question) {
+        if (!enabled || !isCacheable(question)) {
+            return null;
+        }
+        long start = System.nanoTime();
+        lookups.incrementAndGet();
+
+        String normalized = normalize(question);
+        int[] shingles = shingles(normalized);
+        long[] bucketKeys = bucketKeys(minHash(shingles));
+        String numbers = numbersOf(normalized);
+        long now = System.currentTimeMillis();
+
+        try {
+            synchronized (this) {
+                Map<Long, Entry> candidates = new HashMap<>();
+                for (long bucketKey : bucketKeys) {
+                    Map<Long, Entry> bucket = buckets.get(bucketKey);
+                    if (bucket != null) {
+                        candidates.putAll(bucket);
+                    }
+                }
+
+                Long bestId = null;
+                double bestSimilarity = 0;
+                for (Map.Entry<Long, Entry> candidate : candidates.entrySet()) {
+                    Long id = candidate.getKey();
+                    Entry entry = candidate.getValue();
+                    if (!entry.scope().equals(scope)) {
+                        continue;
+                    }
+                    if (now >= entry.expireAt()) {
+                        remove(id);
+                        continue;
+                    }
+                    candidatesCompared.incrementAndGet();
+                    // 数字不同的问题（第3章/第4章）即使字面相近也不视为同一问题
+                    if (!entry.numbers().equals(numbers)) {
+                        continue;
+                    }
+                    double similarity = jaccard(shingles, entry.shingles());
+                    if (similarity >= similarityThreshold && similarity > bestSimilarity) {
+                        bestSimilarity = similarity;
+                        bestId = id;
+                    }
+                }
+
+                if (bestId == null) {
+                    return null;
+                }
+                hits.incrementAndGet();
+                // 只对命中的条目调用get刷新LRU顺序
+                return entries.get(bestId).answer();
+            }
+        } finally {
+            lookupNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 缓存一个问题的回答
+     */
+    public void put(String scope, String question, String answer) {
+        if (!enabled || !isCacheable(question) || answer == null || answer.isEmpty()) {
+            return;
+        }
+        String normalized = normalize(question);
+        int[] shingles = shingles(normalized);
+        long[] bucketKeys = bucketKeys(minHash(shingles));
+        Entry entry = new Entry(scope, answer, shingles, numbersOf(normalized), bucketKeys,
+                System.currentTimeMillis() + ttlMinutes * 60_000);
+
+        synchronized (this) {
+            long id = nextId++;
+            entries.put(id, entry);
+            for (long bucketKey : bucketKeys) {
+                buckets.computeIfAbsent(bucketKey, k -> new HashMap<>()).put(id, entry);
+            }
+            Iterator<Map.Entry<Long, Entry>> eldest = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && eldest.hasNext()) {
+                Map.Entry<Long, Entry> evicted = eldest.next();
+                eldest.remove();
+                unindex(evicted.getKey(), evicted.getValue().bucketKeys());
+                evictions.incrementAndGet();
+            }
+        }
+        puts.incrementAndGet();
+    }
+
+    private boolean isCacheable(String question) {
+        return question != null && !question.trim().isEmpty() && question.length() <= maxQuestionChars;
+    }
+
+    private void remove(Long id) {
+        Entry entry = entries.remove(id);
+        if (entry != null) {
+            unindex(id, entry.bucketKeys());
+        }
+    }
+
+    private void unindex(Long id, long[] bucketKeys) {
+        for (long bucketKey : bucketKeys) {
+            Map<Long, Entry> bucket = buckets.get(bucketKey);
+            if (bucket != null) {
+                bucket.remove(id);
+                if (bucket.isEmpty()) {
+                    buckets.remove(bucketKey);
+                }
+            }
+        }
+    }
+
+    /**
+     * 规范化：全角转半角、小写、去掉空白和标点，只保留文字和数字
+     */
+    private String normalize(String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder builder = new StringBuilder(normalized.length());
+        normalized.codePoints()
+                .filter(Character::isLetterOrDigit)
+                .forEach(builder::appendCodePoint);
+        return builder.toString();
+    }
+
+    private String numbersOf(String normalized) {
+        List<String> numbers = new ArrayList<>();
+        Matcher matcher = NUMBER_PATTERN.matcher(normalized);
+        while (matcher.find()) {
+            numbers.add(matcher.group());
+        }
+        return String.join(",", numbers);
+    }
+
+    /**
+     * 字符n-gram的哈希集合（排序去重）
+     */
+    private int[] shingles(String normalized) {
+        if (normalized.length() <= shingleSize) {
+            return new int[]{normalized.hashCode()};
+        }
+        int[] hashes = new int[normalized.length() - shingleSize + 1];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = normalized.substring(i, i + shingleSize).hashCode();
+        }
+        return Arrays.stream(hashes).sorted().distinct().toArray();
+    }
+
+    private long[] minHash(int[] shingles) {
+        long[] signature = new long[bands * rows];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (int shingle : shingles) {
+            for (int i = 0; i < signature.length; i++) {
+                long hash = mix(shingle ^ ((long) (i + 1) * 0x9E3779B97F4A7C15L));
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * 每个分段的rows个签名值合并为一个桶键，桶键中包含分段序号避免跨段碰撞
+     */
+    private long[] bucketKeys(long[] signature) {
+        long[] keys = new long[bands];
+        for (int band = 0; band < bands; band++) {
+            long key = band;
+            for (int row = 0; row < rows; row++) {
+                key = mix(key * 31 + signature[band * rows + row]);
+            }
+            keys[band] = key;
+        }
+        return keys;
+    }
+
+    /**
+     * splitmix64混合函数
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private double jaccard(int[] a, int[] b) {
+        int i = 0;
+        int j = 0;
+        int intersection = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                intersection++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        int union = a.length + b.length - intersection;
+        return union == 0 ? 0 : (double) intersection / union;
+    }
+
+    /**
+     * 缓存统计数据
+     */
+    public Map<String, Object> getStats() {
+        long lookupCount = lookups.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        synchronized (this) {
+            stats.put("size", entries.size());
+            stats.put("buckets", buckets.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("similarityThreshold", similarityThreshold);
+        stats.put("lookups", lookupCount);
+        stats.put("hits", hits.get());
+        stats.put("hitRate", lookupCount == 0 ? 0.0 : (double) hits.get() / lookupCount);
+        stats.put("puts", puts.get());
+        stats.put("evictions", evictions.get());
+        stats.put("avgCandidatesPerLookup", lookupCount == 0 ? 0.0 : (double) candidatesCompared.get() / lookupCount);
+        stats.put("avgLookupMicros", lookupCount == 0 ? 0.0 : lookupNanos.get() / 1000.0 / lookupCount);
+        return stats;
+    }
+}
@@ -0,0 +1,275 @@
+package com.studyplanner.service;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token预算估算器
+ * 在本地按字符类别近似分词（汉字/假名/谚文约1个token，连续字母数字约4个字符1个token，标点1个token），
+ * 根据prompt长度和预期输出（学习计划按天数×每天预算）确定每次请求的max_tokens；
+ * 并用系统服务商响应中的usage字段持续校准估算值与实际用量的比例（游客自定义接口只计入统计，不参与校准）。
+ * 输出被截断时临时放大计划预算，放大倍数按半衰期逐渐回落，未截断的计划响应也会让它减半
+ */
+@Component
+public class TokenEstimator {
+
+    // 每条消息的格式开销（role、分隔符等）
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    // 校准比例的指数滑动平均权重
+    private static final double CALIBRATION_ALPHA = 0.2;
+
+    // 输出被截断（finish_reason=length）后预算放大的倍数
+    private static final double TRUNCATION_BOOST = 1.5;
+
+    private static final double MAX_RATIO = 10.0;
+
+    @Value("${llm.tokens.enabled:true}")
+    private boolean enabled;
+
+    // 单次请求的输出上限（模型/服务商允许的最大max_tokens）
+    @Value("${llm.api.max-tokens:4096}")
+    private int maxOutputTokens;
+
+    // 模型上下文窗口大小（prompt + 输出）
+    @Value("${llm.tokens.context-window:32768}")
+    private int contextWindow;
+
+    @Value("${llm.tokens.min-output:256}")
+    private int minOutputTokens;
+
+    // 普通问答的预期输出
+    @Value("${llm.tokens.chat-output:1024}")
+    private int chatOutputTokens;
+
+    // 学习计划标题、简介等固定部分的预算
+    @Value("${llm.tokens.plan-overhead:200}")
+    private int planOverheadTokens;
+
+    // 学习计划每天的预算
+    @Value("${llm.tokens.per-day:150}")
+    private int perDayTokens;
+
+    // 在校准后的估算值上再预留的余量
+    @Value("${llm.tokens.safety-margin:1.3}")
+    private double safetyMargin;
+
+    // 截断放大倍数的半衰期（分钟）
+    @Value("${llm.tokens.truncation-boost-half-life-minutes:10}")
+    private long truncationBoostHalfLifeMinutes;
+
+    // 实际prompt token数 / 估算值
+    private volatile double promptRatio = 1.0;
+
+    // 学习计划实际输出token数 / 估算值
+    private volatile double planOutputRatio = 1.0;
+
+    // 截断后的临时放大倍数（记录时的值）及记录时间，读取时按半衰期衰减
+    private double truncationBoost = 1.0;
+
+    private long truncationBoostAt = 0;
+
+    private final AtomicLong recordedCalls = new AtomicLong();
+
+    private final AtomicLong estimatedPromptTokens = new AtomicLong();
+
+    private final AtomicLong actualPromptTokens = new AtomicLong();
+
+    private final AtomicLong reservedOutputTokens = new AtomicLong();
+
+    private final AtomicLong actualCompletionTokens = new AtomicLong();
+
+    private final AtomicLong truncatedCalls = new AtomicLong();
+
+    /**
+     * 一次请求的token预算
+     *
+     * @param promptTokens 估算的prompt token数
+     * @param expectedOutputTokens 估算的输出token数（未经校准和余量）
+     * @param maxTokens 实际发送的max_tokens
+     * @param plan 是否为学习计划输出（参与计划输出比例校准）
+     */
+    public record Budget(int promptTokens, int expectedOutputTokens, int maxTokens, boolean plan) {
+    }
+
+    /**
+     * 近似估算文本的token数
+     */
+    public int estimateTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int tokens = 0;
+        int wordLength = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            if (codePoint < 128 && Character.isLetterOrDigit(codePoint)) {
+                wordLength++;
+                continue;
+            }
+            tokens += (wordLength + 3) / 4;
+            wordLength = 0;
+            if (!Character.isWhitespace(codePoint)) {
+                // 汉字、假名、谚文、全角标点等每个字符约1个token
+                tokens++;
+            }
+        }
+        return tokens + (wordLength + 3) / 4;
+    }
+
+    /**
+     * 估算消息列表的prompt token数（已按历史用量校准）
+     */
+    public int estimatePromptTokens(JSONArray messages) {
+        int tokens = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            JSONObject message = messages.getJSONObject(i);
+            tokens += MESSAGE_OVERHEAD_TOKENS + estimateTokens(message.getString("content"));
+        }
+        return (int) Math.ceil(tokens * promptRatio);
+    }
+
+    /**
+     * 学习计划JSON的预期输出token数（未校准）
+     */
+    public int estimatePlanOutputTokens(int days) {
+        return planOverheadTokens + days * perDayTokens;
+    }
+
+    /**
+     * 单次请求能否完整输出该天数的计划，不能时应走分段生成
+     */
+    public boolean fitsSingleResponse(int days) {
+        return !enabled || reserveFor(estimatePlanOutputTokens(days), effectivePlanRatio()) <= maxOutputTokens;
+    }
+
+    /**
+     * 普通问答的预算
+     */
+    public Budget chatBudget(JSONArray messages) {
+        return buildBudget(estimatePromptTokens(messages), chatOutputTokens, false);
+    }
+
+    /**
+     * 学习计划（或其中一段）的预算
+     */
+    public Budget planBudget(JSONArray messages, int days) {
+        return buildBudget(estimatePromptTokens(messages), estimatePlanOutputTokens(days), true);
+    }
+
+    private Budget buildBudget(int promptTokens, int expectedOutputTokens, boolean plan) {
+        if (!enabled) {
+            return new Budget(promptTokens, expectedOutputTokens, maxOutputTokens, plan);
+        }
+        int reserved = reserveFor(expectedOutputTokens, plan ? effectivePlanRatio() : 1.0);
+        int available = Math.max(minOutputTokens, contextWindow - promptTokens);
+        int maxTokens = Math.max(minOutputTokens, Math.min(reserved, Math.min(maxOutputTokens, available)));
+        return new Budget(promptTokens, expectedOutputTokens, maxTokens, plan);
+    }
+
+    private int reserveFor(int expectedOutputTokens, double ratio) {
+        return (int) Math.ceil(expectedOutputTokens * ratio * safetyMargin);
+    }
+
+    private double effectivePlanRatio() {
+        return Math.min(MAX_RATIO, planOutputRatio * currentTruncationBoost(System.currentTimeMillis()));
+    }
+
+    private synchronized double currentTruncationBoost(long now) {
+        if (truncationBoost <= 1.0) {
+            return 1.0;
+        }
+        double halfLives = (double) (now - truncationBoostAt) / (truncationBoostHalfLifeMinutes * 60_000);
+        return 1.0 + (truncationBoost - 1.0) * Math.pow(0.5, Math.max(0, halfLives));
+    }
+
+    private synchronized void updateTruncationBoost(boolean truncated) {
+        long now = System.currentTimeMillis();
+        double current = currentTruncationBoost(now);
+        truncationBoost = truncated
+                ? Math.min(current * TRUNCATION_BOOST, MAX_RATIO)
+                : 1.0 + (current - 1.0) / 2;
+        truncationBoostAt = now;
+    }
+
+    /**
+     * 记录响应中的实际用量（usage可能为null，部分服务商不返回）
+     *
+     * @param calibrate 是否用于校准（只有系统服务商的响应参与，游客接口的截断或异常用量不影响登录用户）
+     */
+    public void recordUsage(Budget budget, JSONObject usage, String finishReason, boolean calibrate) {
+        boolean truncated = "length".equals(finishReason);
+        if (calibrate && budget.plan()) {
+            updateTruncationBoost(truncated);
+        }
+        if (truncated) {
+            truncatedCalls.incrementAndGet();
+            System.err.println("LLM输出被截断：max_tokens=" + budget.maxTokens()
+                    + "，预估输出=" + budget.expectedOutputTokens());
+        }
+        if (usage == null) {
+            return;
+        }
+
+        int promptTokens = usage.getIntValue("prompt_tokens");
+        int completionTokens = usage.getIntValue("completion_tokens");
+        recordedCalls.incrementAndGet();
+        estimatedPromptTokens.addAndGet(budget.promptTokens());
+        actualPromptTokens.addAndGet(promptTokens);
+        reservedOutputTokens.addAndGet(budget.maxTokens());
+        actualCompletionTokens.addAndGet(completionTokens);
+
+        if (!calibrate) {
+            return;
+        }
+        if (promptTokens > 0 && budget.promptTokens() > 0) {
+            double observed = promptRatio * promptTokens / budget.promptTokens();
+            promptRatio = clampRatio(promptRatio + CALIBRATION_ALPHA * (observed - promptRatio));
+        }
+        // 被截断的输出只说明预算偏小，不代表完整输出的长度
+        if (budget.plan() && !truncated && completionTokens > 0 && budget.expectedOutputTokens() > 0) {
+            double observed = (double) completionTokens / budget.expectedOutputTokens();
+            planOutputRatio = clampRatio(planOutputRatio + CALIBRATION_ALPHA * (observed - planOutputRatio));
+        }
+    }
+
+    private double clampRatio(double ratio) {
+        return Math.max(0.2, Math.min(MAX_RATIO, ratio));
+    }
+
+    /**
+     * 估算与实际用量统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("maxOutputTokens", maxOutputTokens);
+        stats.put("promptRatio", promptRatio);
+        stats.put("planOutputRatio", planOutputRatio);
+        stats.put("truncationBoost", currentTruncationBoost(System.currentTimeMillis()));
+        stats.put("maxSingleResponseDays", maxSingleResponseDays());
+        stats.put("recordedCalls", recordedCalls.get());
+        stats.put("estimatedPromptTokens", estimatedPromptTokens.get());
+        stats.put("actualPromptTokens", actualPromptTokens.get());
+        stats.put("reservedOutputTokens", reservedOutputTokens.get());
+        stats.put("actualCompletionTokens", actualCompletionTokens.get());
+        stats.put("truncatedCalls", truncatedCalls.get());
+        return stats;
+    }
+
+    private int maxSingleResponseDays() {
+        int days = 0;
+        while (fitsSingleResponse(days + 1) && days < 365) {
+            days++;
+        }
+        return days;
+    }
+}
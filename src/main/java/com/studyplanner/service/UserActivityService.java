@@ -0,0 +1,309 @@
+package com.studyplanner.service;
+
+import com.studyplanner.entity.UserActivity;
+import com.studyplanner.entity.UserDailyStats;
+import com.studyplanner.mapper.UserActivityMapper;
+import com.studyplanner.mapper.UserDailyStatsMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 用户活跃位图服务
+ * 每个用户每年一行：打卡位图每天1位（46字节），学习时长档位每天2位（92字节）。
+ * 打卡时在数据库内用位运算更新当天的位，日历和热力图只读一行；读取结果在内存中按LRU缓存，打卡提交后失效。
+ * 失效时递增该用户所在分段的版本号，缓存未命中的读取只在版本号未变时才写回缓存，避免把失效前读到的旧位图放回缓存。
+ * 某年还没有位图时按每日汇总生成（旧数据无需单独回填），定时任务随每日汇总一起逐个用户在事务内重算
+ */
+@Service
+public class UserActivityService {
+
+    private static final int DAY_BYTES = 46;
+
+    private static final int LEVEL_BYTES = 92;
+
+    // 档位划分：有打卡但不足1小时为1，不足3小时为2，其余为3
+    private static final BigDecimal LEVEL_2_HOURS = BigDecimal.ONE;
+
+    private static final BigDecimal LEVEL_3_HOURS = BigDecimal.valueOf(3);
+
+    // 缓存版本号的分段数（按用户ID取模），分段冲突只会让一次读取不写回缓存
+    private static final int GENERATION_STRIPES = 1024;
+
+    @Autowired
+    private UserActivityMapper userActivityMapper;
+
+    @Autowired
+    private UserDailyStatsMapper userDailyStatsMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${stats.activity.cache-max-entries:10000}")
+    private int cacheMaxEntries;
+
+    private record CacheKey(long userId, int year) {
+    }
+
+    // 访问顺序的LinkedHashMap实现LRU，所有访问都在synchronized块内
+    private final LinkedHashMap<CacheKey, UserActivity> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    // 各分段的失效版本号，与cache在同一个synchronized块内读写
+    private final long[] generations = new long[GENERATION_STRIPES];
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * 记录一次打卡（需在打卡事务内、更新每日汇总之后调用）
+     */
+    public void recordCheckIn(Long userId, LocalDate checkDate) {
+        int year = checkDate.getYear();
+        UserDailyStats daily = userDailyStatsMapper.findForUpdate(userId, checkDate);
+        int day = checkDate.getDayOfYear() - 1;
+        int level = levelOf(daily != null ? daily.getStudyHours() : null);
+
+        byte[] dayMask = new byte[DAY_BYTES];
+        setActive(dayMask, day);
+        byte[] levelClear = new byte[LEVEL_BYTES];
+        Arrays.fill(levelClear, (byte) 0xFF);
+        levelClear[day >> 2] &= (byte) ~(3 << ((day & 3) * 2));
+        byte[] levelSet = new byte[LEVEL_BYTES];
+        setLevel(levelSet, day, level);
+
+        if (userActivityMapper.markDay(userId, year, dayMask, levelClear, levelSet) == 0) {
+            // 该年还没有位图：按每日汇总生成（已包含本次打卡）
+            userActivityMapper.upsert(buildYear(userId, year));
+        }
+        evictAfterCommit(userId, year);
+    }
+
+    /**
+     * 获取用户某年的活跃位图（优先读缓存）
+     */
+    public UserActivity getYear(Long userId, int year) {
+        CacheKey key = new CacheKey(userId, year);
+        long generation;
+        synchronized (cache) {
+            UserActivity cached = cache.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+            generation = generations[stripeOf(userId)];
+        }
+        misses.incrementAndGet();
+        UserActivity activity = userActivityMapper.findByUserIdAndYear(userId, year);
+        if (activity == null) {
+            activity = buildYear(userId, year);
+            if (countActive(activity.getActiveDays()) > 0) {
+                userActivityMapper.upsert(activity);
+            }
+        }
+        synchronized (cache) {
+            // 读取期间有打卡或重算提交并失效过，读到的可能是旧数据，不写回缓存
+            if (generations[stripeOf(userId)] == generation) {
+                cache.put(key, activity);
+                if (cache.size() > cacheMaxEntries) {
+                    cache.remove(cache.keySet().iterator().next());
+                }
+            }
+        }
+        return activity;
+    }
+
+    /**
+     * 年度热力图：打卡位图和时长档位均为Base64编码，第N天(从0起，1月1日为第0天)对应第N位
+     */
+    public Map<String, Object> getHeatmap(Long userId, int year) {
+        UserActivity activity = getYear(userId, year);
+        Map<String, Object> result = new HashMap<>();
+        result.put("year", year);
+        result.put("days", Year.of(year).length());
+        result.put("activeDays", Base64.getEncoder().encodeToString(activity.getActiveDays()));
+        result.put("hourLevels", Base64.getEncoder().encodeToString(activity.getHourLevels()));
+        result.put("activeCount", countActive(activity.getActiveDays()));
+        return result;
+    }
+
+    /**
+     * 月度日历：activeMask的第N位(从0起)表示N+1日有打卡，hourLevels每个字符是当天的时长档位(0-3)
+     */
+    public Map<String, Object> getMonth(Long userId, int year, int month) {
+        UserActivity activity = getYear(userId, year);
+        LocalDate firstDay = LocalDate.of(year, month, 1);
+        int offset = firstDay.getDayOfYear() - 1;
+        int mask = 0;
+        StringBuilder levels = new StringBuilder(firstDay.lengthOfMonth());
+        for (int i = 0; i < firstDay.lengthOfMonth(); i++) {
+            int day = offset + i;
+            if ((activity.getActiveDays()[day >> 3] & (1 << (day & 7))) != 0) {
+                mask |= 1 << i;
+            }
+            levels.append((activity.getHourLevels()[day >> 2] >> ((day & 3) * 2)) & 3);
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("year", year);
+        result.put("month", month);
+        result.put("activeMask", mask);
+        result.put("hourLevels", levels.toString());
+        result.put("activeCount", Integer.bitCount(mask));
+        return result;
+    }
+
+    /**
+     * 按每日汇总重算用户ID区间[fromUserId, toUserId)内的位图，返回写入的行数
+     * 每个用户在单独的事务内加锁读取每日汇总、覆盖各年位图并删除已没有打卡的年份，提交后失效缓存
+     */
+    public int rebuildRange(long fromUserId, long toUserId) {
+        int written = 0;
+        for (Long userId : userActivityMapper.findUserIdsInRange(fromUserId, toUserId)) {
+            Integer count = transactionTemplate.execute(status -> rebuildUserYears(userId));
+            written += count != null ? count : 0;
+        }
+        return written;
+    }
+
+    private int rebuildUserYears(Long userId) {
+        Map<Integer, UserActivity> rebuilt = new LinkedHashMap<>();
+        for (UserDailyStats daily : userDailyStatsMapper.findByUserIdForUpdate(userId)) {
+            if (daily.getCheckInCount() == null || daily.getCheckInCount() <= 0) {
+                continue;
+            }
+            UserActivity activity = rebuilt.computeIfAbsent(daily.getStatDate().getYear(),
+                    year -> emptyYear(userId, year));
+            int day = daily.getStatDate().getDayOfYear() - 1;
+            setActive(activity.getActiveDays(), day);
+            setLevel(activity.getHourLevels(), day, levelOf(daily.getStudyHours()));
+        }
+        for (UserActivity activity : rebuilt.values()) {
+            userActivityMapper.upsert(activity);
+        }
+        userActivityMapper.deleteOtherYears(userId, new ArrayList<>(rebuilt.keySet()));
+        evictUserAfterCommit(userId);
+        return rebuilt.size();
+    }
+
+    /**
+     * 按每日汇总重算单个用户的位图
+     */
+    public void rebuildUser(Long userId) {
+        rebuildRange(userId, userId + 1);
+    }
+
+    /**
+     * 缓存统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (cache) {
+            stats.put("size", cache.size());
+        }
+        stats.put("maxEntries", cacheMaxEntries);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        return stats;
+    }
+
+    private UserActivity buildYear(Long userId, int year) {
+        UserActivity activity = emptyYear(userId, year);
+        List<UserDailyStats> days = userDailyStatsMapper.findByDateRange(userId,
+                LocalDate.of(year, 1, 1), LocalDate.of(year, 12, 31));
+        for (UserDailyStats daily : days) {
+            if (daily.getCheckInCount() != null && daily.getCheckInCount() > 0) {
+                int day = daily.getStatDate().getDayOfYear() - 1;
+                setActive(activity.getActiveDays(), day);
+                setLevel(activity.getHourLevels(), day, levelOf(daily.getStudyHours()));
+            }
+        }
+        return activity;
+    }
+
+    private UserActivity emptyYear(Long userId, int year) {
+        UserActivity activity = new UserActivity();
+        activity.setUserId(userId);
+        activity.setYear(year);
+        activity.setActiveDays(new byte[DAY_BYTES]);
+        activity.setHourLevels(new byte[LEVEL_BYTES]);
+        return activity;
+    }
+
+    private void evictAfterCommit(Long userId, int year) {
+        CacheKey key = new CacheKey(userId, year);
+        afterCommit(() -> {
+            synchronized (cache) {
+                cache.remove(key);
+                generations[stripeOf(userId)]++;
+            }
+        });
+    }
+
+    private void evictUserAfterCommit(Long userId) {
+        afterCommit(() -> {
+            synchronized (cache) {
+                cache.keySet().removeIf(key -> key.userId() == userId);
+                generations[stripeOf(userId)]++;
+            }
+        });
+    }
+
+    /**
+     * 提交后再失效，避免并发读取把未提交前的数据重新放回缓存；不在事务内时立即执行
+     */
+    private void afterCommit(Runnable eviction) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eviction.run();
+                }
+            });
+        } else {
+            eviction.run();
+        }
+    }
+
+    private static int stripeOf(long userId) {
+        return (int) Math.floorMod(userId, (long) GENERATION_STRIPES);
+    }
+
+    private int levelOf(BigDecimal hours) {
+        if (hours == null || hours.compareTo(LEVEL_2_HOURS) < 0) {
+            return 1;
+        }
+        return hours.compareTo(LEVEL_3_HOURS) < 0 ? 2 : 3;
+    }
+
+    private static void setActive(byte[] bits, int day) {
+        bits[day >> 3] |= (byte) (1 << (day & 7));
+    }
+
+    private static void setLevel(byte[] levels, int day, int level) {
+        int shift = (day & 3) * 2;
+        levels[day >> 2] = (byte) ((levels[day >> 2] & ~(3 << shift)) | (level << shift));
+    }
+
+    private static int countActive(byte[] bits) {
+        int count = 0;
+        for (byte b : bits) {
+            count += Integer.bitCount(b & 0xFF);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,162 @@
+package com.studyplanner.service;
+
+import com.studyplanner.entity.CheckIn;
+import com.studyplanner.entity.UserDailyStats;
+import com.studyplanner.mapper.CheckInMapper;
+import com.studyplanner.mapper.UserDailyStatsMapper;
+import com.studyplanner.mapper.UserMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 用户每日学习汇总服务
+ * 每次打卡时增量更新user_daily_stats，统计、图表和日历只读取汇总表，读取成本与日期范围成正比而不是打卡记录数。
+ * 定时任务按用户ID分批用check_in重算汇总，用于修正偏差（例如删除计划后打卡记录被级联删除），
+ * 每批之后接着重算这些用户的连续打卡状态和活跃位图
+ */
+@Service
+public class UserDailyStatsService {
+
+    @Autowired
+    private UserDailyStatsMapper userDailyStatsMapper;
+
+    @Autowired
+    private CheckInMapper checkInMapper;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private UserStreakService userStreakService;
+
+    @Autowired
+    private UserActivityService userActivityService;
+
+    // 每批重算的用户ID跨度
+    @Value("${stats.daily.rebuild-batch-size:200}")
+    private int rebuildBatchSize;
+
+    private volatile LocalDateTime lastRebuildTime;
+
+    private volatile int lastRebuiltRows;
+
+    private volatile int lastDeletedRows;
+
+    private volatile int lastStreakRows;
+
+    private volatile int lastActivityRows;
+
+    /**
+     * 记录用户某天新增的打卡（需在打卡事务内、插入打卡记录之后调用），一天只更新一次汇总行
+     */
+    public void recordCheckIns(Long userId, LocalDate checkDate, List<CheckIn> created) {
+        if (created.isEmpty()) {
+            return;
+        }
+        BigDecimal hours = BigDecimal.ZERO;
+        Map<Long, Integer> createdByPlan = new HashMap<>();
+        for (CheckIn checkIn : created) {
+            if (checkIn.getStudyHours() != null) {
+                hours = hours.add(checkIn.getStudyHours());
+            }
+            createdByPlan.merge(checkIn.getPlanId(), 1, Integer::sum);
+        }
+        // 计划当天的打卡全部是本次新增的，才计入涉及的计划数。
+        // 打卡事务已锁住计划行（findOwnedByIdsForUpdate），同一计划的打卡串行执行；
+        // 计数使用锁定读取，能看到先提交的并发打卡，同一计划当天只计一次
+        int newPlans = 0;
+        for (Map.Entry<Long, Integer> entry : createdByPlan.entrySet()) {
+            if (checkInMapper.countByUserDateAndPlanForShare(userId, checkDate, entry.getKey()) <= entry.getValue()) {
+                newPlans++;
+            }
+        }
+        userDailyStatsMapper.addCheckIns(userId, checkDate, hours, created.size(), newPlans);
+    }
+
+    /**
+     * 查询用户某个时间段的每日汇总，按日期索引
+     */
+    public Map<LocalDate, UserDailyStats> getDailyStats(Long userId, LocalDate startDate, LocalDate endDate) {
+        Map<LocalDate, UserDailyStats> result = new HashMap<>();
+        for (UserDailyStats stats : userDailyStatsMapper.findByDateRange(userId, startDate, endDate)) {
+            result.put(stats.getStatDate(), stats);
+        }
+        return result;
+    }
+
+    /**
+     * 用户总打卡天数
+     */
+    public int countActiveDays(Long userId) {
+        return userDailyStatsMapper.countActiveDays(userId);
+    }
+
+    /**
+     * 用户总学习时长
+     */
+    public Double sumStudyHours(Long userId) {
+        return userDailyStatsMapper.sumStudyHours(userId);
+    }
+
+    /**
+     * 按打卡记录重算单个用户的汇总、连续打卡状态和活跃位图（删除计划等会减少打卡记录的操作之后调用）
+     */
+    public void rebuildUser(Long userId) {
+        userDailyStatsMapper.deleteOrphans(userId, userId + 1);
+        userDailyStatsMapper.rebuildRange(userId, userId + 1);
+        userStreakService.rebuildUser(userId);
+        userActivityService.rebuildUser(userId);
+    }
+
+    /**
+     * 定时重算全部用户的汇总（默认每天凌晨4点）；首次部署的回填由sql/add_user_daily_stats.sql完成
+     */
+    @Scheduled(cron = "${stats.daily.rebuild-cron:0 0 4 * * ?}")
+    public void rebuildAll() {
+        long startTime = System.currentTimeMillis();
+        int rebuilt = 0;
+        int deleted = 0;
+        int streaks = 0;
+        int activities = 0;
+        try {
+            long maxUserId = userMapper.findMaxId();
+            for (long fromId = 1; fromId <= maxUserId; fromId += rebuildBatchSize) {
+                deleted += userDailyStatsMapper.deleteOrphans(fromId, fromId + rebuildBatchSize);
+                rebuilt += userDailyStatsMapper.rebuildRange(fromId, fromId + rebuildBatchSize);
+                streaks += userStreakService.rebuildRange(fromId, fromId + rebuildBatchSize);
+                activities += userActivityService.rebuildRange(fromId, fromId + rebuildBatchSize);
+            }
+        } catch (Exception e) {
+            System.err.println("重算每日学习汇总失败: " + e.getMessage());
+        }
+        lastRebuildTime = LocalDateTime.now();
+        lastRebuiltRows = rebuilt;
+        lastDeletedRows = deleted;
+        lastStreakRows = streaks;
+        lastActivityRows = activities;
+        System.out.println(String.format("每日学习汇总重算完成：写入%d行，删除%d行，连续打卡状态写入%d行，活跃位图写入%d行，耗时%dms",
+                rebuilt, deleted, streaks, activities, System.currentTimeMillis() - startTime));
+    }
+
+    /**
+     * 最近一次重算的结果
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("lastRebuildTime", lastRebuildTime != null ? lastRebuildTime.toString() : null);
+        stats.put("lastRebuiltRows", lastRebuiltRows);
+        stats.put("lastDeletedRows", lastDeletedRows);
+        stats.put("lastStreakRows", lastStreakRows);
+        stats.put("lastActivityRows", lastActivityRows);
+        return stats;
+    }
+}
@@ -15,11 +15,14 @@ public class UserSettingsService {
     @Autowired
     private UserSettingsMapper settingsMapper;
     
+    @Autowired
+    private PlanReminderService planReminderService;
+    
     // 默认闲置时间：4320分钟（3天）
-    private static final int DEFAULT_INACTIVE_MINUTES = 4320;
+    public static final int DEFAULT_INACTIVE_MINUTES = 4320;
     
     // 默认提醒间隔：720分钟（12小时）
-    private static final int DEFAULT_REMINDER_INTERVAL_MINUTES = 720;
+    public static final int DEFAULT_REMINDER_INTERVAL_MINUTES = 720;
     
     /**
      * 获取用户设置，如果不存在则创建默认设置
@@ -61,6 +64,11 @@ public class UserSettingsService {
         }
         
         settingsMapper.update(settings);
+        
+        // 重新计算该用户计划的下次提醒时间
+        planReminderService.onSettingsChanged(userId,
+                settings.getInactiveMinutes() != null ? settings.getInactiveMinutes() : DEFAULT_INACTIVE_MINUTES,
+                settings.getReminderIntervalMinutes() != null ? settings.getReminderIntervalMinutes() : DEFAULT_REMINDER_INTERVAL_MINUTES);
         return settings;
     }
     
@@ -0,0 +1,81 @@
+package com.studyplanner.service;
+
+import com.studyplanner.entity.UserStreak;
+import com.studyplanner.mapper.UserStreakMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * 连续打卡服务
+ * 每个用户在user_streak中保存当前连续天数、最长连续天数和最后打卡日期，打卡时一条upsert完成更新，
+ * 读取只查一行。“今天”统一按stats.zone时区计算，与打卡日期使用同一时区。
+ * 补打卡（早于今天的日期）可能连接两段连续记录，此时按每日汇总重算该用户；
+ * 晚于今天的打卡由打卡服务拒绝，重算时也忽略已存在的未来日期
+ */
+@Service
+public class UserStreakService {
+
+    @Autowired
+    private UserStreakMapper userStreakMapper;
+
+    // 计算打卡日期和“今天”使用的时区
+    @Value("${stats.zone:Asia/Shanghai}")
+    private ZoneId zone;
+
+    /**
+     * 当前时区的今天
+     */
+    public LocalDate today() {
+        return LocalDate.now(zone);
+    }
+
+    /**
+     * 记录一次打卡（需在打卡事务内、更新每日汇总之后调用）
+     */
+    public void recordCheckIn(Long userId, LocalDate checkDate) {
+        if (checkDate.isBefore(today())) {
+            rebuildUser(userId);
+        } else {
+            userStreakMapper.recordActiveDate(userId, checkDate);
+        }
+    }
+
+    /**
+     * 当前连续打卡天数：最后打卡日期是今天或昨天时连续仍然有效（今天还没打卡不算中断）
+     */
+    public int getCurrentStreak(Long userId) {
+        UserStreak streak = userStreakMapper.findByUserId(userId);
+        if (streak == null || streak.getLastActiveDate().isBefore(today().minusDays(1))) {
+            return 0;
+        }
+        return streak.getCurrentStreak();
+    }
+
+    /**
+     * 历史最长连续打卡天数
+     */
+    public int getLongestStreak(Long userId) {
+        UserStreak streak = userStreakMapper.findByUserId(userId);
+        return streak != null ? streak.getLongestStreak() : 0;
+    }
+
+    /**
+     * 按每日汇总重算用户ID区间[fromUserId, toUserId)内的连续打卡状态，返回写入的行数
+     */
+    public int rebuildRange(long fromUserId, long toUserId) {
+        LocalDate today = today();
+        userStreakMapper.deleteOrphans(fromUserId, toUserId, today);
+        return userStreakMapper.rebuildRange(fromUserId, toUserId, today);
+    }
+
+    /**
+     * 按每日汇总重算单个用户的连续打卡状态
+     */
+    public void rebuildUser(Long userId) {
+        rebuildRange(userId, userId + 1);
+    }
+}
@@ -0,0 +1,97 @@
+package com.studyplanner.util;
+
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 有界虚拟线程执行器：每个任务一个虚拟线程，同时运行的任务数不超过concurrencyLimit，
+ * 其余任务在虚拟线程中排队等待；运行加排队超过concurrencyLimit + queueCapacity时按拒绝策略处理
+ * （抛出TaskRejectedException或由提交线程执行），与同样大小的平台线程池语义一致
+ */
+public class BoundedVirtualThreadExecutor implements TaskExecutor {
+
+    private final String name;
+
+    private final int concurrencyLimit;
+
+    private final int queueCapacity;
+
+    private final boolean callerRunsWhenFull;
+
+    private final SimpleAsyncTaskExecutor delegate;
+
+    // 已接收（运行中+排队中）的任务名额
+    private final Semaphore admitted;
+
+    // 运行名额
+    private final Semaphore running;
+
+    private final AtomicLong rejectedTasks = new AtomicLong();
+
+    private final AtomicLong callerRunsTasks = new AtomicLong();
+
+    public BoundedVirtualThreadExecutor(String threadNamePrefix, int concurrencyLimit, int queueCapacity,
+                                        boolean callerRunsWhenFull) {
+        this.name = threadNamePrefix;
+        this.concurrencyLimit = concurrencyLimit;
+        this.queueCapacity = queueCapacity;
+        this.callerRunsWhenFull = callerRunsWhenFull;
+        this.admitted = new Semaphore(concurrencyLimit + queueCapacity);
+        this.running = new Semaphore(concurrencyLimit, true);
+        this.delegate = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        this.delegate.setVirtualThreads(true);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!admitted.tryAcquire()) {
+            if (callerRunsWhenFull) {
+                callerRunsTasks.incrementAndGet();
+                task.run();
+                return;
+            }
+            rejectedTasks.incrementAndGet();
+            throw new TaskRejectedException(name + "执行器已满（运行" + concurrencyLimit + "，排队" + queueCapacity + "）");
+        }
+        try {
+            delegate.execute(() -> runWithPermit(task));
+        } catch (RuntimeException e) {
+            admitted.release();
+            throw e;
+        }
+    }
+
+    private void runWithPermit(Runnable task) {
+        try {
+            running.acquire();
+        } catch (InterruptedException e) {
+            admitted.release();
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            task.run();
+        } finally {
+            running.release();
+            admitted.release();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        int active = concurrencyLimit - running.availablePermits();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("concurrencyLimit", concurrencyLimit);
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("active", active);
+        stats.put("queued", Math.max(0, concurrencyLimit + queueCapacity - admitted.availablePermits() - active));
+        stats.put("rejectedTasks", rejectedTasks.get());
+        stats.put("callerRunsTasks", callerRunsTasks.get());
+        return stats;
+    }
+}
@@ -0,0 +1,77 @@
+package com.studyplanner.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 舱壁：限制某一类外部资源（LLM、SMTP等）的并发调用数
+ * 使用虚拟线程后线程数不再是天然的并发上限，需要按资源显式限制；
+ * 名额用完时最多等待maxWaitMs，仍拿不到则抛出RejectedExecutionException
+ */
+public class Bulkhead {
+
+    private final String name;
+
+    private final int maxConcurrent;
+
+    private final long maxWaitMs;
+
+    private final Semaphore permits;
+
+    private final AtomicLong rejectedCalls = new AtomicLong();
+
+    public Bulkhead(String name, int maxConcurrent, long maxWaitMs) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaitMs = maxWaitMs;
+        this.permits = new Semaphore(maxConcurrent, true);
+    }
+
+    /**
+     * 在舱壁保护下执行
+     */
+    public <T> T execute(Supplier<T> call) {
+        acquire();
+        try {
+            return call.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * 在舱壁保护下执行（无返回值）
+     */
+    public void run(Runnable task) {
+        execute(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    private void acquire() {
+        try {
+            if (!permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+                rejectedCalls.incrementAndGet();
+                throw new RejectedExecutionException(name + "并发已满，请稍后再试");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(name + "等待被中断", e);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("active", maxConcurrent - permits.availablePermits());
+        stats.put("waiting", permits.getQueueLength());
+        stats.put("rejectedCalls", rejectedCalls.get());
+        return stats;
+    }
+}
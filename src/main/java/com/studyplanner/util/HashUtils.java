@@ -0,0 +1,27 @@
+package com.studyplanner.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * 哈希工具类
+ */
+public final class HashUtils {
+
+    private HashUtils() {
+    }
+
+    /**
+     * 计算字符串的SHA-256（十六进制小写）
+     */
+    public static String sha256(String raw) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(raw.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.studyplanner.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.function.Function;
+
+/**
+ * 键集分页游标：把最后一行的排序键和ID编码为不透明字符串，下一页从该位置之后继续查询
+ *
+ * @param <T> 排序键类型（如LocalDate、LocalDateTime），解码时按调用方给出的解析函数转换
+ */
+public class PageCursor<T> {
+
+    private final T sortKey;
+
+    private final Long id;
+
+    private PageCursor(T sortKey, Long id) {
+        this.sortKey = sortKey;
+        this.id = id;
+    }
+
+    /**
+     * 编码游标
+     */
+    public static String encode(Object sortKey, Long id) {
+        String raw = sortKey + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解码游标并解析排序键，cursor为空时返回null（第一页）；
+     * 编码、ID或排序键格式错误时都抛出IllegalArgumentException
+     *
+     * @param sortKeyParser 排序键解析函数，例如LocalDate::parse
+     */
+    public static <T> PageCursor<T> decode(String cursor, Function<String, T> sortKeyParser) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            return new PageCursor<>(sortKeyParser.apply(raw.substring(0, separator)),
+                    Long.parseLong(raw.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("无效的分页游标");
+        }
+    }
+
+    public T getSortKey() {
+        return sortKey;
+    }
+
+    public Long getId() {
+        return id;
+    }
+}
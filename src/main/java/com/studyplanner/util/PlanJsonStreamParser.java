@@ -0,0 +1,298 @@
+package com.studyplanner.util;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * 学习计划JSON增量解析器
+ * 逐段接收LLM流式输出的文本，每当dailyPlans数组中的一个元素闭合时立即回调，
+ * 根对象上的字符串字段（如title、summary）在值闭合时回调。
+ * 容错处理：跳过根对象之前的推理块（&lt;think&gt;...&lt;/think&gt;）、说明文字和markdown标记，
+ * 单个元素格式错误时只丢弃该元素；输出被截断时已闭合的元素仍然有效。
+ * 非线程安全，每次生成使用一个新实例。
+ */
+public class PlanJsonStreamParser {
+
+    private static final String DAILY_PLANS_KEY = "dailyPlans";
+
+    private static final String THINK_START = "<think>";
+
+    private static final String THINK_END = "</think>";
+
+    private final StringBuilder buffer = new StringBuilder();
+
+    private final BiConsumer<String, String> onField;
+
+    private final Consumer<JSONObject> onDayPlan;
+
+    // 下一个待扫描字符的位置
+    private int position = 0;
+
+    // 当前嵌套深度（对象和数组都计入），根对象内部为1
+    private int depth = 0;
+
+    private boolean rootStarted = false;
+
+    // 根对象起始'{'的位置
+    private int rootStart = -1;
+
+    // 根对象结束'}'之后的位置
+    private int rootEnd = -1;
+
+    private boolean finished = false;
+
+    // 是否处于根对象之前的推理块中
+    private boolean inReasoning = false;
+
+    private boolean inString = false;
+
+    private boolean escaped = false;
+
+    private int stringStart = -1;
+
+    private boolean stringIsKey = false;
+
+    // 根对象中是否正在等待一个key
+    private boolean expectKey = false;
+
+    // 根对象中最近一次读到的key
+    private String lastKey;
+
+    private boolean inDailyPlans = false;
+
+    private int elementStart = -1;
+
+    private int dayPlanCount = 0;
+
+    private int skippedCount = 0;
+
+    // 根对象上已解析出的字符串字段
+    private final Map<String, String> fields = new LinkedHashMap<>();
+
+    public PlanJsonStreamParser(BiConsumer<String, String> onField, Consumer<JSONObject> onDayPlan) {
+        this.onField = onField;
+        this.onDayPlan = onDayPlan;
+    }
+
+    /**
+     * 追加一段文本并解析到当前末尾
+     */
+    public void feed(String chunk) {
+        if (finished || chunk == null || chunk.isEmpty()) {
+            return;
+        }
+        buffer.append(chunk);
+
+        while (position < buffer.length() && !finished) {
+            if (!rootStarted) {
+                // 根对象开始之前的内容（推理过程、说明文字、markdown标记等）全部跳过
+                if (!seekRoot()) {
+                    return;
+                }
+                continue;
+            }
+
+            char c = buffer.charAt(position);
+            if (inString) {
+                consumeStringChar(c);
+                position++;
+                continue;
+            }
+
+            switch (c) {
+                case '"' -> {
+                    inString = true;
+                    stringStart = position;
+                    stringIsKey = depth == 1 && expectKey;
+                }
+                case ':' -> {
+                    if (depth == 1) {
+                        expectKey = false;
+                    }
+                }
+                case ',' -> {
+                    if (depth == 1) {
+                        expectKey = true;
+                    }
+                }
+                case '{', '[' -> {
+                    depth++;
+                    if (depth == 2 && c == '[' && DAILY_PLANS_KEY.equals(lastKey)) {
+                        inDailyPlans = true;
+                    } else if (inDailyPlans && depth == 3 && c == '{') {
+                        elementStart = position;
+                    }
+                }
+                case '}', ']' -> {
+                    if (inDailyPlans && depth == 3 && c == '}' && elementStart >= 0) {
+                        emitDayPlan(buffer.substring(elementStart, position + 1));
+                        elementStart = -1;
+                    }
+                    depth--;
+                    if (depth == 1 && inDailyPlans) {
+                        inDailyPlans = false;
+                    }
+                    if (depth == 0) {
+                        finished = true;
+                        rootEnd = position + 1;
+                    }
+                }
+                default -> {
+                }
+            }
+            position++;
+        }
+    }
+
+    /**
+     * 在根对象开始之前向前扫描，找到根对象的起始'{'时返回true；需要更多输入才能判断时返回false
+     * 只有后面紧跟（忽略空白）'"'或'}'的'{'才视为根对象，避免说明文字中的花括号被误认
+     */
+    private boolean seekRoot() {
+        if (inReasoning) {
+            int end = buffer.indexOf(THINK_END, position);
+            if (end < 0) {
+                // 保留可能被截断在末尾的结束标记
+                position = Math.max(position, buffer.length() - THINK_END.length() + 1);
+                return false;
+            }
+            inReasoning = false;
+            position = end + THINK_END.length();
+            return true;
+        }
+
+        char c = buffer.charAt(position);
+        if (c == '<') {
+            int available = Math.min(THINK_START.length(), buffer.length() - position);
+            String head = buffer.substring(position, position + available);
+            if (available < THINK_START.length() && THINK_START.startsWith(head)) {
+                return false;
+            }
+            if (head.equals(THINK_START)) {
+                inReasoning = true;
+                position += THINK_START.length();
+                return true;
+            }
+        } else if (c == '{') {
+            int next = position + 1;
+            while (next < buffer.length() && Character.isWhitespace(buffer.charAt(next))) {
+                next++;
+            }
+            if (next >= buffer.length()) {
+                return false;
+            }
+            char following = buffer.charAt(next);
+            if (following == '"' || following == '}') {
+                rootStarted = true;
+                rootStart = position;
+                depth = 1;
+                expectKey = true;
+                position = next;
+                return true;
+            }
+        }
+        position++;
+        return true;
+    }
+
+    private void consumeStringChar(char c) {
+        if (escaped) {
+            escaped = false;
+        } else if (c == '\\') {
+            escaped = true;
+        } else if (c == '"') {
+            inString = false;
+            if (depth == 1) {
+                String value = decodeString(buffer.substring(stringStart, position + 1));
+                if (stringIsKey) {
+                    lastKey = value;
+                } else if (lastKey != null && value != null) {
+                    fields.put(lastKey, value);
+                    if (onField != null) {
+                        onField.accept(lastKey, value);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 借助JSON解析处理转义字符，转义非法时返回null
+     */
+    private String decodeString(String quoted) {
+        try {
+            return JSON.parseObject("{\"v\":" + quoted + "}").getString("v");
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private void emitDayPlan(String json) {
+        JSONObject dayPlan;
+        try {
+            dayPlan = JSON.parseObject(json);
+        } catch (Exception e) {
+            // 单个元素格式错误只丢弃该元素，缺失的天由调用方补齐
+            skippedCount++;
+            return;
+        }
+        dayPlanCount++;
+        if (onDayPlan != null) {
+            onDayPlan.accept(dayPlan);
+        }
+    }
+
+    /**
+     * 根对象是否已完整闭合
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * 完整的根对象文本，根对象尚未闭合时返回null
+     */
+    public String getRootJson() {
+        return finished ? buffer.substring(rootStart, rootEnd) : null;
+    }
+
+    /**
+     * 根对象是否已开始
+     */
+    public boolean isRootStarted() {
+        return rootStarted;
+    }
+
+    /**
+     * 已解析出的每日计划数量
+     */
+    public int getDayPlanCount() {
+        return dayPlanCount;
+    }
+
+    /**
+     * 因格式错误被丢弃的每日计划数量
+     */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * 根对象上已解析出的字符串字段
+     */
+    public Map<String, String> getFields() {
+        return fields;
+    }
+
+    /**
+     * 已接收的完整原始文本
+     */
+    public String getRawText() {
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package com.studyplanner.util;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * LLM返回内容的JSON处理工具
+ */
+public final class PlanJsonUtils {
+
+    private PlanJsonUtils() {
+    }
+
+    /**
+     * 从LLM返回文本中提取JSON对象（LLM可能返回推理过程、说明文字或markdown标记）
+     * 根对象完整时按原样解析；被截断或格式错误时返回已恢复的内容：
+     * 根对象上的字符串字段和所有完整的dailyPlans元素。没有找到JSON对象时返回null
+     */
+    public static JSONObject extractJsonObject(String llmResponse) {
+        if (llmResponse == null) {
+            return null;
+        }
+        List<JSONObject> dayPlans = new ArrayList<>();
+        PlanJsonStreamParser parser = new PlanJsonStreamParser(null, dayPlans::add);
+        parser.feed(llmResponse);
+        if (!parser.isRootStarted()) {
+            return null;
+        }
+
+        if (parser.isFinished()) {
+            try {
+                JSONObject json = JSON.parseObject(parser.getRootJson());
+                if (json != null) {
+                    return json;
+                }
+            } catch (Exception e) {
+                // 整体解析失败时使用逐元素恢复的结果
+            }
+        }
+
+        JSONObject recovered = new JSONObject();
+        recovered.putAll(parser.getFields());
+        recovered.put("dailyPlans", new JSONArray(dayPlans));
+        System.out.println(String.format("LLM返回内容不完整，已恢复%d天计划（丢弃格式错误的%d天）",
+                dayPlans.size(), parser.getSkippedCount()));
+        return recovered;
+    }
+
+    /**
+     * 计划中dailyPlans的数量
+     */
+    public static int countDayPlans(JSONObject plan) {
+        JSONArray dailyPlans = plan != null ? plan.getJSONArray("dailyPlans") : null;
+        return dailyPlans != null ? dailyPlans.size() : 0;
+    }
+}
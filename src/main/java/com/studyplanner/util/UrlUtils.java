@@ -0,0 +1,57 @@
+package com.studyplanner.util;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Locale;
+
+/**
+ * URL工具类
+ */
+public final class UrlUtils {
+
+    private UrlUtils() {
+    }
+
+    /**
+     * 提取主机标识（小写主机名，带非默认端口），用于按上游主机隔离资源
+     */
+    public static String hostKey(String baseUrl) {
+        if (baseUrl == null || baseUrl.isEmpty()) {
+            return "";
+        }
+        try {
+            URI uri = URI.create(baseUrl.trim());
+            String host = uri.getHost() != null ? uri.getHost() : baseUrl.trim();
+            return uri.getPort() > 0 ? host.toLowerCase(Locale.ROOT) + ":" + uri.getPort()
+                    : host.toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return baseUrl.trim().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * 两个地址是否指向同一上游主机（判断是否为系统服务商时统一使用）
+     */
+    public static boolean isSameHost(String baseUrl, String otherBaseUrl) {
+        return hostKey(baseUrl).equals(hostKey(otherBaseUrl));
+    }
+
+    /**
+     * 是否为系统服务商：主机相同且使用系统API Key；游客填写同一服务商地址和自己的密钥时不算
+     */
+    public static boolean isSystemProvider(String baseUrl, String apiKey, String systemBaseUrl, String systemApiKey) {
+        if (apiKey == null || systemApiKey == null || !isSameHost(baseUrl, systemBaseUrl)) {
+            return false;
+        }
+        return MessageDigest.isEqual(apiKey.getBytes(StandardCharsets.UTF_8),
+                systemApiKey.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 主机加API Key哈希的标识，用于按游客密钥隔离熔断、限流等状态（不暴露密钥本身）
+     */
+    public static String providerKey(String baseUrl, String apiKey) {
+        return hostKey(baseUrl) + "#" + HashUtils.sha256(apiKey == null ? "" : apiKey).substring(0, 16);
+    }
+}
@@ -0,0 +1,67 @@
+package com.studyplanner.loadtest;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 数据库基准测试执行器（benchmark profile下启动完成后自动运行）
+ * 依次执行配置的基准测试，测试数据写入临时用户并在结束后删除，输出结果后退出。
+ * 使用方式：mvn spring-boot:test-run -Dspring-boot.run.profiles=benchmark
+ */
+@Component
+@Profile("benchmark")
+public class BenchmarkRunner {
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private PlanPersistenceBenchmark planPersistenceBenchmark;
+
+    @Autowired
+    private ChartQueryBenchmark chartQueryBenchmark;
+
+    // 要执行的基准测试：plan-persistence、chart-query
+    @Value("${benchmark.suites:plan-persistence,chart-query}")
+    private String suites;
+
+    @Value("${benchmark.exit-on-finish:true}")
+    private boolean exitOnFinish;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        Thread runner = new Thread(this::runAll, "benchmark-runner");
+        runner.setDaemon(false);
+        runner.start();
+    }
+
+    private void runAll() {
+        List<String> report = new ArrayList<>();
+        for (String suite : suites.split(",")) {
+            switch (suite.trim()) {
+                case "plan-persistence" -> report.addAll(planPersistenceBenchmark.run());
+                case "chart-query" -> report.addAll(chartQueryBenchmark.run());
+                case "" -> {
+                }
+                default -> System.err.println("未知的基准测试: " + suite);
+            }
+        }
+
+        System.out.println("================ 基准测试结果 ================");
+        report.forEach(System.out::println);
+        System.out.println("==============================================");
+
+        if (exitOnFinish) {
+            System.exit(SpringApplication.exit(applicationContext, () -> 0));
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.studyplanner.loadtest;
+
+import com.studyplanner.entity.CheckIn;
+import com.studyplanner.entity.PlanDetail;
+import com.studyplanner.entity.StudyPlan;
+import com.studyplanner.entity.User;
+import com.studyplanner.mapper.CheckInMapper;
+import com.studyplanner.mapper.PlanDetailMapper;
+import com.studyplanner.mapper.PlanMapper;
+import com.studyplanner.mapper.UserMapper;
+import com.studyplanner.service.CheckInService;
+import com.studyplanner.service.UserDailyStatsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 学习图表查询基准测试（由BenchmarkRunner调用）
+ * 为测试用户生成一段打卡历史，对比逐天聚合check_in（本周7次+本月每天1次）与一次读取每日汇总表的耗时
+ */
+@Component
+@Profile("benchmark")
+public class ChartQueryBenchmark {
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private PlanMapper planMapper;
+
+    @Autowired
+    private PlanDetailMapper planDetailMapper;
+
+    @Autowired
+    private CheckInMapper checkInMapper;
+
+    @Autowired
+    private CheckInService checkInService;
+
+    @Autowired
+    private UserDailyStatsService userDailyStatsService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // 生成的打卡历史天数（从今天往前）
+    @Value("${benchmark.chart-history-days:730}")
+    private int historyDays;
+
+    @Value("${benchmark.iterations:20}")
+    private int iterations;
+
+    /**
+     * 执行基准测试，返回结果表格的各行
+     */
+    public List<String> run() {
+        User user = new User();
+        user.setUsername("benchmark_chart_" + System.currentTimeMillis());
+        user.setPassword("benchmark");
+        user.setEmail(user.getUsername() + "@example.com");
+        userMapper.insert(user);
+
+        List<String> report = new ArrayList<>();
+        report.add("-------------- 学习图表（" + historyDays + "天打卡历史） --------------");
+        report.add(String.format("%-10s %6s %8s %8s %8s", "方式", "查询数", "p50(ms)", "p90(ms)", "max(ms)"));
+        try {
+            prepareHistory(user.getId());
+            LocalDate today = LocalDate.now();
+            int perDayQueries = 7 + today.lengthOfMonth();
+            report.add(measure("per-day", perDayQueries, () -> queryPerDay(user.getId(), today)));
+            report.add(measure("rollup", 1, () -> checkInService.getChartData(user.getId())));
+        } catch (Exception e) {
+            System.err.println("学习图表基准测试失败: " + e.getMessage());
+        } finally {
+            userMapper.delete(user.getId());
+        }
+        return report;
+    }
+
+    /**
+     * 生成一个计划和每天一次的打卡记录，并重算该用户的每日汇总
+     */
+    private void prepareHistory(Long userId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            StudyPlan plan = new StudyPlan();
+            plan.setUserId(userId);
+            plan.setTitle("基准测试计划");
+            plan.setGoal("基准测试");
+            plan.setLevel("初级");
+            plan.setDailyHours(BigDecimal.valueOf(2.0));
+            plan.setTotalDays(historyDays);
+            plan.setStartDate(LocalDate.now().minusDays(historyDays - 1));
+            plan.setEndDate(LocalDate.now());
+            plan.setStatus("进行中");
+            planMapper.insert(plan);
+
+            List<PlanDetail> details = new ArrayList<>(historyDays);
+            for (int day = 1; day <= historyDays; day++) {
+                PlanDetail detail = new PlanDetail();
+                detail.setPlanId(plan.getId());
+                detail.setDayNumber(day);
+                detail.setContent("第" + day + "天学习内容");
+                detail.setDuration(BigDecimal.valueOf(2.0));
+                detail.setResources("[]");
+                detail.setIsCompleted(1);
+                details.add(detail);
+            }
+            for (int from = 0; from < details.size(); from += 200) {
+                planDetailMapper.batchInsert(details.subList(from, Math.min(details.size(), from + 200)));
+            }
+
+            for (int i = 0; i < historyDays; i++) {
+                CheckIn checkIn = new CheckIn();
+                checkIn.setUserId(userId);
+                checkIn.setPlanId(plan.getId());
+                checkIn.setDetailId(details.get(i).getId());
+                checkIn.setCheckDate(plan.getStartDate().plusDays(i));
+                checkIn.setStudyHours(BigDecimal.valueOf(1.0 + i % 3));
+                checkInMapper.insert(checkIn);
+            }
+        });
+        userDailyStatsService.rebuildUser(userId);
+    }
+
+    /**
+     * 原有的逐天查询方式
+     */
+    private void queryPerDay(Long userId, LocalDate today) {
+        LocalDate monday = today.minusDays(today.getDayOfWeek().getValue() - 1);
+        for (int i = 0; i < 7; i++) {
+            checkInMapper.sumStudyHoursByDate(userId, monday.plusDays(i));
+        }
+        LocalDate firstDay = today.withDayOfMonth(1);
+        for (int i = 0; i < today.lengthOfMonth(); i++) {
+            checkInMapper.sumStudyHoursByDate(userId, firstDay.plusDays(i));
+        }
+    }
+
+    private String measure(String mode, int queries, Runnable action) {
+        long[] samples = new long[iterations];
+        for (int i = -1; i < iterations; i++) {
+            long start = System.nanoTime();
+            action.run();
+            if (i >= 0) {
+                samples[i] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(samples);
+        return String.format("%-10s %6d %8.2f %8.2f %8.2f", mode, queries,
+                samples[(int) Math.ceil(0.5 * samples.length) - 1] / 1e6,
+                samples[(int) Math.ceil(0.9 * samples.length) - 1] / 1e6,
+                samples[samples.length - 1] / 1e6);
+    }
+}
@@ -0,0 +1,169 @@
+package com.studyplanner.loadtest;
+
+import com.alibaba.fastjson2.JSONObject;
+import com.studyplanner.util.BoundedVirtualThreadExecutor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 平台线程与虚拟线程对比压测（由LoadTestRunner的executor-compare场景调用）
+ * 分别用固定大小的平台线程池和有界虚拟线程执行器并发发起同样数量的阻塞LLM调用（直接请求桩服务，不经过舱壁），
+ * 统计同时在途的调用数峰值、吞吐量、延迟分位数和JVM平台线程数峰值。虚拟线程需要运行在Java 21及以上，
+ * 桩服务应开启llm.stub.virtual-threads，避免桩服务自身的线程数成为瓶颈或计入线程峰值
+ */
+@Component
+@Profile("loadtest")
+public class ExecutorLoadScenario {
+
+    @Value("${llm.api.base-url:}")
+    private String llmBaseUrl;
+
+    @Value("${llm.api.api-key:}")
+    private String llmApiKey;
+
+    @Value("${llm.api.model:Qwen/Qwen3-8B}")
+    private String llmModel;
+
+    // 每种执行方式发起的调用数
+    @Value("${loadtest.executor.tasks:2000}")
+    private int tasks;
+
+    // 平台线程池大小
+    @Value("${loadtest.executor.platform-threads:200}")
+    private int platformThreads;
+
+    // 虚拟线程执行器的并发上限
+    @Value("${loadtest.executor.virtual-limit:2000}")
+    private int virtualLimit;
+
+    @Value("${loadtest.request-timeout-seconds:300}")
+    private int requestTimeoutSeconds;
+
+    /**
+     * 执行对比，返回结果表格的各行
+     */
+    public List<String> run() throws InterruptedException {
+        List<String> report = new ArrayList<>();
+        report.add(String.format("-------------- 执行器对比（%d次阻塞LLM调用） --------------", tasks));
+        report.add(String.format("%-10s %7s %6s %9s %8s %8s %8s %10s",
+                "方式", "上限", "失败", "吞吐(r/s)", "p50(ms)", "p99(ms)", "在途峰值", "平台线程峰值"));
+
+        ThreadPoolTaskExecutor platform = new ThreadPoolTaskExecutor();
+        platform.setCorePoolSize(platformThreads);
+        platform.setMaxPoolSize(platformThreads);
+        platform.setQueueCapacity(tasks);
+        platform.setThreadNamePrefix("loadtest-platform-");
+        platform.initialize();
+        try {
+            report.add(measure("platform", platformThreads, platform));
+        } finally {
+            platform.shutdown();
+        }
+
+        if (Runtime.version().feature() >= 21) {
+            report.add(measure("virtual", virtualLimit,
+                    new BoundedVirtualThreadExecutor("loadtest-virtual-", virtualLimit, tasks, false)));
+        } else {
+            report.add(String.format("%-10s 需要Java 21及以上（当前%d），已跳过", "virtual", Runtime.version().feature()));
+        }
+        return report;
+    }
+
+    private String measure(String name, int limit, TaskExecutor executor) throws InterruptedException {
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(4);
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(clientExecutor)
+                .build();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peakInFlight = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        long[] latencies = new long[tasks];
+        CountDownLatch done = new CountDownLatch(tasks);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < tasks; i++) {
+            int index = i;
+            // 延迟从提交开始计算，包含在执行器中排队的时间
+            long submitted = System.nanoTime();
+            Runnable call = () -> {
+                peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    HttpResponse<String> response = client.send(chatRequest(index), HttpResponse.BodyHandlers.ofString());
+                    if (response.statusCode() != 200) {
+                        failures.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                } finally {
+                    inFlight.decrementAndGet();
+                    latencies[index] = System.nanoTime() - submitted;
+                    done.countDown();
+                }
+            };
+            try {
+                executor.execute(call);
+            } catch (TaskRejectedException e) {
+                failures.incrementAndGet();
+                done.countDown();
+            }
+        }
+        done.await(1, TimeUnit.HOURS);
+        long elapsedNanos = System.nanoTime() - start;
+        clientExecutor.shutdown();
+
+        // 被拒绝的调用没有延迟数据
+        long[] sorted = Arrays.stream(latencies).filter(latency -> latency > 0).sorted().toArray();
+        return String.format("%-10s %7d %6d %9.2f %8d %8d %8d %10d",
+                name, limit, failures.get(), (tasks - failures.get()) / (elapsedNanos / 1e9),
+                percentileMs(sorted, 0.5), percentileMs(sorted, 0.99), peakInFlight.get(), threads.getPeakThreadCount());
+    }
+
+    private HttpRequest chatRequest(int index) {
+        JSONObject message = new JSONObject();
+        message.put("role", "user");
+        message.put("content", "执行器对比压测" + index + "：如何高效地复习学过的内容？");
+        JSONObject body = new JSONObject();
+        body.put("model", llmModel);
+        body.put("max_tokens", 256);
+        body.put("messages", List.of(message));
+        String baseUrl = llmBaseUrl.endsWith("/") ? llmBaseUrl.substring(0, llmBaseUrl.length() - 1) : llmBaseUrl;
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/chat/completions"))
+                .timeout(Duration.ofSeconds(requestTimeoutSeconds))
+                .header("Authorization", "Bearer " + llmApiKey)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toJSONString()))
+                .build();
+    }
+
+    private long percentileMs(long[] sortedNanos, double p) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sortedNanos.length) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sortedNanos[Math.max(0, Math.min(sortedNanos.length - 1, index))]);
+    }
+}
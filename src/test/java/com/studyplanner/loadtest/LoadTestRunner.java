@@ -0,0 +1,301 @@
+package com.studyplanner.loadtest;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.studyplanner.dto.PlanGenerationJob;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.CookieManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * 接口压测执行器（loadtest profile下启动完成后自动运行）
+ * 通过HTTP按配置的并发数调用PlanController和AIController，统计吞吐量和延迟分位数；
+ * 配合StubLLMServer使用时不消耗真实token。
+ * 使用方式：mvn spring-boot:test-run -Dspring-boot.run.profiles=stub,loadtest
+ */
+@Component
+@Profile("loadtest")
+public class LoadTestRunner {
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private ExecutorLoadScenario executorLoadScenario;
+
+    @Value("${server.port:8080}")
+    private int serverPort;
+
+    // 压测场景：ai-chat、plan-generate、plan-stream、plan-async、executor-compare
+    @Value("${loadtest.scenarios:ai-chat,plan-generate,plan-stream}")
+    private String scenarios;
+
+    // 每个场景的请求数
+    @Value("${loadtest.requests:200}")
+    private int requests;
+
+    @Value("${loadtest.concurrency:20}")
+    private int concurrency;
+
+    @Value("${loadtest.plan-days:14}")
+    private int planDays;
+
+    // 每个请求使用不同的学习目标/问题，避免命中缓存和请求合并
+    @Value("${loadtest.unique-prompts:true}")
+    private boolean uniquePrompts;
+
+    @Value("${loadtest.request-timeout-seconds:300}")
+    private int requestTimeoutSeconds;
+
+    // plan-async场景轮询任务状态的间隔
+    @Value("${loadtest.job-poll-interval-ms:200}")
+    private long jobPollIntervalMs;
+
+    // 压测结束后退出应用
+    @Value("${loadtest.exit-on-finish:true}")
+    private boolean exitOnFinish;
+
+    private HttpClient httpClient;
+
+    private String baseUrl;
+
+    /**
+     * 单个请求的结果
+     */
+    private record Sample(long latencyNanos, long firstByteNanos, boolean success) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        Thread runner = new Thread(this::runAll, "load-test-runner");
+        runner.setDaemon(false);
+        runner.start();
+    }
+
+    private void runAll() {
+        baseUrl = "http://127.0.0.1:" + serverPort;
+        httpClient = HttpClient.newBuilder()
+                .cookieHandler(new CookieManager())
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newFixedThreadPool(Math.max(4, concurrency)))
+                .build();
+
+        List<String> report = new ArrayList<>();
+        List<String> executorReport = new ArrayList<>();
+        try {
+            login();
+            for (String scenario : scenarios.split(",")) {
+                String name = scenario.trim();
+                if ("executor-compare".equals(name)) {
+                    executorReport.addAll(executorLoadScenario.run());
+                } else if (!name.isEmpty()) {
+                    report.add(runScenario(name));
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("压测执行失败: " + e.getMessage());
+        }
+
+        System.out.println("================ 压测结果 ================");
+        System.out.println(String.format("%-14s %7s %6s %9s %8s %8s %8s %8s %9s",
+                "场景", "请求数", "失败", "吞吐(r/s)", "p50(ms)", "p90(ms)", "p99(ms)", "max(ms)", "首字节p99"));
+        report.forEach(System.out::println);
+        executorReport.forEach(System.out::println);
+        System.out.println("==========================================");
+
+        if (exitOnFinish) {
+            System.exit(SpringApplication.exit(applicationContext, () -> 0));
+        }
+    }
+
+    /**
+     * 注册并登录压测用户，会话Cookie由CookieManager保存
+     */
+    private void login() throws IOException, InterruptedException {
+        String username = "loadtest_" + System.currentTimeMillis();
+        JSONObject body = new JSONObject();
+        body.put("username", username);
+        body.put("password", "loadtest123");
+        body.put("email", username + "@example.com");
+        send(post("/api/user/register", body.toJSONString()));
+        HttpResponse<String> response = send(post("/api/user/login", body.toJSONString()));
+        if (!isSuccess(response)) {
+            throw new IllegalStateException("压测用户登录失败: " + response.body());
+        }
+    }
+
+    private String runScenario(String scenario) throws InterruptedException {
+        List<Sample> samples = new ArrayList<>();
+        AtomicInteger sequence = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            workers.execute(() -> {
+                Sample sample = runOnce(scenario, sequence.incrementAndGet());
+                synchronized (samples) {
+                    samples.add(sample);
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.HOURS);
+        long elapsedNanos = System.nanoTime() - start;
+
+        long[] latencies = samples.stream().filter(Sample::success).mapToLong(Sample::latencyNanos).sorted().toArray();
+        long[] firstBytes = samples.stream().filter(Sample::success).mapToLong(Sample::firstByteNanos).sorted().toArray();
+        long failures = samples.stream().filter(sample -> !sample.success()).count();
+        return String.format("%-14s %7d %6d %9.2f %8d %8d %8d %8d %9d",
+                scenario, samples.size(), failures,
+                latencies.length / (elapsedNanos / 1e9),
+                percentileMs(latencies, 0.5), percentileMs(latencies, 0.9), percentileMs(latencies, 0.99),
+                percentileMs(latencies, 1.0), percentileMs(firstBytes, 0.99));
+    }
+
+    private Sample runOnce(String scenario, int sequence) {
+        long start = System.nanoTime();
+        try {
+            return switch (scenario) {
+                case "ai-chat" -> timed(start, post("/api/ai/chat", chatBody(sequence)));
+                case "plan-generate" -> timed(start, post("/api/plan/generate", planBody(sequence)));
+                case "plan-async" -> timedJob(start, post("/api/plan/generate/async", planBody(sequence)));
+                case "plan-stream" -> timedStream(start, post("/api/plan/generate/stream", planBody(sequence)));
+                default -> throw new IllegalArgumentException("未知的压测场景: " + scenario);
+            };
+        } catch (Exception e) {
+            return new Sample(System.nanoTime() - start, 0, false);
+        }
+    }
+
+    private Sample timed(long start, HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> response = send(request);
+        long latency = System.nanoTime() - start;
+        return new Sample(latency, latency, isSuccess(response));
+    }
+
+    /**
+     * 异步任务场景：提交后轮询任务状态直到结束，首字节记为任务被接收的时间，任务生成成功视为成功
+     */
+    private Sample timedJob(long start, HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> submitted = send(request);
+        long accepted = System.nanoTime() - start;
+        if (!isSuccess(submitted)) {
+            return new Sample(accepted, accepted, false);
+        }
+        String jobId = JSON.parseObject(submitted.body()).getJSONObject("data").getString("jobId");
+        long deadline = start + TimeUnit.SECONDS.toNanos(requestTimeoutSeconds);
+        while (System.nanoTime() < deadline) {
+            Thread.sleep(jobPollIntervalMs);
+            HttpResponse<String> polled = send(get("/api/plan/job/" + jobId));
+            if (!isSuccess(polled)) {
+                return new Sample(System.nanoTime() - start, accepted, false);
+            }
+            String status = JSON.parseObject(polled.body()).getJSONObject("data").getString("status");
+            if (PlanGenerationJob.STATUS_SUCCEEDED.equals(status) || PlanGenerationJob.STATUS_FAILED.equals(status)) {
+                return new Sample(System.nanoTime() - start, accepted, PlanGenerationJob.STATUS_SUCCEEDED.equals(status));
+            }
+        }
+        return new Sample(System.nanoTime() - start, accepted, false);
+    }
+
+    /**
+     * SSE场景：记录首个事件到达时间，收到done事件视为成功
+     */
+    private Sample timedStream(long start, HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<Stream<String>> response = httpClient.send(request, HttpResponse.BodyHandlers.ofLines());
+        long firstByte = 0;
+        boolean done = false;
+        try (Stream<String> lines = response.body()) {
+            Iterator<String> iterator = lines.iterator();
+            while (iterator.hasNext()) {
+                String line = iterator.next();
+                if (firstByte == 0 && !line.isEmpty()) {
+                    firstByte = System.nanoTime() - start;
+                }
+                if (line.startsWith("event:done")) {
+                    done = true;
+                }
+                if (line.startsWith("event:error")) {
+                    break;
+                }
+            }
+        }
+        return new Sample(System.nanoTime() - start, firstByte, response.statusCode() == 200 && done);
+    }
+
+    private String chatBody(int sequence) {
+        String question = uniquePrompts ? "压测问题" + sequence + "：如何高效地复习第" + sequence + "章的内容？"
+                : "如何高效地复习学过的内容？";
+        JSONObject message = new JSONObject();
+        message.put("role", "user");
+        message.put("content", question);
+        JSONObject body = new JSONObject();
+        body.put("messages", List.of(message));
+        return body.toJSONString();
+    }
+
+    private String planBody(int sequence) {
+        JSONObject body = new JSONObject();
+        body.put("goal", uniquePrompts ? "压测学习目标" + sequence + "：掌握Java并发编程" : "掌握Java并发编程");
+        body.put("level", "初级");
+        body.put("dailyHours", 2);
+        body.put("totalDays", planDays);
+        return body.toJSONString();
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(requestTimeoutSeconds))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(requestTimeoutSeconds))
+                .GET()
+                .build();
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException, InterruptedException {
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private boolean isSuccess(HttpResponse<String> response) {
+        if (response.statusCode() != 200) {
+            return false;
+        }
+        JSONObject body = JSON.parseObject(response.body());
+        return body != null && Integer.valueOf(200).equals(body.getInteger("code"));
+    }
+
+    private long percentileMs(long[] sortedNanos, double p) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sortedNanos.length) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sortedNanos[Math.max(0, Math.min(sortedNanos.length - 1, index))]);
+    }
+}
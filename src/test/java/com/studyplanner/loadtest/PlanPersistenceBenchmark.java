@@ -0,0 +1,175 @@
+package com.studyplanner.loadtest;
+
+import com.studyplanner.entity.PlanDetail;
+import com.studyplanner.entity.StudyPlan;
+import com.studyplanner.entity.User;
+import com.studyplanner.mapper.PlanDetailMapper;
+import com.studyplanner.mapper.PlanMapper;
+import com.studyplanner.mapper.UserMapper;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 计划保存基准测试（由BenchmarkRunner调用）
+ * 分别用逐条INSERT、多行INSERT、MyBatis BATCH执行器保存不同天数的计划，
+ * 每种方式都在一个事务内写入计划和全部每日任务，输出耗时分位数后删除测试数据。
+ */
+@Component
+@Profile("benchmark")
+public class PlanPersistenceBenchmark {
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private PlanMapper planMapper;
+
+    @Autowired
+    private PlanDetailMapper planDetailMapper;
+
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // 计划天数，逗号分隔
+    @Value("${benchmark.plan-days:30,90,365}")
+    private String planDays;
+
+    // 每种方式每个天数的测量次数（另有一次预热不计入）
+    @Value("${benchmark.iterations:20}")
+    private int iterations;
+
+    @Value("${plan.detail.batch-size:200}")
+    private int detailBatchSize;
+
+    /**
+     * 执行基准测试，返回结果表格的各行
+     */
+    public List<String> run() {
+        User user = new User();
+        user.setUsername("benchmark_" + System.currentTimeMillis());
+        user.setPassword("benchmark");
+        user.setEmail(user.getUsername() + "@example.com");
+        userMapper.insert(user);
+
+        List<String> report = new ArrayList<>();
+        report.add("-------------- 计划保存 --------------");
+        report.add(String.format("%-10s %6s %8s %8s %8s %8s",
+                "方式", "天数", "p50(ms)", "p90(ms)", "max(ms)", "每天(μs)"));
+        try {
+            for (String value : planDays.split(",")) {
+                int days = Integer.parseInt(value.trim());
+                report.add(measure("single", days, user.getId()));
+                report.add(measure("multi-row", days, user.getId()));
+                report.add(measure("batch", days, user.getId()));
+            }
+        } catch (Exception e) {
+            System.err.println("计划保存基准测试失败: " + e.getMessage());
+        } finally {
+            userMapper.delete(user.getId());
+        }
+        return report;
+    }
+
+    private String measure(String mode, int days, Long userId) {
+        long[] samples = new long[iterations];
+        for (int i = -1; i < iterations; i++) {
+            long start = System.nanoTime();
+            Long planId = save(mode, days, userId);
+            long elapsed = System.nanoTime() - start;
+            planMapper.delete(planId);
+            if (i >= 0) {
+                samples[i] = elapsed;
+            }
+        }
+        Arrays.sort(samples);
+        long p50 = samples[(int) Math.ceil(0.5 * samples.length) - 1];
+        return String.format("%-10s %6d %8d %8d %8d %8d", mode, days,
+                TimeUnit.NANOSECONDS.toMillis(p50),
+                TimeUnit.NANOSECONDS.toMillis(samples[(int) Math.ceil(0.9 * samples.length) - 1]),
+                TimeUnit.NANOSECONDS.toMillis(samples[samples.length - 1]),
+                TimeUnit.NANOSECONDS.toMicros(p50) / days);
+    }
+
+    /**
+     * 按指定方式在一个事务内保存计划和每日任务，返回计划ID
+     */
+    private Long save(String mode, int days, Long userId) {
+        StudyPlan plan = buildPlan(userId, days);
+        switch (mode) {
+            case "single" -> transactionTemplate.executeWithoutResult(status -> {
+                planMapper.insert(plan);
+                for (PlanDetail detail : buildDetails(plan.getId(), days)) {
+                    planDetailMapper.insert(detail);
+                }
+            });
+            case "multi-row" -> transactionTemplate.executeWithoutResult(status -> {
+                planMapper.insert(plan);
+                List<PlanDetail> details = buildDetails(plan.getId(), days);
+                for (int from = 0; from < details.size(); from += detailBatchSize) {
+                    planDetailMapper.batchInsert(details.subList(from, Math.min(details.size(), from + detailBatchSize)));
+                }
+            });
+            case "batch" -> {
+                // BATCH执行器不能加入已有的SIMPLE事务，这里使用独立会话；配合rewriteBatchedStatements由驱动合并为多行INSERT
+                try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH, false)) {
+                    session.getMapper(PlanMapper.class).insert(plan);
+                    // 取得计划的自增ID
+                    session.flushStatements();
+                    PlanDetailMapper mapper = session.getMapper(PlanDetailMapper.class);
+                    for (PlanDetail detail : buildDetails(plan.getId(), days)) {
+                        mapper.insert(detail);
+                    }
+                    session.flushStatements();
+                    session.commit();
+                }
+            }
+            default -> throw new IllegalArgumentException("未知的保存方式: " + mode);
+        }
+        return plan.getId();
+    }
+
+    private StudyPlan buildPlan(Long userId, int days) {
+        StudyPlan plan = new StudyPlan();
+        plan.setUserId(userId);
+        plan.setTitle("基准测试计划");
+        plan.setGoal("基准测试");
+        plan.setLevel("初级");
+        plan.setDailyHours(BigDecimal.valueOf(2.0));
+        plan.setTotalDays(days);
+        plan.setStartDate(LocalDate.now());
+        plan.setEndDate(LocalDate.now().plusDays(days - 1));
+        plan.setStatus("进行中");
+        return plan;
+    }
+
+    private List<PlanDetail> buildDetails(Long planId, int days) {
+        List<PlanDetail> details = new ArrayList<>(days);
+        for (int day = 1; day <= days; day++) {
+            PlanDetail detail = new PlanDetail();
+            detail.setPlanId(planId);
+            detail.setDayNumber(day);
+            detail.setContent("第" + day + "天：复习前一天的重点，学习本日新概念，完成配套练习并整理错题，最后写学习总结。");
+            detail.setDuration(BigDecimal.valueOf(2.0));
+            detail.setResources("[\"官方文档对应章节\",\"配套练习题库\"]");
+            detail.setIsCompleted(0);
+            details.add(detail);
+        }
+        return details;
+    }
+}
@@ -0,0 +1,369 @@
+package com.studyplanner.loadtest;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 本地OpenAI兼容的桩LLM服务（仅用于压测和延迟测试）
+ * 提供/chat/completions接口，支持流式和非流式；首token延迟服从对数正态分布（由p50/p99确定），
+ * 按配置的token速率输出内容，可按比例注入429、500和超时；
+ * 根据prompt识别完整计划、阶段大纲和分段计划，返回结构真实的计划JSON
+ */
+@Component
+@ConditionalOnProperty(name = "llm.stub.enabled", havingValue = "true")
+public class StubLLMServer {
+
+    private static final Pattern TOTAL_DAYS_PATTERN = Pattern.compile("【计划周期】：(\\d+) 天");
+
+    private static final Pattern CHUNK_RANGE_PATTERN = Pattern.compile("第(\\d+)天到第(\\d+)天的内容");
+
+    private static final Pattern STAGE_RANGE_PATTERN = Pattern.compile("第(\\d+)-(\\d+)天");
+
+    // 桩服务按每个token约1.5个字符估算输出长度
+    private static final double CHARS_PER_TOKEN = 1.5;
+
+    @Value("${llm.stub.port:18080}")
+    private int port;
+
+    @Value("${llm.stub.workers:200}")
+    private int workers;
+
+    // 每个请求一个虚拟线程（需要Java 21），桩服务本身不限制并发，便于对比压测调用方的执行方式
+    @Value("${llm.stub.virtual-threads:false}")
+    private boolean virtualThreads;
+
+    // 首token延迟的中位数和p99（毫秒）
+    @Value("${llm.stub.latency-p50-ms:800}")
+    private double latencyP50Ms;
+
+    @Value("${llm.stub.latency-p99-ms:4000}")
+    private double latencyP99Ms;
+
+    // 输出速率（token/秒）
+    @Value("${llm.stub.tokens-per-second:60}")
+    private double tokensPerSecond;
+
+    // 流式输出时每个事件包含的token数
+    @Value("${llm.stub.stream-chunk-tokens:4}")
+    private int streamChunkTokens;
+
+    @Value("${llm.stub.error-rate-429:0}")
+    private double errorRate429;
+
+    @Value("${llm.stub.error-rate-500:0}")
+    private double errorRate500;
+
+    // 注入超时的比例：挂起timeout-ms后直接断开
+    @Value("${llm.stub.timeout-rate:0}")
+    private double timeoutRate;
+
+    @Value("${llm.stub.timeout-ms:180000}")
+    private long timeoutMs;
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong injectedErrors = new AtomicLong();
+
+    @PostConstruct
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 1024);
+        server.createContext("/", this::handle);
+        if (virtualThreads && Runtime.version().feature() >= 21) {
+            SimpleAsyncTaskExecutor virtualExecutor = new SimpleAsyncTaskExecutor("stub-llm-");
+            virtualExecutor.setVirtualThreads(true);
+            server.setExecutor(virtualExecutor);
+        } else {
+            executor = Executors.newFixedThreadPool(workers);
+            server.setExecutor(executor);
+        }
+        server.start();
+        System.out.println("桩LLM服务已启动: http://127.0.0.1:" + port + "/v1/chat/completions");
+    }
+
+    @PreDestroy
+    public void stop() {
+        server.stop(0);
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        System.out.println(String.format("桩LLM服务已停止：共%d次请求，注入错误%d次", requests.get(), injectedErrors.get()));
+    }
+
+    private void handle(HttpExchange exchange) {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod()) || !exchange.getRequestURI().getPath().endsWith("/chat/completions")) {
+                sendJson(exchange, 404, errorBody("not found"));
+                return;
+            }
+            requests.incrementAndGet();
+            JSONObject request = JSON.parseObject(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+
+            if (injectFault(exchange)) {
+                return;
+            }
+
+            String model = request.getString("model");
+            int maxTokens = request.getIntValue("max_tokens", 4096);
+            String prompt = lastUserContent(request.getJSONArray("messages"));
+            String content = buildContent(prompt);
+            int promptTokens = estimateTokens(prompt);
+
+            // 超出max_tokens时截断，和真实服务一样返回finish_reason=length
+            String finishReason = "stop";
+            int maxChars = (int) (maxTokens * CHARS_PER_TOKEN);
+            if (content.length() > maxChars) {
+                content = content.substring(0, maxChars);
+                finishReason = "length";
+            }
+
+            sleep(sampleFirstTokenLatencyMs());
+            if (request.getBooleanValue("stream")) {
+                stream(exchange, model, content, finishReason, promptTokens);
+            } else {
+                sleep((long) (estimateTokens(content) / tokensPerSecond * 1000));
+                sendJson(exchange, 200, completion(model, content, finishReason, promptTokens));
+            }
+        } catch (IOException e) {
+            // 客户端提前断开
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * 按比例注入429、500或超时，已处理时返回true
+     */
+    private boolean injectFault(HttpExchange exchange) throws IOException {
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < errorRate429) {
+            injectedErrors.incrementAndGet();
+            exchange.getResponseHeaders().add("Retry-After", "1");
+            sendJson(exchange, 429, errorBody("rate limited (stub)"));
+            return true;
+        }
+        if (roll < errorRate429 + errorRate500) {
+            injectedErrors.incrementAndGet();
+            sendJson(exchange, 500, errorBody("internal error (stub)"));
+            return true;
+        }
+        if (roll < errorRate429 + errorRate500 + timeoutRate) {
+            injectedErrors.incrementAndGet();
+            sleep(timeoutMs);
+            return true;
+        }
+        return false;
+    }
+
+    private void stream(HttpExchange exchange, String model, String content, String finishReason,
+                        int promptTokens) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+
+        String id = "chatcmpl-stub-" + UUID.randomUUID();
+        int chunkChars = Math.max(1, (int) (streamChunkTokens * CHARS_PER_TOKEN));
+        long chunkDelayMs = (long) (streamChunkTokens / tokensPerSecond * 1000);
+        for (int i = 0; i < content.length(); i += chunkChars) {
+            JSONObject delta = new JSONObject();
+            delta.put("content", content.substring(i, Math.min(content.length(), i + chunkChars)));
+            writeEvent(out, streamEvent(id, model, delta, null));
+            sleep(chunkDelayMs);
+        }
+
+        JSONObject last = streamEvent(id, model, new JSONObject(), finishReason);
+        last.put("usage", usage(promptTokens, estimateTokens(content)));
+        writeEvent(out, last);
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void writeEvent(OutputStream out, JSONObject event) throws IOException {
+        out.write(("data: " + event.toJSONString() + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private JSONObject streamEvent(String id, String model, JSONObject delta, String finishReason) {
+        JSONObject choice = new JSONObject();
+        choice.put("index", 0);
+        choice.put("delta", delta);
+        choice.put("finish_reason", finishReason);
+        JSONObject event = new JSONObject();
+        event.put("id", id);
+        event.put("object", "chat.completion.chunk");
+        event.put("model", model);
+        event.put("choices", JSONArray.of(choice));
+        return event;
+    }
+
+    private JSONObject completion(String model, String content, String finishReason, int promptTokens) {
+        JSONObject message = new JSONObject();
+        message.put("role", "assistant");
+        message.put("content", content);
+        JSONObject choice = new JSONObject();
+        choice.put("index", 0);
+        choice.put("message", message);
+        choice.put("finish_reason", finishReason);
+
+        JSONObject response = new JSONObject();
+        response.put("id", "chatcmpl-stub-" + UUID.randomUUID());
+        response.put("object", "chat.completion");
+        response.put("model", model);
+        response.put("choices", JSONArray.of(choice));
+        response.put("usage", usage(promptTokens, estimateTokens(content)));
+        return response;
+    }
+
+    private JSONObject usage(int promptTokens, int completionTokens) {
+        JSONObject usage = new JSONObject();
+        usage.put("prompt_tokens", promptTokens);
+        usage.put("completion_tokens", completionTokens);
+        usage.put("total_tokens", promptTokens + completionTokens);
+        return usage;
+    }
+
+    /**
+     * 根据prompt类型生成返回内容：阶段大纲、分段计划、完整计划或普通问答
+     */
+    private String buildContent(String prompt) {
+        if (prompt.contains("\"stages\"")) {
+            return buildOutline(prompt);
+        }
+        Matcher chunk = CHUNK_RANGE_PATTERN.matcher(prompt);
+        if (chunk.find()) {
+            return buildPlan(Integer.parseInt(chunk.group(1)), Integer.parseInt(chunk.group(2)), false);
+        }
+        Matcher totalDays = TOTAL_DAYS_PATTERN.matcher(prompt);
+        if (prompt.contains("dailyPlans") && totalDays.find()) {
+            return buildPlan(1, Integer.parseInt(totalDays.group(1)), true);
+        }
+        return buildAnswer();
+    }
+
+    private String buildOutline(String prompt) {
+        JSONArray stages = new JSONArray();
+        Matcher matcher = STAGE_RANGE_PATTERN.matcher(prompt);
+        int index = 1;
+        while (matcher.find()) {
+            JSONObject stage = new JSONObject();
+            stage.put("startDay", Integer.parseInt(matcher.group(1)));
+            stage.put("endDay", Integer.parseInt(matcher.group(2)));
+            stage.put("theme", "阶段" + index + "：核心概念与综合练习");
+            stage.put("objectives", "掌握本阶段的关键知识点，并通过练习巩固");
+            stages.add(stage);
+            index++;
+        }
+        JSONObject outline = new JSONObject();
+        outline.put("title", "压测学习计划");
+        outline.put("summary", "由桩LLM服务生成的学习计划大纲，用于压测。");
+        outline.put("stages", stages);
+        return outline.toJSONString();
+    }
+
+    private String buildPlan(int startDay, int endDay, boolean withHeader) {
+        JSONArray dailyPlans = new JSONArray();
+        for (int day = startDay; day <= endDay; day++) {
+            JSONObject dayPlan = new JSONObject();
+            dayPlan.put("day", day);
+            dayPlan.put("content", "第" + day + "天：复习前一天的重点，学习本日新概念（约40分钟），"
+                    + "完成3道配套练习并整理错题，最后用10分钟写学习总结。");
+            dayPlan.put("duration", 2.0);
+            dayPlan.put("resources", JSONArray.of("官方文档对应章节", "配套练习题库"));
+            dailyPlans.add(dayPlan);
+        }
+        JSONObject plan = new JSONObject();
+        if (withHeader) {
+            plan.put("title", "压测学习计划");
+            plan.put("summary", "由桩LLM服务生成的" + (endDay - startDay + 1) + "天学习计划，用于压测。");
+        }
+        plan.put("dailyPlans", dailyPlans);
+        return plan.toJSONString();
+    }
+
+    private String buildAnswer() {
+        int sentences = ThreadLocalRandom.current().nextInt(4, 12);
+        StringBuilder answer = new StringBuilder();
+        for (int i = 1; i <= sentences; i++) {
+            answer.append(i).append(". 这是桩LLM服务返回的示例回答，用于测量接口吞吐量和延迟分布。\n");
+        }
+        return answer.toString();
+    }
+
+    private String lastUserContent(JSONArray messages) {
+        if (messages == null) {
+            return "";
+        }
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            JSONObject message = messages.getJSONObject(i);
+            if ("user".equals(message.getString("role"))) {
+                return message.getString("content");
+            }
+        }
+        return "";
+    }
+
+    /**
+     * 按对数正态分布采样首token延迟，使中位数和p99与配置一致
+     */
+    private long sampleFirstTokenLatencyMs() {
+        if (latencyP50Ms <= 0) {
+            return 0;
+        }
+        double sigma = Math.log(Math.max(latencyP99Ms, latencyP50Ms) / latencyP50Ms) / 2.326;
+        return (long) (latencyP50Ms * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    private int estimateTokens(String text) {
+        return text == null ? 0 : (int) Math.ceil(text.length() / CHARS_PER_TOKEN);
+    }
+
+    private void sendJson(HttpExchange exchange, int status, JSONObject body) throws IOException {
+        byte[] bytes = body.toJSONString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private JSONObject errorBody(String message) {
+        JSONObject error = new JSONObject();
+        error.put("message", message);
+        JSONObject body = new JSONObject();
+        body.put("error", error);
+        return body;
+    }
+
+    private void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}